@@ -3,6 +3,11 @@ package com.http;
 import com.http.app.AppConfig;
 import com.http.routing.RouteManager;
 import com.http.server.HttpService;
+import com.http.server.UnixSocketConfig;
+import com.http.tls.TlsConfig;
+
+import java.nio.file.Path;
+import java.time.Duration;
 
 /**
  * Launches the Custom Multi-threaded HTTP Service.
@@ -15,9 +20,17 @@ public class MainLauncher {
     private static String HOST = "127.0.0.1";
     private static int MAX_THREADS = 10;
 
+    // How long in-flight requests may run after SIGTERM before connections are force-closed
+    private static final Duration SHUTDOWN_GRACE_PERIOD =
+            Duration.ofMillis(Long.getLong("http.shutdown.grace.ms", 20_000));
+
     /**
      * Main entry point – prepares router and starts the HTTP server.
      * Command-line arguments (optional): [port] [host] [thread_count]
+     * HTTPS is enabled with -Dhttp.tls.keystore=<file> -Dhttp.tls.password=<password>
+     * (optionally -Dhttp.tls.port, default 9443).
+     * A same-host proxy can connect over a Unix domain socket with -Dhttp.unix.socket=<path>
+     * (optionally -Dhttp.unix.permissions=rw-rw---- and -Dhttp.unix.exclusive=true to skip TCP).
      */
     public static void main(String[] args) {
         configureServer(args);
@@ -27,10 +40,52 @@ public class MainLauncher {
 
         HttpService server = new HttpService(PORT, HOST, router, MAX_THREADS);
         System.out.println("🚀 Server initialized on " + HOST + ":" + PORT + " | Threads: " + MAX_THREADS);
+        configureTls(server);
+        configureUnixSocket(server);
+
+        // SIGTERM / SIGINT: stop accepting and drain before the JVM exits
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            System.out.println("🛑 Shutdown requested, draining connections ...");
+            server.shutdown(SHUTDOWN_GRACE_PERIOD);
+        }, "http-shutdown"));
 
         server.boot();
     }
 
+    /**
+     * Enables the HTTPS listener when a keystore is configured.
+     */
+    private static void configureTls(HttpService server) {
+        String keyStore = System.getProperty("http.tls.keystore");
+        if (keyStore == null) return;
+
+        try {
+            TlsConfig tls = TlsConfig.builder(Path.of(keyStore), System.getProperty("http.tls.password", "").toCharArray())
+                    .build();
+            server.enableTls(Integer.getInteger("http.tls.port", 9443), tls);
+        } catch (Exception e) {
+            System.out.println("⚠️ Could not load TLS keystore " + keyStore + ", HTTPS disabled | " + e.getMessage());
+        }
+    }
+
+    /**
+     * Enables the Unix domain socket listener when a socket path is configured.
+     */
+    private static void configureUnixSocket(HttpService server) {
+        String socketPath = System.getProperty("http.unix.socket");
+        if (socketPath == null) return;
+
+        try {
+            UnixSocketConfig.Builder unixSocket = UnixSocketConfig.builder(Path.of(socketPath))
+                    .exclusive(Boolean.getBoolean("http.unix.exclusive"));
+            String permissions = System.getProperty("http.unix.permissions");
+            if (permissions != null) unixSocket.permissions(permissions);
+            server.enableUnixSocket(unixSocket.build());
+        } catch (IllegalArgumentException e) {
+            System.out.println("⚠️ Invalid unix socket settings, listener disabled | " + e.getMessage());
+        }
+    }
+
     /**
      * Reads user input parameters and overrides defaults.
      */
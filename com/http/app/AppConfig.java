@@ -6,6 +6,7 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.text.SimpleDateFormat;
+import java.time.Duration;
 import java.util.Date;
 import java.util.Optional;
 
@@ -13,14 +14,22 @@ import com.http.model.common.Header;
 import com.http.model.request.HttpVerb;
 import com.http.model.response.Response;
 import com.http.model.response.Status;
+import com.http.proxy.ProxyHandler;
+import com.http.routing.RateLimit;
+import com.http.routing.RequestCoalescer;
+import com.http.routing.SchedulingClass;
 import com.http.routing.StaticFileHandler;
 import com.http.routing.RouteManager;
+import com.http.sse.EventChannel;
 
 public class AppConfig 
 {
     private static final String RESOURCES_DIR = "../../resources";
     private static final String UPLOADS_DIR = RESOURCES_DIR + "/uploads";
 
+    // Notifies dashboards of each saved upload
+    private EventChannel uploadEvents;
+
     public RouteManager configureRouter() 
     {
         RouteManager applicationRouter = new RouteManager();
@@ -28,6 +37,9 @@ public class AppConfig
         // Default GET handler to serve static files
         applicationRouter.setDefaultGetHandler(new StaticFileHandler());
 
+        // Collapse concurrent identical GETs (e.g. a cold static file) into one handler call
+        applicationRouter.addFilter(new RequestCoalescer(Duration.ofSeconds(5), Header.Accept_Encoding.getHeaderValue()));
+
         // Custom GET route for home page (so browser shows a message)
         applicationRouter.addRoute(HttpVerb.GET, "/", request -> {
             return new Response.Builder(Status.OK_200)
@@ -35,12 +47,47 @@ public class AppConfig
                     .build();
         });
 
+        // Uploads run in their own bulkhead so a burst of them cannot starve GETs
+        SchedulingClass uploads = applicationRouter.defineSchedulingClass("uploads", 4, 32);
+
         // Custom POST route for uploading JSON files
-        applicationRouter.addRoute(HttpVerb.POST, "/upload", request -> handleUpload(request));
+        applicationRouter.addRoute(HttpVerb.POST, "/upload", uploads, request -> handleUpload(request));
+
+        // One client cannot flood the uploads bulkhead: 5 per second, bursts of 10
+        applicationRouter.limitRate(HttpVerb.POST, "/upload", new RateLimit("uploads", 5, 10));
+
+        // Server-Sent Events stream of completed uploads, instead of polling the uploads folder
+        uploadEvents = applicationRouter.addEventStream("/events/uploads");
+
+        // Optional backend behind /api/*, e.g. -Dhttp.proxy.upstreams=127.0.0.1:8081,127.0.0.1:8082
+        String upstreams = System.getProperty("http.proxy.upstreams");
+        if (upstreams != null && !upstreams.isBlank())
+        {
+            mountProxy(applicationRouter, "/api", upstreams);
+        }
 
         return applicationRouter;
     }
 
+    private void mountProxy(RouteManager router, String prefix, String upstreams)
+    {
+        ProxyHandler.Builder proxy = ProxyHandler.builder()
+                .stripPrefix(prefix)
+                .balancing(ProxyHandler.Balancing.LEAST_IN_FLIGHT);
+        for (String upstream : upstreams.split(","))
+        {
+            int colon = upstream.lastIndexOf(':');
+            proxy.upstream(upstream.substring(0, colon).trim(), Integer.parseInt(upstream.substring(colon + 1).trim()));
+        }
+
+        ProxyHandler handler = proxy.build();
+        for (HttpVerb verb : HttpVerb.values())
+        {
+            router.addRoute(verb, prefix + "/*", handler);
+        }
+        System.out.println("🔀 Proxying " + prefix + "/* to " + upstreams);
+    }
+
     private Response handleUpload(com.http.model.request.Request request) 
     {
         String contentType = request.getHeaders().get(Header.Content_Type);
@@ -82,6 +129,7 @@ public class AppConfig
                     StandardOpenOption.CREATE_NEW);
 
             System.out.println("File uploaded successfully: " + relativePath);
+            uploadEvents.broadcast("upload", String.format("{ \"filepath\": \"%s\" }", relativePath));
 
             String successJson = String.format(
                     "{ \"status\": \"success\", \"message\": \"File created successfully\", \"filepath\": \"%s\" }",
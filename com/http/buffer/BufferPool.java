@@ -0,0 +1,287 @@
+package com.http.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size-classed pool of direct ByteBuffers
+ * Each thread keeps a small cache per size class in front of a shared,
+ * bounded free list. Requests larger than the biggest class are served
+ * with unpooled heap buffers.
+ *
+ * Debug mode (-Dhttp.buffers.debug=true) records the acquisition site of
+ * every outstanding buffer, rejects double releases and reports buffers
+ * that were never returned.
+ */
+public final class BufferPool
+{
+    private static final int[] DEFAULT_SIZE_CLASSES = { 1024, 4 * 1024, 16 * 1024, 64 * 1024 };
+    private static final int THREAD_CACHE_SIZE = 8;
+    private static final int SHARED_LIMIT_PER_CLASS = 1024;
+
+    private static final BufferPool SHARED = new BufferPool(DEFAULT_SIZE_CLASSES, THREAD_CACHE_SIZE,
+            SHARED_LIMIT_PER_CLASS, Boolean.getBoolean("http.buffers.debug"));
+
+    private final int[] sizeClasses;
+    private final int threadCacheSize;
+    private final int sharedLimit;
+    private final boolean debug;
+
+    private final ConcurrentLinkedQueue<ByteBuffer>[] sharedFree;
+    private final AtomicInteger[] sharedCounts;
+    private final ThreadLocal<ThreadCache> threadCaches;
+
+    // Acquisition site of every outstanding buffer (debug mode only)
+    private final Map<ByteBuffer, Throwable> outstandingSites;
+
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder threadCacheHits = new LongAdder();
+    private final LongAdder sharedHits = new LongAdder();
+    private final LongAdder allocated = new LongAdder();
+    private final LongAdder released = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+    private final LongAdder unpooled = new LongAdder();
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public BufferPool(int[] sizeClasses, int threadCacheSize, int sharedLimit, boolean debug)
+    {
+        this.sizeClasses = sizeClasses.clone();
+        this.threadCacheSize = threadCacheSize;
+        this.sharedLimit = sharedLimit;
+        this.debug = debug;
+
+        this.sharedFree = new ConcurrentLinkedQueue[sizeClasses.length];
+        this.sharedCounts = new AtomicInteger[sizeClasses.length];
+        for (int i = 0; i < sizeClasses.length; i++)
+        {
+            sharedFree[i] = new ConcurrentLinkedQueue<>();
+            sharedCounts[i] = new AtomicInteger();
+        }
+        this.threadCaches = ThreadLocal.withInitial(() -> new ThreadCache(this.sizeClasses.length, this.threadCacheSize));
+        this.outstandingSites = debug ? Collections.synchronizedMap(new IdentityHashMap<>()) : null;
+
+        if (debug)
+        {
+            Runtime.getRuntime().addShutdownHook(new Thread(this::reportLeaks, "buffer-pool-leak-report"));
+        }
+    }
+
+    // Process-wide pool used for connection I/O
+    public static BufferPool shared()
+    {
+        return SHARED;
+    }
+
+    /**
+     * Returns a cleared buffer with at least the requested capacity
+     * Pooled buffers must be handed back with release()
+     */
+    public ByteBuffer acquire(int minCapacity)
+    {
+        acquired.increment();
+
+        int sizeClass = sizeClassFor(minCapacity);
+        if (sizeClass < 0)
+        {
+            unpooled.increment();
+            return ByteBuffer.allocate(minCapacity);
+        }
+
+        ByteBuffer buffer = threadCaches.get().pop(sizeClass);
+        if (buffer != null)
+        {
+            threadCacheHits.increment();
+        }
+        else
+        {
+            buffer = sharedFree[sizeClass].poll();
+            if (buffer != null)
+            {
+                sharedCounts[sizeClass].decrementAndGet();
+                sharedHits.increment();
+            }
+            else
+            {
+                allocated.increment();
+                buffer = ByteBuffer.allocateDirect(sizeClasses[sizeClass]);
+            }
+        }
+
+        buffer.clear();
+        if (debug)
+        {
+            outstandingSites.put(buffer, new Throwable("Buffer acquired by " + Thread.currentThread().getName()));
+        }
+        return buffer;
+    }
+
+    // Returns a buffer obtained from acquire(); null and unpooled buffers are ignored
+    public void release(ByteBuffer buffer)
+    {
+        if (buffer == null || !buffer.isDirect()) return;
+
+        int sizeClass = exactSizeClass(buffer.capacity());
+        if (sizeClass < 0) return;
+
+        if (debug && outstandingSites.remove(buffer) == null)
+        {
+            throw new IllegalStateException("Buffer released twice or not acquired from this pool");
+        }
+        released.increment();
+
+        if (threadCaches.get().push(sizeClass, buffer)) return;
+
+        if (sharedCounts[sizeClass].incrementAndGet() <= sharedLimit)
+        {
+            sharedFree[sizeClass].offer(buffer);
+        }
+        else
+        {
+            sharedCounts[sizeClass].decrementAndGet();
+            discarded.increment();
+        }
+    }
+
+    // Largest capacity served from the pool
+    public int maxPooledCapacity()
+    {
+        return sizeClasses[sizeClasses.length - 1];
+    }
+
+    public Stats stats()
+    {
+        int idle = 0;
+        for (AtomicInteger count : sharedCounts) idle += count.get();
+
+        return new Stats(acquired.sum(), threadCacheHits.sum(), sharedHits.sum(), allocated.sum(),
+                released.sum(), discarded.sum(), unpooled.sum(), idle);
+    }
+
+    /**
+     * Acquisition sites of buffers that are currently checked out
+     * Empty unless the pool runs in debug mode
+     */
+    public List<Throwable> outstanding()
+    {
+        if (!debug) return Collections.emptyList();
+        synchronized (outstandingSites)
+        {
+            return new ArrayList<>(outstandingSites.values());
+        }
+    }
+
+    // Prints pool metrics and the allocation site of every unreturned buffer
+    public void reportLeaks()
+    {
+        List<Throwable> leaks = outstanding();
+        System.out.println("🧮 Buffer pool: " + stats());
+        if (leaks.isEmpty()) return;
+
+        System.out.println("⚠️ " + leaks.size() + " pooled buffer(s) never released:");
+        for (Throwable site : leaks)
+        {
+            site.printStackTrace(System.out);
+        }
+    }
+
+    private int sizeClassFor(int capacity)
+    {
+        for (int i = 0; i < sizeClasses.length; i++)
+        {
+            if (capacity <= sizeClasses[i]) return i;
+        }
+        return -1;
+    }
+
+    private int exactSizeClass(int capacity)
+    {
+        for (int i = 0; i < sizeClasses.length; i++)
+        {
+            if (capacity == sizeClasses[i]) return i;
+        }
+        return -1;
+    }
+
+    // Per-thread LIFO stacks, one per size class
+    private static final class ThreadCache
+    {
+        private final ByteBuffer[][] stacks;
+        private final int[] depths;
+
+        ThreadCache(int classCount, int capacity)
+        {
+            this.stacks = new ByteBuffer[classCount][capacity];
+            this.depths = new int[classCount];
+        }
+
+        ByteBuffer pop(int sizeClass)
+        {
+            int depth = depths[sizeClass];
+            if (depth == 0) return null;
+
+            depths[sizeClass] = --depth;
+            ByteBuffer buffer = stacks[sizeClass][depth];
+            stacks[sizeClass][depth] = null;
+            return buffer;
+        }
+
+        boolean push(int sizeClass, ByteBuffer buffer)
+        {
+            int depth = depths[sizeClass];
+            if (depth == stacks[sizeClass].length) return false;
+
+            stacks[sizeClass][depth] = buffer;
+            depths[sizeClass] = depth + 1;
+            return true;
+        }
+    }
+
+    /**
+     * Point-in-time pool usage counters
+     */
+    public static final class Stats
+    {
+        public final long acquired;
+        public final long threadCacheHits;
+        public final long sharedHits;
+        public final long allocated;
+        public final long released;
+        public final long discarded;
+        public final long unpooled;
+        public final int sharedIdle;
+
+        Stats(long acquired, long threadCacheHits, long sharedHits, long allocated,
+              long released, long discarded, long unpooled, int sharedIdle)
+        {
+            this.acquired = acquired;
+            this.threadCacheHits = threadCacheHits;
+            this.sharedHits = sharedHits;
+            this.allocated = allocated;
+            this.released = released;
+            this.discarded = discarded;
+            this.unpooled = unpooled;
+            this.sharedIdle = sharedIdle;
+        }
+
+        // Pooled buffers currently checked out
+        public long inUse()
+        {
+            return acquired - unpooled - released;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "acquired=" + acquired + " threadHits=" + threadCacheHits + " sharedHits=" + sharedHits
+                    + " allocated=" + allocated + " released=" + released + " discarded=" + discarded
+                    + " unpooled=" + unpooled + " inUse=" + inUse() + " sharedIdle=" + sharedIdle;
+        }
+    }
+}
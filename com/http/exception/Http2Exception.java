@@ -0,0 +1,54 @@
+package com.http.exception;
+
+/**
+ * Exception thrown when an HTTP/2 peer violates the protocol
+ * Carries the RFC 7540 error code, and the stream it concerns
+ * (0 for errors that must tear down the whole connection)
+ */
+public class Http2Exception extends RuntimeException 
+{
+    private static final long serialVersionUID = 1L;
+
+    // RFC 7540 section 7 error codes
+    public static final int NO_ERROR = 0x0;
+    public static final int PROTOCOL_ERROR = 0x1;
+    public static final int INTERNAL_ERROR = 0x2;
+    public static final int FLOW_CONTROL_ERROR = 0x3;
+    public static final int STREAM_CLOSED = 0x5;
+    public static final int FRAME_SIZE_ERROR = 0x6;
+    public static final int REFUSED_STREAM = 0x7;
+    public static final int CANCEL = 0x8;
+    public static final int COMPRESSION_ERROR = 0x9;
+
+    private final int errorCode;
+    private final int streamId;
+
+    // Connection error
+    public Http2Exception(int errorCode, String message) 
+    {
+        this(errorCode, 0, message);
+    }
+
+    // Stream error when streamId is non-zero
+    public Http2Exception(int errorCode, int streamId, String message) 
+    {
+        super(message);
+        this.errorCode = errorCode;
+        this.streamId = streamId;
+    }
+
+    public int getErrorCode() 
+    {
+        return errorCode;
+    }
+
+    public int getStreamId() 
+    {
+        return streamId;
+    }
+
+    public boolean isConnectionError() 
+    {
+        return streamId == 0;
+    }
+}
@@ -0,0 +1,34 @@
+package com.http.exception;
+
+/**
+ * Exception thrown when a WebSocket peer violates the protocol
+ * Carries the RFC 6455 close code the connection is closed with
+ */
+public class WebSocketException extends RuntimeException
+{
+    private static final long serialVersionUID = 1L;
+
+    // RFC 6455 section 7.4.1 close codes
+    public static final int NORMAL_CLOSURE = 1000;
+    public static final int GOING_AWAY = 1001;
+    public static final int PROTOCOL_ERROR = 1002;
+    public static final int UNSUPPORTED_DATA = 1003;
+    public static final int NO_STATUS = 1005;
+    public static final int ABNORMAL_CLOSURE = 1006;
+    public static final int INVALID_PAYLOAD = 1007;
+    public static final int MESSAGE_TOO_BIG = 1009;
+    public static final int INTERNAL_ERROR = 1011;
+
+    private final int closeCode;
+
+    public WebSocketException(int closeCode, String message)
+    {
+        super(message);
+        this.closeCode = closeCode;
+    }
+
+    public int getCloseCode()
+    {
+        return closeCode;
+    }
+}
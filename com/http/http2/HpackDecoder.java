@@ -0,0 +1,126 @@
+package com.http.http2;
+
+import com.http.exception.Http2Exception;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.BiConsumer;
+
+/**
+ * Decodes HPACK header blocks (RFC 7541) against the connection's dynamic table
+ * One instance per connection; header blocks must be decoded in arrival order.
+ */
+final class HpackDecoder
+{
+    private final HpackTable table = new HpackTable();
+    private final int maxTableSize;
+
+    // Upper bound the peer may set with a dynamic table size update (our SETTINGS_HEADER_TABLE_SIZE)
+    HpackDecoder(int maxTableSize)
+    {
+        this.maxTableSize = maxTableSize;
+        this.table.setMaxSize(maxTableSize);
+    }
+
+    /**
+     * Decodes one complete header block, passing each field to the sink in order
+     * @throws Http2Exception COMPRESSION_ERROR for malformed input
+     */
+    void decode(ByteBuffer block, BiConsumer<String, String> sink)
+    {
+        boolean fieldSeen = false;
+        try
+        {
+            while (block.hasRemaining())
+            {
+                int first = block.get(block.position()) & 0xff;
+
+                if ((first & 0x80) != 0)
+                {
+                    // Indexed field
+                    int index = readInteger(block, 7);
+                    sink.accept(table.name(index), table.value(index));
+                    fieldSeen = true;
+                }
+                else if ((first & 0x40) != 0)
+                {
+                    // Literal with incremental indexing
+                    String[] field = readLiteral(block, 6);
+                    table.add(field[0], field[1]);
+                    sink.accept(field[0], field[1]);
+                    fieldSeen = true;
+                }
+                else if ((first & 0x20) != 0)
+                {
+                    // Dynamic table size update; only allowed before the first field
+                    if (fieldSeen)
+                    {
+                        throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "HPACK: table size update after a field");
+                    }
+                    int newSize = readInteger(block, 5);
+                    if (newSize > maxTableSize)
+                    {
+                        throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "HPACK: table size " + newSize + " above limit");
+                    }
+                    table.setMaxSize(newSize);
+                }
+                else
+                {
+                    // Literal without indexing (0000) or never indexed (0001)
+                    String[] field = readLiteral(block, 4);
+                    sink.accept(field[0], field[1]);
+                    fieldSeen = true;
+                }
+            }
+        }
+        catch (java.nio.BufferUnderflowException e)
+        {
+            throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "HPACK: truncated header block");
+        }
+    }
+
+    private String[] readLiteral(ByteBuffer block, int prefixBits)
+    {
+        int nameIndex = readInteger(block, prefixBits);
+        String name = nameIndex == 0 ? readString(block) : table.name(nameIndex);
+        String value = readString(block);
+        return new String[] { name, value };
+    }
+
+    private String readString(ByteBuffer block)
+    {
+        boolean huffman = (block.get(block.position()) & 0x80) != 0;
+        int length = readInteger(block, 7);
+        if (length > block.remaining())
+        {
+            throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "HPACK: string longer than header block");
+        }
+        if (huffman) return Huffman.decode(block, length);
+
+        byte[] raw = new byte[length];
+        block.get(raw);
+        return new String(raw, StandardCharsets.ISO_8859_1);
+    }
+
+    // Prefixed integer (RFC 7541 section 5.1)
+    static int readInteger(ByteBuffer block, int prefixBits)
+    {
+        int mask = (1 << prefixBits) - 1;
+        int value = block.get() & mask;
+        if (value < mask) return value;
+
+        int shift = 0;
+        int b;
+        do
+        {
+            if (shift > 28) throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "HPACK: integer overflow");
+            b = block.get() & 0xff;
+            value += (b & 0x7f) << shift;
+            shift += 7;
+        }
+        while ((b & 0x80) != 0);
+
+        if (value < 0) throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "HPACK: integer overflow");
+        return value;
+    }
+}
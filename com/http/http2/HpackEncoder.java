@@ -0,0 +1,103 @@
+package com.http.http2;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes response header blocks with HPACK (RFC 7541)
+ * Repeated fields (server, content-type, ...) are added to the dynamic table
+ * and sent as a single index afterwards; per-response values such as date and
+ * content-length are sent as literals without indexing so they don't churn it.
+ * Strings are Huffman-coded when that is shorter. Not thread-safe: callers
+ * must encode and write each block under the connection's write lock.
+ */
+final class HpackEncoder
+{
+    private final HpackTable table = new HpackTable();
+    private int pendingSizeUpdate = -1;
+
+    // Peer's SETTINGS_HEADER_TABLE_SIZE; announced in the next header block
+    void setMaxTableSize(int size)
+    {
+        int newSize = Math.min(size, HpackTable.DEFAULT_SIZE);
+        if (newSize == table.maxSize()) return;
+        table.setMaxSize(newSize);
+        pendingSizeUpdate = newSize;
+    }
+
+    void startBlock(ByteBuffer out)
+    {
+        if (pendingSizeUpdate >= 0)
+        {
+            writeInteger(out, 0x20, 5, pendingSizeUpdate);
+            pendingSizeUpdate = -1;
+        }
+    }
+
+    /**
+     * Appends one field; names must already be lower case
+     * @param indexable Whether the field is worth a dynamic table entry
+     */
+    void encode(ByteBuffer out, String name, String value, boolean indexable)
+    {
+        int index = table.indexOf(name, value);
+        if (index > 0)
+        {
+            writeInteger(out, 0x80, 7, index);
+            return;
+        }
+
+        int nameIndex = HpackTable.staticNameIndex(name);
+        if (indexable && HpackTable.entrySize(name, value) <= table.maxSize() / 4)
+        {
+            writeInteger(out, 0x40, 6, nameIndex);
+            table.add(name, value);
+        }
+        else
+        {
+            writeInteger(out, 0x00, 4, nameIndex);
+        }
+        if (nameIndex == 0) writeString(out, name);
+        writeString(out, value);
+    }
+
+    // Upper bound on the encoded size of a field, for sizing buffers
+    static int maxEncodedSize(String name, String value)
+    {
+        return 12 + name.length() + value.length();
+    }
+
+    private static void writeString(ByteBuffer out, String value)
+    {
+        int huffmanLength = Huffman.encodedLength(value);
+        if (huffmanLength < value.length())
+        {
+            writeInteger(out, 0x80, 7, huffmanLength);
+            Huffman.encode(value, out);
+        }
+        else
+        {
+            writeInteger(out, 0x00, 7, value.length());
+            out.put(value.getBytes(StandardCharsets.ISO_8859_1));
+        }
+    }
+
+    // Prefixed integer (RFC 7541 section 5.1) with the representation bits in flags
+    static void writeInteger(ByteBuffer out, int flags, int prefixBits, int value)
+    {
+        int mask = (1 << prefixBits) - 1;
+        if (value < mask)
+        {
+            out.put((byte) (flags | value));
+            return;
+        }
+        out.put((byte) (flags | mask));
+        value -= mask;
+        while (value >= 0x80)
+        {
+            out.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+}
@@ -0,0 +1,173 @@
+package com.http.http2;
+
+import com.http.exception.Http2Exception;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * HPACK header table: the 61-entry static table followed by a dynamic table
+ * Dynamic entries live in a ring buffer, newest first; the table evicts the
+ * oldest entries once their RFC 7541 size (name + value + 32) exceeds the limit.
+ */
+final class HpackTable
+{
+    static final String[][] STATIC_TABLE = {
+        { ":authority", "" }, { ":method", "GET" }, { ":method", "POST" }, { ":path", "/" },
+        { ":path", "/index.html" }, { ":scheme", "http" }, { ":scheme", "https" }, { ":status", "200" },
+        { ":status", "204" }, { ":status", "206" }, { ":status", "304" }, { ":status", "400" },
+        { ":status", "404" }, { ":status", "500" }, { "accept-charset", "" }, { "accept-encoding", "gzip, deflate" },
+        { "accept-language", "" }, { "accept-ranges", "" }, { "accept", "" }, { "access-control-allow-origin", "" },
+        { "age", "" }, { "allow", "" }, { "authorization", "" }, { "cache-control", "" },
+        { "content-disposition", "" }, { "content-encoding", "" }, { "content-language", "" }, { "content-length", "" },
+        { "content-location", "" }, { "content-range", "" }, { "content-type", "" }, { "cookie", "" },
+        { "date", "" }, { "etag", "" }, { "expect", "" }, { "expires", "" },
+        { "from", "" }, { "host", "" }, { "if-match", "" }, { "if-modified-since", "" },
+        { "if-none-match", "" }, { "if-range", "" }, { "if-unmodified-since", "" }, { "last-modified", "" },
+        { "link", "" }, { "location", "" }, { "max-forwards", "" }, { "proxy-authenticate", "" },
+        { "proxy-authorization", "" }, { "range", "" }, { "referer", "" }, { "refresh", "" },
+        { "retry-after", "" }, { "server", "" }, { "set-cookie", "" }, { "strict-transport-security", "" },
+        { "transfer-encoding", "" }, { "user-agent", "" }, { "vary", "" }, { "via", "" },
+        { "www-authenticate", "" }
+    };
+
+    static final int DEFAULT_SIZE = 4096;
+    private static final int ENTRY_OVERHEAD = 32;
+
+    // First static index for each name, and for each exact name/value pair
+    private static final Map<String, Integer> STATIC_NAMES = new HashMap<>();
+    private static final Map<String, Integer> STATIC_PAIRS = new HashMap<>();
+
+    static
+    {
+        for (int i = STATIC_TABLE.length - 1; i >= 0; i--)
+        {
+            STATIC_NAMES.put(STATIC_TABLE[i][0], i + 1);
+            STATIC_PAIRS.put(STATIC_TABLE[i][0] + '\0' + STATIC_TABLE[i][1], i + 1);
+        }
+    }
+
+    private String[] names = new String[16];
+    private String[] values = new String[16];
+    private int head;   // slot of the newest entry
+    private int count;
+    private int size;
+    private int maxSize = DEFAULT_SIZE;
+
+    // Entry at a 1-based HPACK index spanning both tables
+    String name(int index)
+    {
+        if (index <= STATIC_TABLE.length) return staticEntry(index)[0];
+        return names[slot(index)];
+    }
+
+    String value(int index)
+    {
+        if (index <= STATIC_TABLE.length) return staticEntry(index)[1];
+        return values[slot(index)];
+    }
+
+    void add(String name, String value)
+    {
+        int entrySize = entrySize(name, value);
+        if (entrySize > maxSize)
+        {
+            // An entry larger than the table empties it and is not stored
+            clear();
+            return;
+        }
+        evictTo(maxSize - entrySize);
+
+        if (count == names.length) grow();
+        head = (head - 1 + names.length) % names.length;
+        names[head] = name;
+        values[head] = value;
+        count++;
+        size += entrySize;
+    }
+
+    void setMaxSize(int newMaxSize)
+    {
+        maxSize = newMaxSize;
+        evictTo(newMaxSize);
+    }
+
+    int maxSize()
+    {
+        return maxSize;
+    }
+
+    /**
+     * Index of an entry matching name and value in either table, or 0
+     */
+    int indexOf(String name, String value)
+    {
+        Integer staticIndex = STATIC_PAIRS.get(name + '\0' + value);
+        if (staticIndex != null) return staticIndex;
+        for (int i = 0; i < count; i++)
+        {
+            int slot = (head + i) % names.length;
+            if (names[slot].equals(name) && values[slot].equals(value)) return STATIC_TABLE.length + 1 + i;
+        }
+        return 0;
+    }
+
+    // Index of any entry with this name (static table only, it never changes), or 0
+    static int staticNameIndex(String name)
+    {
+        Integer index = STATIC_NAMES.get(name);
+        return index == null ? 0 : index;
+    }
+
+    static int entrySize(String name, String value)
+    {
+        return name.length() + value.length() + ENTRY_OVERHEAD;
+    }
+
+    private String[] staticEntry(int index)
+    {
+        if (index < 1) throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "HPACK: invalid index " + index);
+        return STATIC_TABLE[index - 1];
+    }
+
+    private int slot(int index)
+    {
+        int dynamicIndex = index - STATIC_TABLE.length - 1;
+        if (dynamicIndex >= count)
+        {
+            throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "HPACK: index " + index + " beyond table");
+        }
+        return (head + dynamicIndex) % names.length;
+    }
+
+    private void evictTo(int limit)
+    {
+        while (size > limit && count > 0)
+        {
+            int oldest = (head + count - 1) % names.length;
+            size -= entrySize(names[oldest], values[oldest]);
+            names[oldest] = null;
+            values[oldest] = null;
+            count--;
+        }
+    }
+
+    private void clear()
+    {
+        evictTo(0);
+    }
+
+    private void grow()
+    {
+        String[] newNames = new String[names.length * 2];
+        String[] newValues = new String[values.length * 2];
+        for (int i = 0; i < count; i++)
+        {
+            newNames[i] = names[(head + i) % names.length];
+            newValues[i] = values[(head + i) % values.length];
+        }
+        names = newNames;
+        values = newValues;
+        head = 0;
+    }
+}
@@ -0,0 +1,1167 @@
+package com.http.http2;
+
+import com.http.exception.Http2Exception;
+import com.http.model.common.Header;
+import com.http.model.request.HttpVerb;
+import com.http.model.request.Request;
+import com.http.model.response.Response;
+import com.http.model.response.StreamingBody;
+import com.http.protocol.ChannelWrites;
+import com.http.protocol.HttpDate;
+import com.http.protocol.ResponseEncoder;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Server side of an HTTP/2 connection over cleartext TCP (h2c, RFC 7540)
+ * Entered either with prior knowledge (the client opens with the connection
+ * preface) or through an HTTP/1.1 "Upgrade: h2c" request.
+ *
+ * One thread at a time reads: onReadable() drains the non-blocking socket
+ * and handles every complete frame, then the caller parks the connection
+ * until more data arrives. Requests are dispatched as soon as their stream
+ * is half-closed by the client, and answered through Http2Stream.respond()
+ * from any thread. Frames are written under a single lock, so concurrent
+ * responses interleave frame by frame; DATA frames wait for the peer's
+ * stream and connection flow-control windows.
+ */
+public final class Http2Connection
+{
+    /**
+     * Receives each complete request
+     * Called on the reading thread, so implementations must hand the work off and not block
+     */
+    @FunctionalInterface
+    public interface RequestDispatcher
+    {
+        void dispatch(Http2Stream stream, Request request);
+    }
+
+    public static final String HTTP_VERSION = "HTTP/2.0";
+
+    // First line of the client preface; enough to tell an h2c client from an HTTP/1 request line
+    public static final byte[] PREFACE_START = ascii("PRI * HTTP/2.0\r\n");
+    private static final byte[] PREFACE = ascii("PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n");
+
+    private static final int FRAME_HEADER_LENGTH = 9;
+
+    // Frame types
+    private static final int DATA = 0x0;
+    private static final int HEADERS = 0x1;
+    private static final int PRIORITY = 0x2;
+    private static final int RST_STREAM = 0x3;
+    private static final int SETTINGS = 0x4;
+    private static final int PUSH_PROMISE = 0x5;
+    private static final int PING = 0x6;
+    private static final int GOAWAY = 0x7;
+    private static final int WINDOW_UPDATE = 0x8;
+    private static final int CONTINUATION = 0x9;
+
+    // Frame flags
+    private static final int FLAG_END_STREAM = 0x1;
+    private static final int FLAG_ACK = 0x1;
+    private static final int FLAG_END_HEADERS = 0x4;
+    private static final int FLAG_PADDED = 0x8;
+    private static final int FLAG_PRIORITY = 0x20;
+
+    // Settings identifiers
+    private static final int SETTINGS_HEADER_TABLE_SIZE = 0x1;
+    private static final int SETTINGS_ENABLE_PUSH = 0x2;
+    private static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+    private static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+    private static final int SETTINGS_MAX_FRAME_SIZE = 0x5;
+
+    // What we announce; frame size and header table size stay at the protocol defaults
+    private static final int MAX_CONCURRENT_STREAMS = 100;
+    private static final int STREAM_WINDOW = 1 << 20;
+    private static final int CONNECTION_WINDOW = 16 << 20;
+    private static final int MAX_FRAME_SIZE = 16_384;
+    private static final int MAX_HEADER_BLOCK = 64 * 1024;
+
+    private static final int DEFAULT_WINDOW = 65_535;
+    private static final long MAX_WINDOW = Integer.MAX_VALUE;
+
+    // Response header names as HTTP/2 requires them: lower case
+    private static final String[] HEADER_NAMES = new String[Header.values().length];
+
+    static
+    {
+        for (Header header : Header.values())
+        {
+            HEADER_NAMES[header.ordinal()] = header.getHeaderValue().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final SocketChannel channel;
+    private final RequestDispatcher dispatcher;
+    private final Runnable onIdle;
+    private final long writeTimeoutNanos;
+    private final Map<Integer, Http2Stream> streams = new ConcurrentHashMap<>();
+
+    // Reader state, owned by the thread currently in onReadable()
+    private final ByteBuffer in = ByteBuffer.allocate(2 * (FRAME_HEADER_LENGTH + MAX_FRAME_SIZE));
+    private final HpackDecoder decoder = new HpackDecoder(HpackTable.DEFAULT_SIZE);
+    private ByteBuffer headerBlock = ByteBuffer.allocate(MAX_FRAME_SIZE);
+    private int headerBlockStream;
+    private boolean headerBlockEndStream;
+    private boolean prefaceReceived;
+    private boolean settingsReceived;
+    private int connectionReceiveWindow = CONNECTION_WINDOW;
+    private int connectionUnacknowledged;
+    private volatile int lastStreamId;
+
+    // Writer state, guarded by writeLock
+    private final Object writeLock = new Object();
+    private final HpackEncoder encoder = new HpackEncoder();
+    private final ByteBuffer frameHeader = ByteBuffer.allocate(FRAME_HEADER_LENGTH);
+    private final ByteBuffer[] gather = new ByteBuffer[2];
+    private ByteBuffer headerScratch = ByteBuffer.allocate(4 * 1024);
+    private volatile int peerMaxFrameSize = MAX_FRAME_SIZE;
+
+    // Send windows, guarded by flow; writers wait on it for WINDOW_UPDATE
+    private final Object flow = new Object();
+    private long connectionSendWindow = DEFAULT_WINDOW;
+    private int peerInitialWindow = DEFAULT_WINDOW;
+
+    private final AtomicBoolean goAwaySent = new AtomicBoolean();
+    private volatile boolean goingAway;
+    private volatile boolean closed;
+
+    /**
+     * @param channel Non-blocking socket, already past any HTTP/1.1 exchange
+     * @param dispatcher Receives each request once the client has sent all of it
+     * @param onIdle Run whenever the last open stream finishes
+     * @param writeTimeout How long a write may wait for socket buffer space or flow-control credit
+     */
+    public Http2Connection(SocketChannel channel, RequestDispatcher dispatcher, Runnable onIdle, Duration writeTimeout)
+    {
+        this.channel = channel;
+        this.dispatcher = dispatcher;
+        this.onIdle = onIdle;
+        this.writeTimeoutNanos = writeTimeout.toNanos();
+    }
+
+    /**
+     * Sends the server preface and takes over bytes the HTTP/1.1 reader had already buffered
+     * @param buffered Bytes received so far, normally starting with the client preface
+     */
+    public void start(ByteBuffer buffered) throws IOException
+    {
+        in.put(buffered);
+
+        ByteBuffer settings = ByteBuffer.allocate(12);
+        settings.putShort((short) SETTINGS_MAX_CONCURRENT_STREAMS).putInt(MAX_CONCURRENT_STREAMS);
+        settings.putShort((short) SETTINGS_INITIAL_WINDOW_SIZE).putInt(STREAM_WINDOW);
+        settings.flip();
+
+        synchronized (writeLock)
+        {
+            writeFrame(SETTINGS, 0, 0, settings);
+            writeFrame(WINDOW_UPDATE, 0, 0, windowIncrement(CONNECTION_WINDOW - DEFAULT_WINDOW));
+        }
+    }
+
+    /**
+     * Continues an upgraded HTTP/1.1 request as stream 1 (RFC 7540 section 3.2)
+     * @param request The request that carried the Upgrade header, body already read
+     * @param http2Settings Value of its HTTP2-Settings header
+     * @throws Http2Exception if the settings are malformed
+     */
+    public void upgrade(Request request, String http2Settings)
+    {
+        byte[] payload;
+        try
+        {
+            payload = Base64.getUrlDecoder().decode(http2Settings.trim());
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Malformed HTTP2-Settings header");
+        }
+        if (payload.length % 6 != 0) throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Malformed HTTP2-Settings header");
+        applySettings(ByteBuffer.wrap(payload));
+
+        Http2Stream stream = new Http2Stream(1, this, STREAM_WINDOW, initialSendWindow());
+        stream.remoteClosed = true;
+        stream.setVerb(request.getVerb());
+        streams.put(1, stream);
+        lastStreamId = 1;
+        dispatcher.dispatch(stream, request);
+    }
+
+    /**
+     * Reads everything the socket has and handles each complete frame
+     * @return false once the connection is finished: the peer closed it, or a
+     *         connection error was reported with GOAWAY
+     */
+    public boolean onReadable() throws IOException
+    {
+        try
+        {
+            while (true)
+            {
+                handleFrames();
+                if (closed) return false;
+
+                int read = channel.read(in);
+                if (read < 0) return false;
+                if (read == 0) return true;
+            }
+        }
+        catch (Http2Exception e)
+        {
+            sendGoAway(e.getErrorCode(), e.getMessage());
+            return false;
+        }
+    }
+
+    // Whether no stream is open, i.e. the connection only waits for new requests
+    public boolean isIdle()
+    {
+        return streams.isEmpty();
+    }
+
+    public int getOpenStreams()
+    {
+        return streams.size();
+    }
+
+    /**
+     * Starts a graceful shutdown: tells the client with GOAWAY that no new streams
+     * will be accepted, while open streams are still answered
+     */
+    public void goAway()
+    {
+        sendGoAway(Http2Exception.NO_ERROR, "");
+    }
+
+    // Wakes writers waiting for flow-control credit; the owner closes the socket itself
+    public void close()
+    {
+        closed = true;
+        synchronized (flow)
+        {
+            flow.notifyAll();
+        }
+    }
+
+    // ---- Reading ----
+
+    private void handleFrames() throws IOException
+    {
+        in.flip();
+        try
+        {
+            if (!prefaceReceived && !readPreface()) return;
+
+            while (in.remaining() >= FRAME_HEADER_LENGTH)
+            {
+                int start = in.position();
+                int length = ((in.get(start) & 0xff) << 16) | ((in.get(start + 1) & 0xff) << 8) | (in.get(start + 2) & 0xff);
+                if (length > MAX_FRAME_SIZE)
+                {
+                    throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "Frame of " + length + " bytes exceeds SETTINGS_MAX_FRAME_SIZE");
+                }
+                if (in.remaining() < FRAME_HEADER_LENGTH + length) return;
+
+                int type = in.get(start + 3) & 0xff;
+                int flags = in.get(start + 4) & 0xff;
+                int streamId = in.getInt(start + 5) & 0x7fffffff;
+
+                in.position(start + FRAME_HEADER_LENGTH);
+                ByteBuffer payload = in.slice();
+                payload.limit(length);
+                in.position(start + FRAME_HEADER_LENGTH + length);
+
+                try
+                {
+                    handleFrame(type, flags, streamId, payload);
+                }
+                catch (Http2Exception e)
+                {
+                    if (e.isConnectionError()) throw e;
+                    resetStream(e.getStreamId(), e.getErrorCode());
+                }
+            }
+        }
+        finally
+        {
+            in.compact();
+        }
+    }
+
+    private boolean readPreface()
+    {
+        int count = Math.min(in.remaining(), PREFACE.length);
+        for (int i = 0; i < count; i++)
+        {
+            if (in.get(in.position() + i) != PREFACE[i])
+            {
+                throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Invalid connection preface");
+            }
+        }
+        if (count < PREFACE.length) return false;
+
+        in.position(in.position() + PREFACE.length);
+        prefaceReceived = true;
+        return true;
+    }
+
+    private void handleFrame(int type, int flags, int streamId, ByteBuffer payload) throws IOException
+    {
+        // A header block must arrive in one piece, with nothing interleaved
+        if (headerBlockStream != 0 && (type != CONTINUATION || streamId != headerBlockStream))
+        {
+            throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Expected CONTINUATION for stream " + headerBlockStream);
+        }
+        if (!settingsReceived && type != SETTINGS)
+        {
+            throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Expected SETTINGS after the connection preface");
+        }
+
+        switch (type)
+        {
+            case DATA:
+                onData(flags, streamId, payload);
+                break;
+            case HEADERS:
+                onHeaders(flags, streamId, payload);
+                break;
+            case PRIORITY:
+                onPriority(streamId, payload);
+                break;
+            case RST_STREAM:
+                onRstStream(streamId, payload);
+                break;
+            case SETTINGS:
+                onSettings(flags, streamId, payload);
+                break;
+            case PUSH_PROMISE:
+                throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Clients cannot send PUSH_PROMISE");
+            case PING:
+                onPing(flags, streamId, payload);
+                break;
+            case GOAWAY:
+                onGoAway(streamId);
+                break;
+            case WINDOW_UPDATE:
+                onWindowUpdate(streamId, payload);
+                break;
+            case CONTINUATION:
+                onContinuation(flags, streamId, payload);
+                break;
+            default:
+                // Unknown frame types are ignored (RFC 7540 section 4.1)
+                break;
+        }
+    }
+
+    private void onData(int flags, int streamId, ByteBuffer payload) throws IOException
+    {
+        requireStream(streamId, "DATA");
+        int frameLength = payload.remaining();
+        stripPadding(flags, payload);
+
+        // Flow control counts the whole frame payload, padding included
+        connectionReceiveWindow -= frameLength;
+        if (connectionReceiveWindow < 0)
+        {
+            throw new Http2Exception(Http2Exception.FLOW_CONTROL_ERROR, "Connection receive window exceeded");
+        }
+        connectionUnacknowledged += frameLength;
+        if (connectionUnacknowledged >= CONNECTION_WINDOW / 2)
+        {
+            sendWindowUpdate(0, connectionUnacknowledged);
+            connectionReceiveWindow += connectionUnacknowledged;
+            connectionUnacknowledged = 0;
+        }
+
+        Http2Stream stream = openStream(streamId, "DATA");
+        stream.receiveWindow -= frameLength;
+        if (stream.receiveWindow < 0)
+        {
+            throw new Http2Exception(Http2Exception.FLOW_CONTROL_ERROR, streamId, "Stream receive window exceeded");
+        }
+        stream.body.write(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+
+        if ((flags & FLAG_END_STREAM) != 0)
+        {
+            stream.remoteClosed = true;
+            dispatch(stream);
+            return;
+        }
+
+        stream.unacknowledged += frameLength;
+        if (stream.unacknowledged >= STREAM_WINDOW / 2)
+        {
+            sendWindowUpdate(streamId, stream.unacknowledged);
+            stream.receiveWindow += stream.unacknowledged;
+            stream.unacknowledged = 0;
+        }
+    }
+
+    private void onHeaders(int flags, int streamId, ByteBuffer payload)
+    {
+        requireStream(streamId, "HEADERS");
+        stripPadding(flags, payload);
+        if ((flags & FLAG_PRIORITY) != 0)
+        {
+            if (payload.remaining() < 5) throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "HEADERS priority block truncated");
+            payload.position(payload.position() + 5);
+        }
+
+        headerBlock.clear();
+        headerBlockStream = streamId;
+        headerBlockEndStream = (flags & FLAG_END_STREAM) != 0;
+        appendHeaderBlock(payload);
+        if ((flags & FLAG_END_HEADERS) != 0) endHeaderBlock();
+    }
+
+    private void onContinuation(int flags, int streamId, ByteBuffer payload)
+    {
+        if (headerBlockStream == 0)
+        {
+            throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "CONTINUATION without a header block");
+        }
+        appendHeaderBlock(payload);
+        if ((flags & FLAG_END_HEADERS) != 0) endHeaderBlock();
+    }
+
+    private void appendHeaderBlock(ByteBuffer fragment)
+    {
+        if (headerBlock.remaining() < fragment.remaining())
+        {
+            int needed = headerBlock.position() + fragment.remaining();
+            if (needed > MAX_HEADER_BLOCK)
+            {
+                // The block cannot be skipped without desynchronising HPACK, so the connection goes
+                throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Header block exceeds " + MAX_HEADER_BLOCK + " bytes");
+            }
+            ByteBuffer larger = ByteBuffer.allocate(Math.min(MAX_HEADER_BLOCK, Math.max(needed, headerBlock.capacity() * 2)));
+            headerBlock.flip();
+            larger.put(headerBlock);
+            headerBlock = larger;
+        }
+        headerBlock.put(fragment);
+    }
+
+    // Decodes a complete header block: a new request, or trailers ending one
+    private void endHeaderBlock()
+    {
+        int streamId = headerBlockStream;
+        boolean endStream = headerBlockEndStream;
+        headerBlockStream = 0;
+        headerBlock.flip();
+
+        Http2Stream existing = streams.get(streamId);
+        if (existing != null || streamId <= lastStreamId)
+        {
+            // Decode regardless: every block updates the HPACK table
+            decoder.decode(headerBlock, (name, value) -> { });
+            if (existing == null || existing.remoteClosed)
+            {
+                throw new Http2Exception(Http2Exception.STREAM_CLOSED, streamId, "HEADERS on closed stream");
+            }
+            if (!endStream) throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, streamId, "Trailers must end the stream");
+            existing.remoteClosed = true;
+            dispatch(existing);
+            return;
+        }
+
+        if ((streamId & 1) == 0) throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Client stream IDs must be odd");
+        lastStreamId = streamId;
+
+        Http2Stream stream = new Http2Stream(streamId, this, STREAM_WINDOW, initialSendWindow());
+        String[] malformed = new String[1];
+        decoder.decode(headerBlock, (name, value) -> {
+            if (malformed[0] == null) malformed[0] = addField(stream, name, value);
+        });
+
+        if (goingAway || streams.size() >= MAX_CONCURRENT_STREAMS)
+        {
+            throw new Http2Exception(Http2Exception.REFUSED_STREAM, streamId, "Stream refused");
+        }
+        if (malformed[0] == null && (stream.method == null || stream.path == null))
+        {
+            malformed[0] = "Missing :method or :path";
+        }
+        if (malformed[0] != null) throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, streamId, malformed[0]);
+
+        streams.put(streamId, stream);
+        if (endStream)
+        {
+            stream.remoteClosed = true;
+            dispatch(stream);
+        }
+    }
+
+    /**
+     * Adds one decoded request field to the stream
+     * @return Why the request is malformed, or null if the field is acceptable
+     */
+    private static String addField(Http2Stream stream, String name, String value)
+    {
+        if (name.startsWith(":"))
+        {
+            if (!stream.headers.isEmpty()) return "Pseudo-header after regular header";
+            switch (name)
+            {
+                case ":method":
+                    if (stream.method != null) return "Duplicate :method";
+                    stream.method = value;
+                    return null;
+                case ":path":
+                    if (stream.path != null || value.isEmpty()) return "Invalid :path";
+                    stream.path = value;
+                    return null;
+                case ":authority":
+                    stream.authority = value;
+                    return null;
+                case ":scheme":
+                    return null;
+                default:
+                    return "Unknown pseudo-header " + name;
+            }
+        }
+
+        for (int i = 0; i < name.length(); i++)
+        {
+            char c = name.charAt(i);
+            if (c >= 'A' && c <= 'Z') return "Upper-case header name " + name;
+        }
+        switch (name)
+        {
+            case "connection":
+            case "keep-alive":
+            case "proxy-connection":
+            case "transfer-encoding":
+            case "upgrade":
+                return "Connection-specific header " + name;
+            case "te":
+                if (!"trailers".equals(value)) return "Invalid te header";
+                break;
+            default:
+                break;
+        }
+        stream.headers.add(name, value);
+        return null;
+    }
+
+    // Builds the Request once the client has finished sending and hands it on
+    private void dispatch(Http2Stream stream)
+    {
+        HttpVerb verb;
+        try
+        {
+            verb = HttpVerb.valueOf(stream.method);
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, stream.getId(), "Unsupported method " + stream.method);
+        }
+
+        // Cookies may arrive split into several fields (RFC 7540 section 8.1.2.5)
+        List<String> cookies = stream.headers.getAll(Header.Cookie);
+        if (cookies.size() > 1) stream.headers.set(Header.Cookie, String.join("; ", cookies));
+        if (stream.authority != null && !stream.headers.contains(Header.Host))
+        {
+            stream.headers.add(Header.Host, stream.authority);
+        }
+
+        byte[] body = stream.body.size() == 0 ? null : stream.body.toByteArray();
+        Request request;
+        try
+        {
+            request = new Request(verb, stream.path, HTTP_VERSION, stream.headers, body);
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, stream.getId(), e.getMessage());
+        }
+
+        stream.setVerb(verb);
+        dispatcher.dispatch(stream, request);
+    }
+
+    private void onPriority(int streamId, ByteBuffer payload)
+    {
+        requireStream(streamId, "PRIORITY");
+        if (payload.remaining() != 5) throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, streamId, "PRIORITY must be 5 bytes");
+        // Responses go out in completion order; priorities are not used
+    }
+
+    private void onRstStream(int streamId, ByteBuffer payload)
+    {
+        requireStream(streamId, "RST_STREAM");
+        if (payload.remaining() != 4) throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "RST_STREAM must be 4 bytes");
+        if (streamId > lastStreamId) throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "RST_STREAM on idle stream");
+
+        Http2Stream stream = streams.get(streamId);
+        if (stream != null)
+        {
+            markReset(stream);
+            removeStream(stream);
+        }
+    }
+
+    private void onSettings(int flags, int streamId, ByteBuffer payload) throws IOException
+    {
+        if (streamId != 0) throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "SETTINGS on a stream");
+        if ((flags & FLAG_ACK) != 0)
+        {
+            if (payload.hasRemaining()) throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "SETTINGS ACK with payload");
+            return;
+        }
+        if (payload.remaining() % 6 != 0) throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "SETTINGS length not a multiple of 6");
+
+        applySettings(payload);
+        settingsReceived = true;
+        synchronized (writeLock)
+        {
+            writeFrame(SETTINGS, FLAG_ACK, 0, ByteBuffer.allocate(0));
+        }
+    }
+
+    private void applySettings(ByteBuffer payload)
+    {
+        while (payload.remaining() >= 6)
+        {
+            int id = payload.getShort() & 0xffff;
+            long value = payload.getInt() & 0xffffffffL;
+            switch (id)
+            {
+                case SETTINGS_HEADER_TABLE_SIZE:
+                    synchronized (writeLock)
+                    {
+                        encoder.setMaxTableSize((int) Math.min(value, Integer.MAX_VALUE));
+                    }
+                    break;
+                case SETTINGS_ENABLE_PUSH:
+                    if (value > 1) throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Invalid SETTINGS_ENABLE_PUSH");
+                    break;
+                case SETTINGS_INITIAL_WINDOW_SIZE:
+                    if (value > MAX_WINDOW) throw new Http2Exception(Http2Exception.FLOW_CONTROL_ERROR, "Invalid SETTINGS_INITIAL_WINDOW_SIZE");
+                    updateInitialWindow((int) value);
+                    break;
+                case SETTINGS_MAX_FRAME_SIZE:
+                    if (value < MAX_FRAME_SIZE || value > 0xffffff)
+                    {
+                        throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Invalid SETTINGS_MAX_FRAME_SIZE");
+                    }
+                    peerMaxFrameSize = (int) value;
+                    break;
+                default:
+                    // MAX_CONCURRENT_STREAMS only limits pushes, which we never send; others are advisory
+                    break;
+            }
+        }
+    }
+
+    // A new initial window shifts every open stream's send window by the difference
+    private void updateInitialWindow(int newWindow)
+    {
+        synchronized (flow)
+        {
+            int delta = newWindow - peerInitialWindow;
+            peerInitialWindow = newWindow;
+            for (Http2Stream stream : streams.values())
+            {
+                stream.sendWindow += delta;
+                if (stream.sendWindow > MAX_WINDOW)
+                {
+                    throw new Http2Exception(Http2Exception.FLOW_CONTROL_ERROR, "Stream window overflow");
+                }
+            }
+            flow.notifyAll();
+        }
+    }
+
+    private void onPing(int flags, int streamId, ByteBuffer payload) throws IOException
+    {
+        if (streamId != 0) throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "PING on a stream");
+        if (payload.remaining() != 8) throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "PING must be 8 bytes");
+        if ((flags & FLAG_ACK) != 0) return;
+
+        synchronized (writeLock)
+        {
+            writeFrame(PING, FLAG_ACK, 0, payload);
+        }
+    }
+
+    // The client will open no more streams; the open ones are still answered
+    private void onGoAway(int streamId)
+    {
+        if (streamId != 0) throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "GOAWAY on a stream");
+        goingAway = true;
+    }
+
+    private void onWindowUpdate(int streamId, ByteBuffer payload)
+    {
+        if (payload.remaining() != 4) throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "WINDOW_UPDATE must be 4 bytes");
+        int increment = payload.getInt() & 0x7fffffff;
+        if (increment == 0) throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, streamId, "WINDOW_UPDATE of 0");
+
+        synchronized (flow)
+        {
+            if (streamId == 0)
+            {
+                connectionSendWindow += increment;
+                if (connectionSendWindow > MAX_WINDOW)
+                {
+                    throw new Http2Exception(Http2Exception.FLOW_CONTROL_ERROR, "Connection window overflow");
+                }
+            }
+            else
+            {
+                // Updates for streams that already finished are expected and ignored
+                Http2Stream stream = streams.get(streamId);
+                if (stream == null) return;
+                stream.sendWindow += increment;
+                if (stream.sendWindow > MAX_WINDOW)
+                {
+                    throw new Http2Exception(Http2Exception.FLOW_CONTROL_ERROR, streamId, "Stream window overflow");
+                }
+            }
+            flow.notifyAll();
+        }
+    }
+
+    private static void requireStream(int streamId, String frame)
+    {
+        if (streamId == 0) throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, frame + " must be sent on a stream");
+    }
+
+    // Stream that still accepts request data
+    private Http2Stream openStream(int streamId, String frame)
+    {
+        Http2Stream stream = streams.get(streamId);
+        if (stream == null && streamId > lastStreamId)
+        {
+            throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, frame + " on idle stream " + streamId);
+        }
+        if (stream == null || stream.remoteClosed)
+        {
+            throw new Http2Exception(Http2Exception.STREAM_CLOSED, streamId, frame + " on closed stream");
+        }
+        return stream;
+    }
+
+    private static void stripPadding(int flags, ByteBuffer payload)
+    {
+        if ((flags & FLAG_PADDED) == 0) return;
+        if (!payload.hasRemaining()) throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "Padded frame without pad length");
+        int padding = payload.get() & 0xff;
+        if (padding > payload.remaining()) throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Padding exceeds frame");
+        payload.limit(payload.limit() - padding);
+    }
+
+    // ---- Writing ----
+
+    /**
+     * Writes a response: one header block, then DATA frames as flow control allows
+     * @return false if the stream was reset before the response was complete
+     */
+    boolean writeResponse(Http2Stream stream, Response response, boolean headOnly) throws IOException
+    {
+        StreamingBody streaming = response.getStreamingBody();
+        if (streaming != null) return writeStreamingResponse(stream, response, streaming, headOnly);
+
+        byte[] body = response.getBody();
+        int contentLength = body == null ? 0 : body.length;
+        int bodyLength = headOnly ? 0 : contentLength;
+
+        try
+        {
+            synchronized (writeLock)
+            {
+                if (stream.reset) return false;
+                ByteBuffer block = encodeHeaders(response, contentLength);
+                writeHeaders(stream.getId(), block, bodyLength == 0);
+            }
+
+            int offset = 0;
+            while (offset < bodyLength)
+            {
+                int chunk = reserveSendWindow(stream, Math.min(bodyLength - offset, peerMaxFrameSize));
+                if (chunk == 0) return false;
+
+                synchronized (writeLock)
+                {
+                    if (stream.reset) return false;
+                    boolean last = offset + chunk == bodyLength;
+                    writeFrame(DATA, last ? FLAG_END_STREAM : 0, stream.getId(), ByteBuffer.wrap(body, offset, chunk));
+                }
+                offset += chunk;
+            }
+            return true;
+        }
+        finally
+        {
+            removeStream(stream);
+        }
+    }
+
+    // Like writeResponse(), with DATA frames cut from the body as it is produced
+    private boolean writeStreamingResponse(Http2Stream stream, Response response, StreamingBody streaming,
+                                           boolean headOnly) throws IOException
+    {
+        boolean started = false;
+        try
+        {
+            synchronized (writeLock)
+            {
+                if (stream.reset) return false;
+                ByteBuffer block = encodeHeaders(response, streaming.length());
+                writeHeaders(stream.getId(), block, headOnly);
+            }
+            if (headOnly) return true;
+
+            DataOutput out = new DataOutput(stream);
+            started = true;
+            streaming.writeTo(out);
+            out.finish();
+            return true;
+        }
+        catch (StreamResetException e)
+        {
+            return false;
+        }
+        finally
+        {
+            if (!started) streaming.discard();
+            removeStream(stream);
+        }
+    }
+
+    // Abandons a stream with RST_STREAM; its writer stops at the next frame
+    void resetStream(Http2Stream stream, int errorCode)
+    {
+        if (stream.reset) return;
+        markReset(stream);
+        removeStream(stream);
+        sendReset(stream.getId(), errorCode);
+    }
+
+    private void resetStream(int streamId, int errorCode)
+    {
+        Http2Stream stream = streams.get(streamId);
+        if (stream != null)
+        {
+            resetStream(stream, errorCode);
+        }
+        else
+        {
+            sendReset(streamId, errorCode);
+        }
+    }
+
+    private void markReset(Http2Stream stream)
+    {
+        stream.reset = true;
+        synchronized (flow)
+        {
+            flow.notifyAll();
+        }
+    }
+
+    private void removeStream(Http2Stream stream)
+    {
+        if (streams.remove(stream.getId(), stream) && streams.isEmpty()) onIdle.run();
+    }
+
+    private int initialSendWindow()
+    {
+        synchronized (flow)
+        {
+            return peerInitialWindow;
+        }
+    }
+
+    /**
+     * Takes send credit from both the stream and connection windows, waiting for WINDOW_UPDATE if either is empty
+     * @return Bytes that may be sent, or 0 if the stream was reset meanwhile
+     */
+    private int reserveSendWindow(Http2Stream stream, int wanted) throws IOException
+    {
+        long deadline = System.nanoTime() + writeTimeoutNanos;
+        synchronized (flow)
+        {
+            while (connectionSendWindow <= 0 || stream.sendWindow <= 0)
+            {
+                if (closed) throw new ClosedChannelException();
+                if (stream.reset) return 0;
+
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) throw new IOException("HTTP/2 flow-control window stalled");
+                try
+                {
+                    flow.wait(TimeUnit.NANOSECONDS.toMillis(remaining) + 1);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for flow-control credit");
+                }
+            }
+            if (stream.reset) return 0;
+
+            int granted = (int) Math.min(wanted, Math.min(connectionSendWindow, stream.sendWindow));
+            connectionSendWindow -= granted;
+            stream.sendWindow -= granted;
+            return granted;
+        }
+    }
+
+    // :status, the handler's headers without HTTP/1 framing headers, then server, date and content-length
+    private ByteBuffer encodeHeaders(Response response, long contentLength)
+    {
+        Map<Header, String> headers = response.getHeaders();
+        int estimate = 256;
+        for (Map.Entry<Header, String> entry : headers.entrySet())
+        {
+            estimate += HpackEncoder.maxEncodedSize(HEADER_NAMES[entry.getKey().ordinal()], entry.getValue()) + entry.getValue().length() * 2;
+        }
+        for (Map.Entry<String, String> entry : response.getOtherHeaders())
+        {
+            estimate += HpackEncoder.maxEncodedSize(entry.getKey(), entry.getValue()) + entry.getValue().length() * 2;
+        }
+        if (headerScratch.capacity() < estimate) headerScratch = ByteBuffer.allocate(estimate);
+
+        ByteBuffer out = headerScratch;
+        out.clear();
+        encoder.startBlock(out);
+        encoder.encode(out, ":status", Integer.toString(response.getStatusCode()), true);
+
+        for (Map.Entry<Header, String> entry : headers.entrySet())
+        {
+            Header header = entry.getKey();
+            if (header == Header.Connection || header == Header.Keep_Alive || header == Header.Upgrade
+                    || header == Header.Transfer_Encoding || header == Header.Content_Length)
+            {
+                continue;
+            }
+            encoder.encode(out, HEADER_NAMES[header.ordinal()], octets(entry.getValue()), header != Header.Date);
+        }
+        for (Map.Entry<String, String> entry : response.getOtherHeaders())
+        {
+            String name = entry.getKey().toLowerCase(Locale.ROOT);
+            if (name.equals("proxy-connection") || name.equals("te")) continue;
+            encoder.encode(out, name, octets(entry.getValue()), true);
+        }
+        if (!headers.containsKey(Header.Server))
+        {
+            encoder.encode(out, HEADER_NAMES[Header.Server.ordinal()], ResponseEncoder.SERVER_NAME, true);
+        }
+        if (!headers.containsKey(Header.Date))
+        {
+            encoder.encode(out, HEADER_NAMES[Header.Date.ordinal()], HttpDate.current(), false);
+        }
+        if (contentLength >= 0)
+        {
+            encoder.encode(out, HEADER_NAMES[Header.Content_Length.ordinal()], Long.toString(contentLength), false);
+        }
+
+        out.flip();
+        return out;
+    }
+
+    // HEADERS, plus CONTINUATION frames when the block exceeds the peer's frame size
+    private void writeHeaders(int streamId, ByteBuffer block, boolean endStream) throws IOException
+    {
+        int maxFrame = peerMaxFrameSize;
+        boolean first = true;
+        do
+        {
+            ByteBuffer fragment = block.slice();
+            fragment.limit(Math.min(block.remaining(), maxFrame));
+            block.position(block.position() + fragment.remaining());
+
+            int flags = block.hasRemaining() ? 0 : FLAG_END_HEADERS;
+            if (first && endStream) flags |= FLAG_END_STREAM;
+            writeFrame(first ? HEADERS : CONTINUATION, flags, streamId, fragment);
+            first = false;
+        }
+        while (block.hasRemaining());
+    }
+
+    private void sendWindowUpdate(int streamId, int increment) throws IOException
+    {
+        synchronized (writeLock)
+        {
+            writeFrame(WINDOW_UPDATE, 0, streamId, windowIncrement(increment));
+        }
+    }
+
+    // Failures are ignored: a connection that cannot take a reset is about to be closed anyway
+    private void sendReset(int streamId, int errorCode)
+    {
+        ByteBuffer payload = ByteBuffer.allocate(4).putInt(errorCode).flip();
+        try
+        {
+            synchronized (writeLock)
+            {
+                writeFrame(RST_STREAM, 0, streamId, payload);
+            }
+        }
+        catch (IOException ignored) {}
+    }
+
+    private void sendGoAway(int errorCode, String debugData)
+    {
+        goingAway = true;
+        if (!goAwaySent.compareAndSet(false, true)) return;
+
+        byte[] debug = debugData == null ? new byte[0] : debugData.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(8 + debug.length);
+        payload.putInt(lastStreamId).putInt(errorCode).put(debug).flip();
+        try
+        {
+            synchronized (writeLock)
+            {
+                writeFrame(GOAWAY, 0, 0, payload);
+            }
+        }
+        catch (IOException ignored) {}
+    }
+
+    // Writes one frame; callers hold writeLock
+    private void writeFrame(int type, int flags, int streamId, ByteBuffer payload) throws IOException
+    {
+        int length = payload.remaining();
+        frameHeader.clear();
+        frameHeader.put((byte) (length >>> 16)).put((byte) (length >>> 8)).put((byte) length)
+                .put((byte) type).put((byte) flags).putInt(streamId);
+        frameHeader.flip();
+
+        gather[0] = frameHeader;
+        gather[1] = payload;
+        try
+        {
+            ChannelWrites.writeFully(channel, gather, writeTimeoutNanos);
+        }
+        finally
+        {
+            gather[0] = null;
+            gather[1] = null;
+        }
+    }
+
+    private static ByteBuffer windowIncrement(int increment)
+    {
+        return ByteBuffer.allocate(4).putInt(increment).flip();
+    }
+
+    // HPACK strings are octets; non-ASCII values go out as UTF-8, like the HTTP/1.1 encoder
+    private static String octets(String value)
+    {
+        for (int i = 0; i < value.length(); i++)
+        {
+            if (value.charAt(i) >= 0x80)
+            {
+                return new String(value.getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1);
+            }
+        }
+        return value;
+    }
+
+    private static byte[] ascii(String text)
+    {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // Thrown into a StreamingBody's writeTo() when the client resets its stream
+    private static final class StreamResetException extends IOException
+    {
+        private static final long serialVersionUID = 1L;
+
+        StreamResetException()
+        {
+            super("HTTP/2 stream was reset");
+        }
+    }
+
+    /**
+     * Collects a streaming body into frame-sized DATA frames, waiting for flow-control credit as needed
+     */
+    private final class DataOutput extends OutputStream
+    {
+        private final Http2Stream stream;
+        private final byte[] frame = new byte[peerMaxFrameSize];
+        private int filled;
+
+        DataOutput(Http2Stream stream)
+        {
+            this.stream = stream;
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            if (filled == frame.length) send(false);
+            frame[filled++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException
+        {
+            while (length > 0)
+            {
+                if (filled == frame.length) send(false);
+                int n = Math.min(length, frame.length - filled);
+                System.arraycopy(data, offset, frame, filled, n);
+                filled += n;
+                offset += n;
+                length -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException
+        {
+            if (filled > 0) send(false);
+        }
+
+        // Sends what is left with END_STREAM
+        void finish() throws IOException
+        {
+            send(true);
+        }
+
+        private void send(boolean last) throws IOException
+        {
+            int offset = 0;
+            do
+            {
+                int chunk = 0;
+                if (filled > offset)
+                {
+                    chunk = reserveSendWindow(stream, filled - offset);
+                    if (chunk == 0) throw new StreamResetException();
+                }
+                synchronized (writeLock)
+                {
+                    if (stream.reset) throw new StreamResetException();
+                    boolean end = last && offset + chunk == filled;
+                    writeFrame(DATA, end ? FLAG_END_STREAM : 0, stream.getId(), ByteBuffer.wrap(frame, offset, chunk));
+                }
+                offset += chunk;
+            }
+            while (offset < filled);
+            filled = 0;
+        }
+    }
+}
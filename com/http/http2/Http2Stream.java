@@ -0,0 +1,75 @@
+package com.http.http2;
+
+import com.http.model.common.Headers;
+import com.http.model.request.HttpVerb;
+import com.http.model.response.Response;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * One request/response exchange on an HTTP/2 connection
+ * The connection's reader fills in headers and body; once the client has
+ * finished sending, the stream is dispatched and answered with respond()
+ * from whichever thread produced the response.
+ */
+public final class Http2Stream
+{
+    private final int id;
+    private final Http2Connection connection;
+
+    // Request side, touched only by the connection's reader
+    final Headers headers = new Headers();
+    final ByteArrayOutputStream body = new ByteArrayOutputStream(0);
+    String method;
+    String path;
+    String authority;
+    int receiveWindow;
+    int unacknowledged;
+    boolean remoteClosed;
+
+    // Response side, guarded by the connection's flow-control monitor
+    long sendWindow;
+    volatile boolean reset;
+    private HttpVerb verb;
+
+    Http2Stream(int id, Http2Connection connection, int receiveWindow, long sendWindow)
+    {
+        this.id = id;
+        this.connection = connection;
+        this.receiveWindow = receiveWindow;
+        this.sendWindow = sendWindow;
+    }
+
+    public int getId()
+    {
+        return id;
+    }
+
+    /**
+     * Sends the response as HEADERS and DATA frames, within the peer's flow-control windows
+     * Blocks while the windows are exhausted; HEAD responses carry no body.
+     * @return true if the whole response was written; false if the stream was reset meanwhile
+     * @throws IOException if the connection fails or stalls past the write timeout
+     */
+    public boolean respond(Response response) throws IOException
+    {
+        return connection.writeResponse(this, response, verb == HttpVerb.HEAD);
+    }
+
+    // Abandons the stream, telling the client with RST_STREAM
+    public void reset(int errorCode)
+    {
+        connection.resetStream(this, errorCode);
+    }
+
+    public boolean isReset()
+    {
+        return reset;
+    }
+
+    void setVerb(HttpVerb verb)
+    {
+        this.verb = verb;
+    }
+}
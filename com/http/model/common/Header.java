@@ -1,8 +1,5 @@
 package com.http.model.common;
 
-import java.util.HashMap;
-import java.util.Map;
-
 /**
  * Enumeration of HTTP headers supported by the server
  */
@@ -16,6 +13,12 @@ public enum Header
     Accept_Encoding("Accept-Encoding"),
     Content_Encoding("Content-Encoding"),
     Authorization("Authorization"),
+    If_None_Match("If-None-Match"),
+    If_Modified_Since("If-Modified-Since"),
+    Range("Range"),
+    Cookie("Cookie"),
+    X_Forwarded_For("X-Forwarded-For"),
+    Last_Event_ID("Last-Event-ID"),
 
     // Response-specific headers
     Server("Server"),
@@ -28,16 +31,29 @@ public enum Header
     ETag("ETag"),
     Last_Modified("Last-Modified"),
     Cache_Control("Cache-Control"),
+    Vary("Vary"),
+    Retry_After("Retry-After"),
 
     // Headers used in both requests and responses
-    Connection("Connection");
+    Connection("Connection"),
+    Transfer_Encoding("Transfer-Encoding"),
+    Upgrade("Upgrade"),
+
+    // WebSocket handshake (RFC 6455)
+    Sec_WebSocket_Key("Sec-WebSocket-Key"),
+    Sec_WebSocket_Accept("Sec-WebSocket-Accept"),
+    Sec_WebSocket_Version("Sec-WebSocket-Version");
 
     private final String headerName;
-    private static final Map<String, Header> LOOKUP_MAP = new HashMap<>();
+
+    // Open-addressed, case-insensitive name table; lookups allocate nothing
+    private static final Header[] LOOKUP_TABLE = new Header[64];
 
     static {
         for (Header header : values()) {
-            LOOKUP_MAP.put(header.headerName.toLowerCase(), header);
+            int slot = hashIgnoreCase(header.headerName) & (LOOKUP_TABLE.length - 1);
+            while (LOOKUP_TABLE[slot] != null) slot = (slot + 1) & (LOOKUP_TABLE.length - 1);
+            LOOKUP_TABLE[slot] = header;
         }
     }
 
@@ -61,6 +77,45 @@ public enum Header
      */
     public static Header fromString(String headerName) {
         if (headerName == null) return null;
-        return LOOKUP_MAP.get(headerName.toLowerCase());
+
+        int slot = hashIgnoreCase(headerName) & (LOOKUP_TABLE.length - 1);
+        Header candidate;
+        while ((candidate = LOOKUP_TABLE[slot]) != null) {
+            if (candidate.headerName.equalsIgnoreCase(headerName)) return candidate;
+            slot = (slot + 1) & (LOOKUP_TABLE.length - 1);
+        }
+        return null;
+    }
+
+    /**
+     * Like fromString, for a name inside a larger string (e.g. a header line), without copying it out
+     * @param start Index of the name's first character
+     * @param end Index just past the name's last character
+     */
+    public static Header fromRegion(String text, int start, int end) {
+        int length = end - start;
+        int slot = hashIgnoreCase(text, start, end) & (LOOKUP_TABLE.length - 1);
+        Header candidate;
+        while ((candidate = LOOKUP_TABLE[slot]) != null) {
+            if (candidate.headerName.length() == length
+                    && candidate.headerName.regionMatches(true, 0, text, start, length)) return candidate;
+            slot = (slot + 1) & (LOOKUP_TABLE.length - 1);
+        }
+        return null;
+    }
+
+    // String hash that treats ASCII letters case-insensitively
+    static int hashIgnoreCase(String name) {
+        return hashIgnoreCase(name, 0, name.length());
+    }
+
+    private static int hashIgnoreCase(String text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c >= 'A' && c <= 'Z') c += 'a' - 'A';
+            hash = 31 * hash + c;
+        }
+        return hash ^ (hash >>> 16);
     }
 }
@@ -0,0 +1,294 @@
+package com.http.model.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Multi-valued HTTP header container
+ * Well-known headers live in an array indexed by Header.ordinal(); any other
+ * name goes into a small open-addressed table with case-insensitive keys.
+ * Nothing the client sent is dropped. Not thread-safe.
+ * readOnlyView() gives handlers the same headers without add/set/clear, so
+ * only whoever owns the instance (the parser refilling it) can change it.
+ */
+public final class Headers
+{
+    private static final int KNOWN_COUNT = Header.values().length;
+    private static final int INITIAL_TABLE_SIZE = 8;
+
+    // Known headers: values per ordinal, plus how many are in use
+    private final String[][] knownValues;
+    private final int[] knownCounts;
+
+    // Other headers: linear-probing table, kept at most half full
+    private String[] otherNames = new String[INITIAL_TABLE_SIZE];
+    private int[] otherHashes = new int[INITIAL_TABLE_SIZE];
+    private String[][] otherValues = new String[INITIAL_TABLE_SIZE][];
+    private int[] otherCounts = new int[INITIAL_TABLE_SIZE];
+    private int otherSize;
+
+    // The instance a read-only view reads through; this instance itself otherwise
+    private final Headers owner;
+    private Headers readOnlyView; // created on first use
+
+    public Headers()
+    {
+        this.owner = this;
+        this.knownValues = new String[KNOWN_COUNT][];
+        this.knownCounts = new int[KNOWN_COUNT];
+    }
+
+    // Read-only view; holds no storage of its own
+    private Headers(Headers owner)
+    {
+        this.owner = owner;
+        this.knownValues = null;
+        this.knownCounts = null;
+    }
+
+    /**
+     * The same headers, read-only and always current; add, set and clear throw
+     * UnsupportedOperationException. One view per instance, reused.
+     */
+    public Headers readOnlyView()
+    {
+        if (owner != this) return this;
+        Headers view = readOnlyView;
+        if (view == null)
+        {
+            view = new Headers(this);
+            readOnlyView = view;
+        }
+        return view;
+    }
+
+    // Appends a value, keeping earlier values for the same name
+    public Headers add(String name, String value)
+    {
+        requireWritable();
+        Header known = Header.fromString(name);
+        if (known != null) return add(known, value);
+
+        int hash = Header.hashIgnoreCase(name);
+        int slot = findSlot(name, hash);
+        if (otherNames[slot] == null)
+        {
+            if ((otherSize + 1) * 2 > otherNames.length)
+            {
+                growTable();
+                slot = findSlot(name, hash);
+            }
+            otherNames[slot] = name;
+            otherHashes[slot] = hash;
+            otherSize++;
+        }
+        otherValues[slot] = append(otherValues[slot], otherCounts[slot], value);
+        otherCounts[slot]++;
+        return this;
+    }
+
+    public Headers add(Header header, String value)
+    {
+        requireWritable();
+        int index = header.ordinal();
+        knownValues[index] = append(knownValues[index], knownCounts[index], value);
+        knownCounts[index]++;
+        return this;
+    }
+
+    // Replaces all values of a header with a single value
+    public Headers set(Header header, String value)
+    {
+        requireWritable();
+        knownCounts[header.ordinal()] = 0;
+        return add(header, value);
+    }
+
+    // First value of a header, or null if absent
+    public String get(Header header)
+    {
+        if (owner != this) return owner.get(header);
+        int index = header.ordinal();
+        return knownCounts[index] == 0 ? null : knownValues[index][0];
+    }
+
+    // First value of a header by name (any case), or null if absent
+    public String get(String name)
+    {
+        if (owner != this) return owner.get(name);
+        Header known = Header.fromString(name);
+        if (known != null) return get(known);
+
+        int slot = findSlot(name, Header.hashIgnoreCase(name));
+        return otherNames[slot] == null ? null : otherValues[slot][0];
+    }
+
+    public List<String> getAll(Header header)
+    {
+        if (owner != this) return owner.getAll(header);
+        int index = header.ordinal();
+        return valueList(knownValues[index], knownCounts[index]);
+    }
+
+    public List<String> getAll(String name)
+    {
+        if (owner != this) return owner.getAll(name);
+        Header known = Header.fromString(name);
+        if (known != null) return getAll(known);
+
+        int slot = findSlot(name, Header.hashIgnoreCase(name));
+        return otherNames[slot] == null
+                ? Collections.emptyList()
+                : valueList(otherValues[slot], otherCounts[slot]);
+    }
+
+    public boolean contains(Header header)
+    {
+        if (owner != this) return owner.contains(header);
+        return knownCounts[header.ordinal()] != 0;
+    }
+
+    public boolean contains(String name)
+    {
+        return get(name) != null;
+    }
+
+    public boolean isEmpty()
+    {
+        if (owner != this) return owner.isEmpty();
+        if (otherSize != 0) return false;
+        for (int count : knownCounts)
+        {
+            if (count != 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Visits every (name, value) pair; repeated headers are visited once per value
+     * Known headers use their canonical spelling, others the spelling received
+     */
+    public void forEach(BiConsumer<String, String> visitor)
+    {
+        if (owner != this)
+        {
+            owner.forEach(visitor);
+            return;
+        }
+        Header[] headers = Header.values();
+        for (int i = 0; i < KNOWN_COUNT; i++)
+        {
+            for (int v = 0; v < knownCounts[i]; v++)
+            {
+                visitor.accept(headers[i].getHeaderValue(), knownValues[i][v]);
+            }
+        }
+        for (int slot = 0; slot < otherNames.length; slot++)
+        {
+            if (otherNames[slot] == null) continue;
+            for (int v = 0; v < otherCounts[slot]; v++)
+            {
+                visitor.accept(otherNames[slot], otherValues[slot][v]);
+            }
+        }
+    }
+
+    // Independent copy holding the same names and values
+    public Headers copy()
+    {
+        Headers copy = new Headers();
+        forEach(copy::add);
+        return copy;
+    }
+
+    // Removes all headers but keeps the allocated storage for reuse
+    public void clear()
+    {
+        requireWritable();
+        Arrays.fill(knownCounts, 0);
+        if (otherSize != 0)
+        {
+            Arrays.fill(otherNames, null);
+            Arrays.fill(otherCounts, 0);
+            otherSize = 0;
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        if (owner != this) return owner.toString();
+        StringBuilder text = new StringBuilder("{");
+        forEach((name, value) -> text.append(text.length() > 1 ? ", " : "").append(name).append('=').append(value));
+        return text.append('}').toString();
+    }
+
+    private void requireWritable()
+    {
+        if (owner != this) throw new UnsupportedOperationException("Headers are read-only");
+    }
+
+    // Slot holding the name, or the empty slot where it would be inserted
+    private int findSlot(String name, int hash)
+    {
+        int mask = otherNames.length - 1;
+        int slot = hash & mask;
+        while (otherNames[slot] != null)
+        {
+            if (otherHashes[slot] == hash && otherNames[slot].equalsIgnoreCase(name)) return slot;
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void growTable()
+    {
+        String[] names = otherNames;
+        int[] hashes = otherHashes;
+        String[][] values = otherValues;
+        int[] counts = otherCounts;
+
+        int capacity = names.length * 2;
+        otherNames = new String[capacity];
+        otherHashes = new int[capacity];
+        otherValues = new String[capacity][];
+        otherCounts = new int[capacity];
+
+        for (int i = 0; i < names.length; i++)
+        {
+            if (names[i] == null) continue;
+            int slot = findSlot(names[i], hashes[i]);
+            otherNames[slot] = names[i];
+            otherHashes[slot] = hashes[i];
+            otherValues[slot] = values[i];
+            otherCounts[slot] = counts[i];
+        }
+    }
+
+    private static String[] append(String[] values, int count, String value)
+    {
+        if (values == null)
+        {
+            values = new String[1];
+        }
+        else if (count == values.length)
+        {
+            values = Arrays.copyOf(values, count * 2);
+        }
+        values[count] = value;
+        return values;
+    }
+
+    private static List<String> valueList(String[] values, int count)
+    {
+        if (count == 0) return Collections.emptyList();
+        if (count == 1) return Collections.singletonList(values[0]);
+
+        List<String> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) list.add(values[i]);
+        return Collections.unmodifiableList(list);
+    }
+}
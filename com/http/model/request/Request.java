@@ -1,28 +1,89 @@
 package com.http.model.request;
 
 import com.http.model.common.Header;
+import com.http.model.common.Headers;
+import com.http.model.common.HttpDelimiter;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
 /**
- * Immutable representation of an HTTP request
+ * Read-only representation of an HTTP request
+ * Holds the raw request target and body bytes; the URI, query parameters
+ * and body text are decoded on first access and memoised.
+ * Requests parsed from an HTTP/1 connection are recycled: the connection's
+ * RequestSlot refills the same instance (and its Headers) for the next
+ * request once the response has been written. Anything that uses a request
+ * after its response, e.g. a background task, must keep copy() instead.
  */
 public final class Request 
 {
-    private final HttpVerb httpMethod;
-    private final String requestPath;
-    private final String protocolVersion;
-    private final Map<Header, String> headerMap;
-    private final String requestBody;
-    private final URI uriObject;
-    private final Map<String, String> queryParams;
-
-    public Request(HttpVerb verb, String resource, String httpVersion, Map<Header, String> headers, String body)
+    private static final byte[] NO_BODY = new byte[0];
+
+    private HttpVerb httpMethod;
+    private String requestPath;
+    private String protocolVersion;
+    private Headers headerMap;
+    private byte[] requestBody;
+
+    // Whether a RequestSlot reuses this instance
+    private final boolean recycled;
+
+    // Decoded lazily from requestPath / requestBody
+    private volatile String pathOnly;
+    private volatile URI uriObject;
+    private volatile Map<String, List<String>> queryParams;
+    private volatile Map<String, String> firstQueryParams;
+    private volatile Optional<String> bodyText;
+
+    public Request(HttpVerb verb, String resource, String httpVersion, Headers headers, byte[] body)
+            throws IllegalArgumentException 
+    {
+        this.recycled = false;
+        init(verb, resource, httpVersion, headers, body);
+    }
+
+    public Request(HttpVerb verb, String resource, String httpVersion, Headers headers, String body)
             throws IllegalArgumentException 
+    {
+        this(verb, resource, httpVersion, headers, body == null ? null : body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Empty instance for a RequestSlot, filled by reset()
+    Request()
+    {
+        this.recycled = true;
+    }
+
+    // Refills a recycled instance for the connection's next request
+    void reset(HttpVerb verb, String resource, String httpVersion, Headers headers, byte[] body)
+    {
+        pathOnly = null;
+        uriObject = null;
+        queryParams = null;
+        firstQueryParams = null;
+        bodyText = null;
+        init(verb, resource, httpVersion, headers, body);
+    }
+
+    /**
+     * Detached copy that stays valid after the response is written
+     * A request that is not recycled is already safe to keep and is returned as is.
+     */
+    public Request copy()
+    {
+        if (!recycled) return this;
+        return new Request(httpMethod, requestPath, protocolVersion, headerMap.copy(), requestBody);
+    }
+
+    private void init(HttpVerb verb, String resource, String httpVersion, Headers headers, byte[] body)
     {
         validateVerb(verb);
         this.httpMethod = verb;
@@ -33,28 +94,17 @@ public final class Request
         validateHttpVersion(httpVersion);
         this.protocolVersion = httpVersion;
 
-        this.headerMap = (headers == null) ? Collections.emptyMap() : Map.copyOf(headers);
+        // Headers are handed over by the parser, not copied
+        this.headerMap = (headers == null) ? new Headers() : headers;
 
         // Validate body
         validateBody(body, this.httpMethod);
         this.requestBody = body;
-
-        // Parse URI and query parameters
-        try 
-        {
-            this.uriObject = new URI(resource);
-        } 
-        catch (URISyntaxException e) 
-        {
-            throw new IllegalArgumentException("Invalid resource path format: '" + resource + "'. " + e.getMessage());
-        }
-
-        this.queryParams = parseQueryParams(this.uriObject.getQuery());
     }
 
-    private void validateBody(String body, HttpVerb verb) 
+    private void validateBody(byte[] body, HttpVerb verb)
     {
-        boolean bodyPresent = body != null && !body.trim().isEmpty();
+        boolean bodyPresent = body != null && body.length > 0;
         boolean bodyRequired = (verb == HttpVerb.POST || verb == HttpVerb.PUT || verb == HttpVerb.PATCH);
 
         if (bodyPresent && !bodyRequired) 
@@ -93,34 +143,145 @@ public final class Request
         }
     }
 
-    private Map<String, String> parseQueryParams(String query) 
+    // Splits and percent-decodes the query string; repeated keys keep every value
+    private Map<String, List<String>> parseQueryParams()
     {
-        if (query == null || query.isEmpty()) return Collections.emptyMap();
+        int queryStart = requestPath.indexOf('?');
+        if (queryStart < 0 || queryStart == requestPath.length() - 1) return Collections.emptyMap();
 
-        Map<String, String> params = new HashMap<>();
-        String[] pairs = query.split("&");
-        for (String pair : pairs) 
+        int queryEnd = requestPath.indexOf('#', queryStart);
+        String query = requestPath.substring(queryStart + 1, queryEnd < 0 ? requestPath.length() : queryEnd);
+
+        Map<String, List<String>> params = new LinkedHashMap<>();
+        for (String pair : query.split(HttpDelimiter.QueryParamDelimiter.getDelimiterValue()))
         {
-            String[] keyVal = pair.split("=", 2);
-            if (keyVal.length == 2) params.put(keyVal[0], keyVal[1]);
+            if (pair.isEmpty()) continue;
+
+            int equals = pair.indexOf(HttpDelimiter.KeyValueDelimiter.getDelimiterValue());
+            String key = decode(equals < 0 ? pair : pair.substring(0, equals));
+            String value = equals < 0 ? "" : decode(pair.substring(equals + 1));
+            params.computeIfAbsent(key, k -> new ArrayList<>(1)).add(value);
         }
+
+        params.replaceAll((key, values) -> Collections.unmodifiableList(values));
         return Collections.unmodifiableMap(params);
     }
 
+    private static String decode(String component)
+    {
+        try 
+        {
+            return URLDecoder.decode(component, StandardCharsets.UTF_8);
+        }
+        catch (IllegalArgumentException e)
+        {
+            // Malformed escape: keep the raw text rather than failing the request
+            return component;
+        }
+    }
+
     // --- Public Getters ---
     public HttpVerb getVerb() { return this.httpMethod; }
 
     public String getResource() { return requestPath; }
 
+    // Request target without query string or fragment
+    public String getPath()
+    {
+        String path = pathOnly;
+        if (path == null)
+        {
+            path = requestPath;
+            for (int i = 0; i < requestPath.length(); i++)
+            {
+                char c = requestPath.charAt(i);
+                if (c == '?' || c == '#')
+                {
+                    path = requestPath.substring(0, i);
+                    break;
+                }
+            }
+            pathOnly = path;
+        }
+        return path;
+    }
+
     public String getHttpVersion() { return protocolVersion; }
 
-    public Map<Header, String> getHeaders() { return headerMap; }
+    // Read-only; the parser that owns the headers refills them for the connection's next request
+    public Headers getHeaders() { return headerMap.readOnlyView(); }
+
+    public String getHeader(Header header) { return headerMap.get(header); }
+
+    public String getHeader(String name) { return headerMap.get(name); }
+
+    public Optional<String> getBody()
+    {
+        Optional<String> text = bodyText;
+        if (text == null)
+        {
+            text = (requestBody == null) ? Optional.empty()
+                    : Optional.of(new String(requestBody, StandardCharsets.UTF_8));
+            bodyText = text;
+        }
+        return text;
+    }
+
+    // Raw body bytes; empty when the request has no body
+    public byte[] getBodyBytes() { return requestBody == null ? NO_BODY : requestBody; }
+
+    // First value of each query parameter
+    public Map<String, String> getQueryParams()
+    {
+        Map<String, String> params = firstQueryParams;
+        if (params == null)
+        {
+            Map<String, String> first = new LinkedHashMap<>();
+            getQueryParamValues().forEach((key, values) -> first.put(key, values.get(0)));
+            params = Collections.unmodifiableMap(first);
+            firstQueryParams = params;
+        }
+        return params;
+    }
 
-    public Optional<String> getBody() { return Optional.ofNullable(this.requestBody); }
+    // Every value of each query parameter, in request order
+    public Map<String, List<String>> getQueryParamValues()
+    {
+        Map<String, List<String>> params = queryParams;
+        if (params == null)
+        {
+            params = parseQueryParams();
+            queryParams = params;
+        }
+        return params;
+    }
 
-    public Map<String, String> getQueryParams() { return queryParams; }
+    public String getQueryParam(String key)
+    {
+        List<String> values = getQueryParamValues().get(key);
+        return values == null ? null : values.get(0);
+    }
 
-    public String getQueryParam(String key) { return queryParams.get(key); }
+    public List<String> getQueryParams(String key)
+    {
+        return getQueryParamValues().getOrDefault(key, Collections.emptyList());
+    }
 
-    public URI getUri() { return uriObject; }
+    public URI getUri()
+    {
+        URI uri = uriObject;
+        if (uri == null)
+        {
+            try
+            {
+                uri = new URI(requestPath);
+            }
+            catch (URISyntaxException e)
+            {
+                throw new IllegalArgumentException("Invalid resource path format: '" + requestPath + "'. " + e.getMessage());
+            }
+            uriObject = uri;
+        }
+        return uri;
+    }
 }
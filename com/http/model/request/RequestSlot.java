@@ -0,0 +1,25 @@
+package com.http.model.request;
+
+import com.http.model.common.Headers;
+
+/**
+ * A connection's reusable Request, refilled for each request it serves
+ * Only the holder of the slot (the connection's parser) can refill the
+ * request; handlers see the Request itself, which has no setters. Refilling
+ * is safe once the previous response has been written, since HTTP/1
+ * connections serve one request at a time.
+ */
+public final class RequestSlot
+{
+    private final Request request = new Request();
+
+    /**
+     * Refills the slot's request; the previous contents are gone afterwards
+     * @throws IllegalArgumentException under the same rules as the Request constructor
+     */
+    public Request fill(HttpVerb verb, String resource, String httpVersion, Headers headers, byte[] body)
+    {
+        request.reset(verb, resource, httpVersion, headers, body);
+        return request;
+    }
+}
@@ -4,42 +4,97 @@ import com.http.model.common.Header;
 
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.text.SimpleDateFormat;
+import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Date;
-import java.util.HashMap;
+import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
-import java.util.TimeZone;
 
 /**
  * Represents an HTTP response with status, headers, and body
  * Uses builder pattern for construction
+ * Date, Server, Content-Length and Connection are framing headers added
+ * by the ResponseEncoder when the response is written
+ * The body is either a byte[] or a StreamingBody written as it is produced.
+ * A status the Status enum does not list (e.g. relayed from an upstream)
+ * is kept as its raw code and reason phrase; getStatus() is null then.
  */
 public class Response 
 {
     private final Status statusCode;
+    private final int rawCode;
+    private final String rawReasonPhrase;
     private final Map<Header, String> headerMap;
     private final String protocolVersion;
+    private final List<Map.Entry<String, String>> otherHeaders;
     private final byte[] responseBody;
+    private final StreamingBody streamingBody;
+    private final byte[] encodedHead;
 
     private Response(Builder builder) 
     {
         this.statusCode = builder.responseStatus;
+        this.rawCode = builder.rawCode;
+        this.rawReasonPhrase = builder.rawReasonPhrase;
         this.headerMap = Collections.unmodifiableMap(builder.responseHeaders);
+        this.otherHeaders = builder.otherHeaders == null
+                ? Collections.emptyList() : Collections.unmodifiableList(builder.otherHeaders);
         this.protocolVersion = builder.protocolVersion;
         this.responseBody = builder.bodyContent;
+        this.streamingBody = builder.streamingBody;
+        this.encodedHead = null;
     }
 
+    private Response(Response source, byte[] encodedHead) 
+    {
+        this.statusCode = source.statusCode;
+        this.rawCode = source.rawCode;
+        this.rawReasonPhrase = source.rawReasonPhrase;
+        this.headerMap = source.headerMap;
+        this.otherHeaders = source.otherHeaders;
+        this.protocolVersion = source.protocolVersion;
+        this.responseBody = source.responseBody;
+        this.streamingBody = source.streamingBody;
+        this.encodedHead = encodedHead;
+    }
+
+    /**
+     * Same response carrying its already-encoded stable head
+     * (see ResponseEncoder.encodeStableHead), so repeat sends skip header encoding
+     */
+    public static Response preEncoded(Response source, byte[] encodedHead) 
+    {
+        return new Response(source, encodedHead);
+    }
+
+    // Null only for a raw status the enum does not list; see getStatusCode()
     public Status getStatus() 
     {
         return statusCode;
     }
 
+    public int getStatusCode() 
+    {
+        return statusCode != null ? statusCode.getStatusCode() : rawCode;
+    }
+
+    public String getReasonPhrase() 
+    {
+        return statusCode != null ? statusCode.getStatusMessage() : rawReasonPhrase;
+    }
+
     public Map<Header, String> getHeaders() 
     {
         return headerMap;
     }
 
+    // Headers without a Header constant, in the order added; names may repeat (e.g. Set-Cookie)
+    public List<Map.Entry<String, String>> getOtherHeaders() 
+    {
+        return otherHeaders;
+    }
+
     public String getHttpVersion() 
     {
         return protocolVersion;
@@ -50,20 +105,54 @@ public class Response
         return responseBody;
     }
 
+    // Body written as it is produced, or null for a byte[] body
+    public StreamingBody getStreamingBody() 
+    {
+        return streamingBody;
+    }
+
+    // Pre-encoded head without Date/Connection, or null if not pre-encoded
+    public byte[] getEncodedHead() 
+    {
+        return encodedHead;
+    }
+
     /**
      * Builder class for constructing HttpResponse objects
      */
     public static class Builder 
     {
         private Status responseStatus;
+        private int rawCode;
+        private String rawReasonPhrase;
+        private boolean defaultContentType = true;
         private Map<Header, String> responseHeaders;
+        private List<Map.Entry<String, String>> otherHeaders; // allocated on first use
         private byte[] bodyContent;
+        private StreamingBody streamingBody;
         private String protocolVersion = "HTTP/1.1";
 
         public Builder(Status status) 
         {
             this.responseStatus = status;
-            this.responseHeaders = new HashMap<>();
+            this.responseHeaders = new EnumMap<>(Header.class);
+        }
+
+        /**
+         * Builder for a status given by number, e.g. one relayed from an upstream
+         * Codes the Status enum lists use its constant; any other is kept as is.
+         * @param reasonPhrase Reason phrase sent for an unlisted code
+         */
+        public Builder(int code, String reasonPhrase) 
+        {
+            if (code < 100 || code > 999)
+            {
+                throw new IllegalArgumentException("Invalid status code: " + code);
+            }
+            this.responseStatus = Status.fromCode(code);
+            this.rawCode = code;
+            this.rawReasonPhrase = reasonPhrase;
+            this.responseHeaders = new EnumMap<>(Header.class);
         }
 
         public Builder protocolVersion(String version) 
@@ -78,12 +167,45 @@ public class Response
             return this;
         }
 
-        public Builder body(String textContent, Charset encoding) 
+        /**
+         * Header by name; known names map to their Header constant (replacing an earlier value),
+         * any other name is added as is
+         */
+        public Builder header(String headerName, String headerValue) 
+        {
+            Header known = Header.fromString(headerName);
+            if (known != null) return header(known, headerValue);
+            if (this.otherHeaders == null) this.otherHeaders = new ArrayList<>(4);
+            this.otherHeaders.add(new AbstractMap.SimpleImmutableEntry<>(headerName, headerValue));
+            return this;
+        }
+
+        /**
+         * Header by name, kept alongside any earlier header of the same name instead of replacing it
+         * For relaying headers such as Cache-Control or Vary that may be repeated.
+         */
+        public Builder addHeader(String headerName, String headerValue) 
+        {
+            Header known = Header.fromString(headerName);
+            if (known != null && !this.responseHeaders.containsKey(known)) return header(known, headerValue);
+            if (this.otherHeaders == null) this.otherHeaders = new ArrayList<>(4);
+            String name = known != null ? known.getHeaderValue() : headerName;
+            this.otherHeaders.add(new AbstractMap.SimpleImmutableEntry<>(name, headerValue));
+            return this;
+        }
+
+        // Leaves Content-Type out when none was set, instead of defaulting to text/plain
+        public Builder withoutDefaultContentType() 
         {
-            this.bodyContent = textContent.getBytes(encoding);
+            this.defaultContentType = false;
             return this;
         }
 
+        public Builder body(String textContent, Charset encoding) 
+        {
+            return this.body(textContent.getBytes(encoding));
+        }
+
         public Builder body(String textContent) 
         {
             return this.body(textContent, StandardCharsets.UTF_8);
@@ -92,46 +214,26 @@ public class Response
         public Builder body(byte[] binaryContent) 
         {
             this.bodyContent = binaryContent;
+            this.streamingBody = null;
             return this;
         }
 
-        public Response build() 
+        public Builder body(StreamingBody stream) 
         {
-            // Standard HTTP headers
-            this.header(Header.Date, getCurrentHttpDate());
-            this.header(Header.Server, "My Custom HTTP Java Server v0.1");
-
-            // Content-Length header
-            if (this.bodyContent != null) 
-            {
-                this.header(Header.Content_Length, String.valueOf(this.bodyContent.length));
-            } 
-            else 
-            {
-                this.header(Header.Content_Length, "0");
-            }
+            this.streamingBody = stream;
+            this.bodyContent = null;
+            return this;
+        }
 
+        public Response build() 
+        {
             // Default Content-Type if missing
-            if (!this.responseHeaders.containsKey(Header.Content_Type)) 
+            if (defaultContentType && !this.responseHeaders.containsKey(Header.Content_Type)) 
             {
                 this.header(Header.Content_Type, "text/plain; charset=utf-8");
             }
 
-            // Default Connection header
-            if (!this.responseHeaders.containsKey(Header.Connection)) 
-            {
-                this.header(Header.Connection, "close");
-            }
-
             return new Response(this);
         }
-
-        // Returns current date in HTTP format
-        private String getCurrentHttpDate() 
-        {
-            SimpleDateFormat dateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz");
-            dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
-            return dateFormat.format(new Date());
-        }
     }
 }
@@ -8,11 +8,23 @@ import java.util.Map;
  */
 public enum Status 
 {
+    // 1xx Informational codes
+    SWITCHING_PROTOCOLS_101(101, "Switching Protocols"),
+
     // 2xx Success codes
     OK_200(200, "OK"),
     CREATED_201(201, "Created"),
     ACCEPTED_202(202, "Accepted"),
     NO_CONTENT_204(204, "No Content"),
+    PARTIAL_CONTENT_206(206, "Partial Content"),
+
+    // 3xx Redirection codes
+    MOVED_PERMANENTLY_301(301, "Moved Permanently"),
+    FOUND_302(302, "Found"),
+    SEE_OTHER_303(303, "See Other"),
+    NOT_MODIFIED_304(304, "Not Modified"),
+    TEMPORARY_REDIRECT_307(307, "Temporary Redirect"),
+    PERMANENT_REDIRECT_308(308, "Permanent Redirect"),
 
     // 4xx Client error codes
     BAD_REQUEST_400(400, "Bad Request"),
@@ -23,10 +35,15 @@ public enum Status
     CONFLICT_409(409, "Conflict"),
     UNSUPPORTED_MEDIA_TYPE_415(415, "Unsupported Media Type"),
     PAYLOAD_TOO_LARGE_413(413, "Payload Too Large"),
+    UPGRADE_REQUIRED_426(426, "Upgrade Required"),
+    TOO_MANY_REQUESTS_429(429, "Too Many Requests"),
 
     // 5xx Server error codes
     INTERNAL_SERVER_ERROR_500(500, "Internal Server Error"),
-    SERVICE_UNAVAILABLE_503(503, "Service Unavailable");
+    NOT_IMPLEMENTED_501(501, "Not Implemented"),
+    BAD_GATEWAY_502(502, "Bad Gateway"),
+    SERVICE_UNAVAILABLE_503(503, "Service Unavailable"),
+    GATEWAY_TIMEOUT_504(504, "Gateway Timeout");
 
     private final String reasonPhrase;
     private final int code;
@@ -0,0 +1,26 @@
+package com.http.model.response;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A response body produced while it is written, instead of held in memory
+ * The encoder calls writeTo() once; a response that is never written
+ * (e.g. its stream was reset) gets discard() instead, so whatever the
+ * body reads from can be released either way. Such responses cannot be
+ * cached or shared between requests.
+ */
+public interface StreamingBody
+{
+    // Body size in bytes, or -1 if it is only known once the body ends
+    long length();
+
+    /**
+     * Copies the whole body to the client and releases its source
+     * @throws IOException if reading the source or writing to out fails
+     */
+    void writeTo(OutputStream out) throws IOException;
+
+    // Releases the source without sending it
+    void discard();
+}
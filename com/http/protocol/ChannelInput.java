@@ -0,0 +1,174 @@
+package com.http.protocol;
+
+import com.http.buffer.BufferPool;
+import com.http.exception.InvalidRequestException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Buffered byte reader over a blocking channel
+ * Reads into a pooled direct buffer; the request line and headers are read
+ * as ISO-8859-1 lines and bodies are copied out as raw bytes.
+ * close() hands the buffer back to the pool once the connection is finished.
+ */
+public final class ChannelInput implements AutoCloseable
+{
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    private final ReadableByteChannel channel;
+    private final BufferPool pool;
+    private ByteBuffer buffer;
+    private byte[] lineScratch = new byte[256];
+
+    public ChannelInput(ReadableByteChannel channel)
+    {
+        this(channel, BufferPool.shared());
+    }
+
+    public ChannelInput(ReadableByteChannel channel, BufferPool pool)
+    {
+        this.channel = channel;
+        this.pool = pool;
+        this.buffer = pool.acquire(READ_BUFFER_SIZE);
+        this.buffer.flip(); // start empty, in read mode
+    }
+
+    /**
+     * Reads one line terminated by LF (an optional preceding CR is dropped)
+     * @return Line without terminator, or null if the stream ended first
+     * @throws InvalidRequestException if the line does not fit the read buffer
+     */
+    public String readLine() throws IOException
+    {
+        int scanned = 0;
+        while (true)
+        {
+            int limit = buffer.limit();
+            for (int i = buffer.position() + scanned; i < limit; i++)
+            {
+                if (buffer.get(i) == '\n')
+                {
+                    return takeLine(i);
+                }
+            }
+            scanned = buffer.remaining();
+
+            if (buffer.position() == 0 && limit == buffer.capacity())
+            {
+                throw new InvalidRequestException("Request line or header exceeds " + buffer.capacity() + " bytes");
+            }
+            if (fill() < 0)
+            {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Reads up to length bytes into the destination array
+     * @return Number of bytes read, or -1 at end of stream
+     */
+    public int read(byte[] destination, int offset, int length) throws IOException
+    {
+        if (!buffer.hasRemaining())
+        {
+            // Large reads bypass the staging buffer
+            if (length >= buffer.capacity())
+            {
+                return channel.read(ByteBuffer.wrap(destination, offset, length));
+            }
+            if (fill() < 0) return -1;
+        }
+
+        int count = Math.min(length, buffer.remaining());
+        buffer.get(destination, offset, count);
+        return count;
+    }
+
+    /**
+     * Performs a single read from the channel into the buffer
+     * On a non-blocking channel this returns 0 when no data is waiting.
+     * @return Number of bytes read, or -1 at end of stream
+     */
+    public int readAvailable() throws IOException
+    {
+        return fill();
+    }
+
+    /**
+     * Whether the buffered bytes hold a complete request head (up to the blank line),
+     * or the buffer is full so reading cannot wait for more
+     */
+    public boolean hasBufferedHead()
+    {
+        if (buffer.position() == 0 && buffer.limit() == buffer.capacity()) return true;
+
+        int limit = buffer.limit();
+        for (int i = buffer.position() + 1; i < limit; i++)
+        {
+            if (buffer.get(i) != '\n') continue;
+            byte previous = buffer.get(i - 1);
+            if (previous == '\n' || (previous == '\r' && i >= 2 && buffer.get(i - 2) == '\n')) return true;
+        }
+        return false;
+    }
+
+    // Whether the unconsumed bytes begin with the given prefix (false while fewer are buffered)
+    public boolean startsWith(byte[] prefix)
+    {
+        if (buffer.remaining() < prefix.length) return false;
+        int start = buffer.position();
+        for (int i = 0; i < prefix.length; i++)
+        {
+            if (buffer.get(start + i) != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    // Bytes already buffered beyond what has been consumed
+    public int available()
+    {
+        return buffer.remaining();
+    }
+
+    @Override
+    public void close()
+    {
+        pool.release(buffer);
+        buffer = null;
+    }
+
+    private String takeLine(int newlineIndex)
+    {
+        int start = buffer.position();
+        int end = newlineIndex;
+        if (end > start && buffer.get(end - 1) == '\r') end--;
+
+        int length = end - start;
+        if (lineScratch.length < length)
+        {
+            lineScratch = new byte[Math.max(length, lineScratch.length * 2)];
+        }
+        buffer.get(lineScratch, 0, length);
+        buffer.position(newlineIndex + 1);
+
+        return new String(lineScratch, 0, length, StandardCharsets.ISO_8859_1);
+    }
+
+    // Compacts unread bytes to the front and reads more from the channel
+    private int fill() throws IOException
+    {
+        buffer.compact();
+        try
+        {
+            return channel.read(buffer);
+        }
+        finally
+        {
+            buffer.flip();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.http.protocol;
+
+import com.http.tls.TlsChannel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Complete writes on non-blocking channels, for connections that are parked
+ * on the poller while other threads write to them (HTTP/2, WebSocket)
+ * A full socket buffer is waited out with a short, growing back-off rather
+ * than by switching the channel to blocking mode. On a TlsChannel the
+ * encrypted remainder is flushed as well.
+ */
+public final class ChannelWrites
+{
+    private static final long MIN_BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private ChannelWrites()
+    {
+    }
+
+    /**
+     * Writes every remaining byte of the buffers
+     * @param timeoutNanos How long the channel may accept nothing before giving up
+     * @throws IOException if the write fails or stalls past the timeout
+     */
+    public static void writeFully(GatheringByteChannel channel, ByteBuffer[] buffers, long timeoutNanos) throws IOException
+    {
+        long backoff = 0;
+        long stalledSince = 0;
+        while (true)
+        {
+            if (hasRemaining(buffers))
+            {
+                if (channel.write(buffers) > 0)
+                {
+                    backoff = 0;
+                    continue;
+                }
+            }
+            else if (!(channel instanceof TlsChannel) || ((TlsChannel) channel).flush())
+            {
+                return;
+            }
+
+            long now = System.nanoTime();
+            if (backoff == 0)
+            {
+                stalledSince = now;
+                backoff = MIN_BACKOFF_NANOS;
+            }
+            else if (now - stalledSince > timeoutNanos)
+            {
+                throw new IOException("Write stalled for " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms");
+            }
+            LockSupport.parkNanos(backoff);
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_NANOS);
+        }
+    }
+
+    private static boolean hasRemaining(ByteBuffer[] buffers)
+    {
+        for (ByteBuffer buffer : buffers)
+        {
+            if (buffer.hasRemaining()) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,77 @@
+package com.http.protocol;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/**
+ * Cached value of the HTTP Date header (RFC 7231 IMF-fixdate)
+ * Refreshed once per second by a daemon clock thread so that
+ * responses never format dates themselves
+ */
+public final class HttpDate
+{
+    private static final DateTimeFormatter HTTP_DATE_FORMAT =
+            DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+
+    private static volatile String currentText;
+    private static volatile byte[] currentBytes;
+
+    static
+    {
+        refresh();
+
+        Thread clock = new Thread(HttpDate::tick, "http-date-clock");
+        clock.setDaemon(true);
+        clock.start();
+    }
+
+    private HttpDate()
+    {
+    }
+
+    // Current date as a header value, e.g. "Sun, 06 Nov 1994 08:49:37 GMT"
+    public static String current()
+    {
+        return currentText;
+    }
+
+    // Current date as US-ASCII bytes; callers must not modify the array
+    public static byte[] currentBytes()
+    {
+        return currentBytes;
+    }
+
+    // Formats a timestamp (epoch millis) as a header value, e.g. for Last-Modified
+    public static String format(long epochMillis)
+    {
+        return HTTP_DATE_FORMAT.format(Instant.ofEpochMilli(epochMillis).atZone(ZoneOffset.UTC));
+    }
+
+    private static void refresh()
+    {
+        String text = HTTP_DATE_FORMAT.format(ZonedDateTime.now(ZoneOffset.UTC));
+        currentBytes = text.getBytes(StandardCharsets.US_ASCII);
+        currentText = text;
+    }
+
+    // Sleeps until the next wall-clock second boundary, then refreshes
+    private static void tick()
+    {
+        while (true)
+        {
+            try
+            {
+                Thread.sleep(1000 - (System.currentTimeMillis() % 1000));
+            }
+            catch (InterruptedException e)
+            {
+                return;
+            }
+            refresh();
+        }
+    }
+}
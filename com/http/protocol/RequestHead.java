@@ -0,0 +1,60 @@
+package com.http.protocol;
+
+import com.http.model.common.Headers;
+import com.http.model.request.HttpVerb;
+
+/**
+ * Request line and headers of a request whose body has not been read yet
+ * Lets the server route and schedule a request before committing to its body.
+ * Each RequestParser reuses one instance (and its Headers) for every head it
+ * parses, so a head is only valid until its connection reads the next one.
+ */
+public final class RequestHead 
+{
+    private HttpVerb verb;
+    private String target;
+    private String httpVersion;
+    private String path;
+    private final Headers headers;
+
+    RequestHead(Headers headers) 
+    {
+        this.headers = headers;
+    }
+
+    // Refills the head; the headers are filled in place by the parser
+    void reset(HttpVerb verb, String target, String httpVersion)
+    {
+        this.verb = verb;
+        this.target = target;
+        this.httpVersion = httpVersion;
+        this.path = null;
+    }
+
+    public HttpVerb getVerb() { return verb; }
+
+    public String getTarget() { return target; }
+
+    public String getHttpVersion() { return httpVersion; }
+
+    public Headers getHeaders() { return headers; }
+
+    // Request target without query string or fragment
+    public String getPath() 
+    {
+        if (path == null) 
+        {
+            path = target;
+            for (int i = 0; i < target.length(); i++) 
+            {
+                char c = target.charAt(i);
+                if (c == '?' || c == '#') 
+                {
+                    path = target.substring(0, i);
+                    break;
+                }
+            }
+        }
+        return path;
+    }
+}
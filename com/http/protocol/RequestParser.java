@@ -3,94 +3,147 @@ package com.http.protocol;
 import com.http.exception.InvalidRequestException;
 import com.http.model.common.HttpDelimiter;
 import com.http.model.common.Header;
+import com.http.model.common.Headers;
 import com.http.model.request.Request;
+import com.http.model.request.RequestSlot;
 import com.http.model.request.HttpVerb;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * Parses raw HTTP request data into structured HttpRequest objects
  * Handles request line, headers, and body parsing
+ * A parser belongs to one connection and recycles its RequestHead, Headers
+ * and Request: each parseHead() clears and refills them, so the previous
+ * request must be finished (its response written) before the next is parsed.
  */
 public class RequestParser 
 {
+    private static final HttpVerb[] VERBS = HttpVerb.values();
+
+    private final Headers headers = new Headers();
+    private final RequestHead head = new RequestHead(headers);
+    private final RequestSlot requestSlot = new RequestSlot();
+
     /**
      * Parses HTTP request components into an HttpRequest object
      * @param requestLine First line of HTTP request (e.g., "GET /path HTTP/1.1")
-     * @param rawHeaderMap Map of raw header strings
-     * @param bodyReader Reader for reading request body
+     * @param input Connection input positioned at the first header line
      * @return Parsed HttpRequest object
      * @throws InvalidRequestException if request format is invalid
      * @throws IOException if reading fails
      */
-    public Request parse(String requestLine, Map<String, String> rawHeaderMap, BufferedReader bodyReader)
+    public Request parse(String requestLine, ChannelInput input)
+            throws InvalidRequestException, IOException 
+    {
+        return readBody(parseHead(requestLine, input), input);
+    }
+
+    /**
+     * Parses the request line and headers, leaving the body unread
+     * @param requestLine First line of HTTP request (e.g., "GET /path HTTP/1.1")
+     * @param input Connection input positioned at the first header line
+     * @throws InvalidRequestException if request format is invalid
+     * @throws IOException if reading fails
+     */
+    public RequestHead parseHead(String requestLine, ChannelInput input)
             throws InvalidRequestException, IOException 
     {
-        String[] requestComponents = requestLine.trim().split(HttpDelimiter.HttpRequestStatusDelimiter.getDelimiterValue());
+        // Split on the two separators directly instead of a regex split
+        String line = requestLine.trim();
+        String separator = HttpDelimiter.HttpRequestStatusDelimiter.getDelimiterValue();
+        int firstSpace = line.indexOf(separator);
+        int secondSpace = firstSpace < 0 ? -1 : line.indexOf(separator, firstSpace + 1);
 
-        validateRequestLine(requestComponents, requestLine);
+        validateRequestLine(line, firstSpace, secondSpace, requestLine);
 
-        HttpVerb httpMethod = parseHttpMethod(requestComponents[0].trim());
-        String urlPath = requestComponents[1].trim();
-        String protocolVersion = requestComponents[2].trim();
+        HttpVerb httpMethod = parseHttpMethod(line, firstSpace);
+        String urlPath = line.substring(firstSpace + 1, secondSpace);
+        String protocolVersion = internVersion(line, secondSpace + 1);
+
+        headers.clear();
+        readHeaders(input);
+
+        head.reset(httpMethod, urlPath, protocolVersion);
+        return head;
+    }
 
-        Map<Header, String> parsedHeaders = convertRawHeaders(rawHeaderMap);
-        String requestBody = extractRequestBody(httpMethod, parsedHeaders, bodyReader);
+    /**
+     * Reads the body announced by a parsed head and builds the Request
+     * @param input Connection input positioned at the start of the body
+     * @throws InvalidRequestException if the body framing is invalid
+     * @throws IOException if reading fails
+     */
+    public Request readBody(RequestHead head, ChannelInput input)
+            throws InvalidRequestException, IOException 
+    {
+        byte[] requestBody = extractRequestBody(head.getVerb(), head.getHeaders(), input);
 
-        return new Request(httpMethod, urlPath, protocolVersion, parsedHeaders, requestBody);
+        return requestSlot.fill(head.getVerb(), head.getTarget(), head.getHttpVersion(), head.getHeaders(), requestBody);
     }
 
     // Validates that the request line has exactly 3 components
-    private void validateRequestLine(String[] components, String originalLine) 
+    private void validateRequestLine(String line, int firstSpace, int secondSpace, String originalLine) 
             throws InvalidRequestException 
     {
-        if (components.length != 3) 
+        if (firstSpace <= 0 || secondSpace <= firstSpace + 1 || secondSpace == line.length() - 1
+                || line.indexOf(' ', secondSpace + 1) >= 0) 
         {
             throw new InvalidRequestException(
                     "Request line must contain exactly 3 components. Received: " + originalLine);
         }
     }
 
-    // Parses and validates the HTTP method (case-insensitive)
-    private HttpVerb parseHttpMethod(String methodString) throws InvalidRequestException 
+    // Parses and validates the HTTP method (case-insensitive) in place, without copying it out of the line
+    private HttpVerb parseHttpMethod(String line, int length) throws InvalidRequestException 
     {
-        try 
-        {
-            return HttpVerb.valueOf(methodString.toUpperCase());
-        } 
-        catch (IllegalArgumentException e) 
+        for (HttpVerb verb : VERBS) 
         {
-            throw new InvalidRequestException("Unsupported HTTP method: " + methodString);
+            String name = verb.name();
+            if (name.length() == length && line.regionMatches(true, 0, name, 0, length)) return verb;
         }
+        throw new InvalidRequestException("Unsupported HTTP method: " + line.substring(0, length));
     }
 
-    // Converts raw header strings to HttpHeader enum map
-    private Map<Header, String> convertRawHeaders(Map<String, String> rawHeaders) 
+    // The usual protocol versions come back as shared constants instead of new strings
+    private static String internVersion(String line, int start)
     {
-        Map<Header, String> headerMap = new HashMap<>();
+        int length = line.length() - start;
+        if (length == 8 && line.startsWith("HTTP/1.1", start)) return "HTTP/1.1";
+        if (length == 8 && line.startsWith("HTTP/1.0", start)) return "HTTP/1.0";
+        return line.substring(start);
+    }
 
-        for (Map.Entry<String, String> headerEntry : rawHeaders.entrySet()) 
+    // Reads header lines up to the blank line into the reused headers; unknown headers are kept as well
+    private void readHeaders(ChannelInput input) throws InvalidRequestException, IOException 
+    {
+        String headerLine;
+        while ((headerLine = input.readLine()) != null && !headerLine.isEmpty()) 
         {
-            try 
+            int colon = headerLine.indexOf(':');
+            if (colon <= 0) 
             {
-                String key = headerEntry.getKey().trim().replace('-', '_').toUpperCase();
-                Header headerKey = Header.valueOf(key);
-                headerMap.put(headerKey, headerEntry.getValue().trim());
+                throw new InvalidRequestException("Malformed header line: " + headerLine);
+            }
+
+            // Known names are matched inside the line, so only the value is copied out
+            int nameEnd = colon;
+            while (nameEnd > 0 && headerLine.charAt(nameEnd - 1) <= ' ') nameEnd--;
+            String value = headerLine.substring(colon + 1).trim();
+            Header known = Header.fromRegion(headerLine, 0, nameEnd);
+            if (known != null) 
+            {
+                headers.add(known, value);
             } 
-            catch (IllegalArgumentException e) 
+            else 
             {
-                System.out.println("Skipping unrecognized header: " + headerEntry.getKey() + " = " + headerEntry.getValue());
+                headers.add(headerLine.substring(0, nameEnd).trim(), value);
             }
         }
-
-        return headerMap;
     }
 
     // Extracts request body for methods that support it
-    private String extractRequestBody(HttpVerb method, Map<Header, String> headers, BufferedReader reader) 
+    private byte[] extractRequestBody(HttpVerb method, Headers headers, ChannelInput input) 
             throws InvalidRequestException, IOException 
     {
         boolean methodSupportsBody = (method == HttpVerb.POST || method == HttpVerb.PUT || method == HttpVerb.PATCH);
@@ -98,7 +151,7 @@ public class RequestParser
         if (!methodSupportsBody) return null;
 
         int bodyLength = 0;
-        if (headers.containsKey(Header.Content_Length)) 
+        if (headers.contains(Header.Content_Length)) 
         {
             try 
             {
@@ -115,11 +168,12 @@ public class RequestParser
             return null;
         }
 
-        char[] bodyBuffer = new char[bodyLength];
+        // Content-Length counts bytes; copy them out of the pooled read buffer
+        byte[] bodyBuffer = new byte[bodyLength];
         int totalRead = 0;
         while (totalRead < bodyLength) 
         {
-            int read = reader.read(bodyBuffer, totalRead, bodyLength - totalRead);
+            int read = input.read(bodyBuffer, totalRead, bodyLength - totalRead);
             if (read == -1) break;
             totalRead += read;
         }
@@ -129,6 +183,7 @@ public class RequestParser
             throw new IOException("Body size mismatch: expected " + bodyLength + " bytes, got " + totalRead);
         }
 
-        return new String(bodyBuffer);
+        // Decoding to text is left to Request, on first access
+        return bodyBuffer;
     }
 }
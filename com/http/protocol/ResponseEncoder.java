@@ -0,0 +1,484 @@
+package com.http.protocol;
+
+import com.http.buffer.BufferPool;
+import com.http.model.common.Header;
+import com.http.model.response.Response;
+import com.http.model.response.Status;
+import com.http.model.response.StreamingBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Serialises Response objects onto a socket channel
+ * Status lines and header names are pre-encoded once per JVM, the Date
+ * value comes from HttpDate, and head and body go out in one gathered write.
+ * Head buffers are borrowed from the BufferPool for the duration of a write.
+ * Streaming bodies are copied through a pooled buffer behind the head, with
+ * chunked transfer coding when their length is not known up front, or, for
+ * clients that cannot parse chunks (HTTP/1.0), delimited by closing the
+ * connection. 1xx, 204 and 304 responses never carry a body, length or type.
+ * Instances are not thread-safe.
+ */
+public final class ResponseEncoder
+{
+    public static final String SERVER_NAME = "My Custom HTTP Java Server v0.1";
+
+    private static final String DEFAULT_HTTP_VERSION = "HTTP/1.1";
+    private static final int HEAD_BUFFER_SIZE = 4 * 1024;
+    private static final int STREAM_BUFFER_SIZE = 16 * 1024;
+
+    private static final byte[] CRLF = { '\r', '\n' };
+    private static final byte[][] STATUS_LINES = new byte[Status.values().length][];
+    private static final byte[][] HEADER_NAMES = new byte[Header.values().length][];
+    private static final byte[] SERVER_LINE = ascii(Header.Server + ": " + SERVER_NAME + "\r\n");
+    private static final byte[] CONNECTION_CLOSE_LINE = ascii(Header.Connection + ": close\r\n");
+    private static final byte[] CONNECTION_KEEP_ALIVE_LINE = ascii(Header.Connection + ": keep-alive\r\n");
+    private static final byte[] CHUNKED_LINE = ascii(Header.Transfer_Encoding + ": chunked\r\n");
+    private static final byte[] LAST_CHUNK = ascii("0\r\n\r\n");
+
+    // One encoder per worker thread, reusing its gather array across responses
+    private static final ThreadLocal<ResponseEncoder> WORKER_ENCODER =
+            ThreadLocal.withInitial(() -> new ResponseEncoder(BufferPool.shared()));
+
+    static
+    {
+        for (Status status : Status.values())
+        {
+            STATUS_LINES[status.ordinal()] = ascii(DEFAULT_HTTP_VERSION + " " + status + "\r\n");
+        }
+        for (Header header : Header.values())
+        {
+            HEADER_NAMES[header.ordinal()] = ascii(header.getHeaderValue() + ": ");
+        }
+    }
+
+    private final BufferPool pool;
+    private final ByteBuffer[] gather = new ByteBuffer[2];
+
+    public ResponseEncoder(BufferPool pool)
+    {
+        this.pool = pool;
+    }
+
+    // Returns the encoder bound to the calling worker thread
+    public static ResponseEncoder forCurrentThread()
+    {
+        return WORKER_ENCODER.get();
+    }
+
+    /**
+     * Writes the response for a connection that is closed afterwards
+     * @see #write(GatheringByteChannel, Response, boolean)
+     */
+    public void write(GatheringByteChannel channel, Response response) throws IOException
+    {
+        write(channel, response, false);
+    }
+
+    /**
+     * Writes the complete response (head and body) to the channel
+     * Small bodies are staged behind the head in the same buffer; larger ones
+     * are sent alongside it with a single gathering write.
+     * @param channel Blocking channel connected to the client
+     * @param response Response to serialise
+     * @param keepAlive Whether the connection stays open for another request;
+     *        a Connection header set by the handler wins over keep-alive
+     * @throws IOException if the channel write fails
+     */
+    public void write(GatheringByteChannel channel, Response response, boolean keepAlive) throws IOException
+    {
+        write(channel, response, keepAlive, false);
+    }
+
+    /**
+     * Like write(channel, response, keepAlive), optionally leaving out the body
+     * @param headOnly Whether this answers a HEAD request: the head keeps the
+     *        body's Content-Length, but no body bytes are sent
+     */
+    public void write(GatheringByteChannel channel, Response response, boolean keepAlive, boolean headOnly)
+            throws IOException
+    {
+        write(channel, response, keepAlive, headOnly, true);
+    }
+
+    /**
+     * Like write(channel, response, keepAlive, headOnly), for a client that may not understand chunks
+     * @param chunkedAllowed Whether the client can parse chunked transfer coding
+     *        (HTTP/1.1); without it a body of unknown length is ended by closing the connection
+     * @return Whether the connection can stay open: false if keepAlive was, or if the
+     *         body was delimited by the close
+     */
+    public boolean write(GatheringByteChannel channel, Response response, boolean keepAlive, boolean headOnly,
+                         boolean chunkedAllowed) throws IOException
+    {
+        boolean bodiless = headOnly || isBodiless(response.getStatusCode());
+        StreamingBody stream = response.getStreamingBody();
+        if (stream != null && !bodiless)
+        {
+            if (stream.length() < 0 && !chunkedAllowed) keepAlive = false;
+            writeStreaming(channel, response, stream, keepAlive, chunkedAllowed);
+            return keepAlive;
+        }
+        if (stream != null) stream.discard();
+
+        byte[] body = bodiless ? null : response.getBody();
+        int bodyLength = (body == null) ? 0 : body.length;
+
+        // Try to fit head and body into a single pooled buffer
+        int wanted = Math.min(HEAD_BUFFER_SIZE + bodyLength, pool.maxPooledCapacity());
+        ByteBuffer pooled = pool.acquire(wanted);
+        try
+        {
+            ByteBuffer head = encodeHead(response, pooled, keepAlive, chunkedAllowed);
+
+            if (bodyLength <= head.remaining())
+            {
+                if (bodyLength > 0) head.put(body);
+                head.flip();
+                writeFully(channel, head);
+                return keepAlive;
+            }
+
+            head.flip();
+            gather[0] = head;
+            gather[1] = ByteBuffer.wrap(body);
+            long total = (long) head.remaining() + bodyLength;
+            long written = 0;
+            while (written < total)
+            {
+                written += channel.write(gather);
+            }
+            return keepAlive;
+        }
+        finally
+        {
+            gather[0] = null;
+            gather[1] = null;
+            pool.release(pooled);
+        }
+    }
+
+    // Head first, then the body copied through a pooled buffer as the stream produces it
+    private void writeStreaming(GatheringByteChannel channel, Response response, StreamingBody stream, boolean keepAlive,
+                                boolean chunkedAllowed) throws IOException
+    {
+        ByteBuffer pooled = pool.acquire(Math.max(HEAD_BUFFER_SIZE, STREAM_BUFFER_SIZE));
+        try
+        {
+            ByteBuffer head = encodeHead(response, pooled, keepAlive, chunkedAllowed);
+            head.flip();
+            try
+            {
+                writeFully(channel, head);
+            }
+            catch (IOException e)
+            {
+                stream.discard();
+                throw e;
+            }
+
+            pooled.clear();
+            BodyOutput out = new BodyOutput(channel, pooled, stream.length() < 0 && chunkedAllowed);
+            stream.writeTo(out);
+            out.finish();
+        }
+        finally
+        {
+            pool.release(pooled);
+        }
+    }
+
+    /**
+     * Encodes status line and headers, terminated by the blank line
+     * @param out Cleared buffer to encode into
+     * @param keepAlive Whether the connection stays open after this response
+     * @return Buffer holding the head in write mode; a one-off heap buffer
+     *         when the head does not fit into out
+     */
+    public ByteBuffer encodeHead(Response response, ByteBuffer out, boolean keepAlive)
+    {
+        return encodeHead(response, out, keepAlive, true);
+    }
+
+    private ByteBuffer encodeHead(Response response, ByteBuffer out, boolean keepAlive, boolean chunkedAllowed)
+    {
+        try
+        {
+            encodeHeadInto(response, out, keepAlive, chunkedAllowed);
+            return out;
+        }
+        catch (BufferOverflowException e)
+        {
+            // Oversized head (e.g. very long header values): fall back to a one-off buffer
+            ByteBuffer large = ByteBuffer.allocate(estimateHeadSize(response));
+            encodeHeadInto(response, large, keepAlive, chunkedAllowed);
+            return large;
+        }
+    }
+
+    /**
+     * Encodes the parts of a head that do not change between sends of the same
+     * response: status line, headers, Server and Content-Length
+     * Date and Connection are left out; they are added at write time.
+     * @return Encoded bytes, suitable for Response.preEncoded()
+     */
+    public static byte[] encodeStableHead(Response response)
+    {
+        ByteBuffer out = ByteBuffer.allocate(estimateHeadSize(response));
+        encodeStablePart(response, out, true);
+        return Arrays.copyOf(out.array(), out.position());
+    }
+
+    private void encodeHeadInto(Response response, ByteBuffer out, boolean keepAlive, boolean chunkedAllowed)
+    {
+        byte[] preEncoded = response.getEncodedHead();
+        if (preEncoded != null)
+        {
+            out.put(preEncoded); // never streaming, so chunking does not come into it
+        }
+        else
+        {
+            encodeStablePart(response, out, chunkedAllowed);
+        }
+        encodeVolatilePart(response, out, keepAlive);
+    }
+
+    private static void encodeStablePart(Response response, ByteBuffer out, boolean chunkedAllowed)
+    {
+        Status status = response.getStatus();
+        if (status != null && DEFAULT_HTTP_VERSION.equals(response.getHttpVersion()))
+        {
+            out.put(STATUS_LINES[status.ordinal()]);
+        }
+        else
+        {
+            putValue(out, response.getHttpVersion() + " " + response.getStatusCode() + " " + response.getReasonPhrase());
+            out.put(CRLF);
+        }
+
+        boolean bodiless = isBodiless(response.getStatusCode());
+        Map<Header, String> headers = response.getHeaders();
+        for (Map.Entry<Header, String> entry : headers.entrySet())
+        {
+            Header header = entry.getKey();
+            if (header == Header.Content_Length) continue; // always derived from the body
+            if (header == Header.Connection) continue;     // written last, per connection
+            if (header == Header.Content_Type && bodiless) continue;
+
+            out.put(HEADER_NAMES[header.ordinal()]);
+            putValue(out, entry.getValue());
+            out.put(CRLF);
+        }
+        for (Map.Entry<String, String> entry : response.getOtherHeaders())
+        {
+            putValue(out, entry.getKey());
+            out.put((byte) ':').put((byte) ' ');
+            putValue(out, entry.getValue());
+            out.put(CRLF);
+        }
+
+        if (!headers.containsKey(Header.Server))
+        {
+            out.put(SERVER_LINE);
+        }
+
+        if (!bodiless)
+        {
+            StreamingBody stream = response.getStreamingBody();
+            if (stream != null && stream.length() < 0)
+            {
+                // Without chunks the body simply runs until the connection closes
+                if (chunkedAllowed) out.put(CHUNKED_LINE);
+                return;
+            }
+            byte[] body = response.getBody();
+            out.put(HEADER_NAMES[Header.Content_Length.ordinal()]);
+            putDecimal(out, stream != null ? stream.length() : (body == null ? 0 : body.length));
+            out.put(CRLF);
+        }
+    }
+
+    // 1xx, 204 and 304 responses end at the blank line: no body, so no length or type either
+    private static boolean isBodiless(int code)
+    {
+        return code < 200 || code == 204 || code == 304;
+    }
+
+    // Date (unless set explicitly) and Connection, then the blank line
+    private static void encodeVolatilePart(Response response, ByteBuffer out, boolean keepAlive)
+    {
+        Map<Header, String> headers = response.getHeaders();
+        if (!headers.containsKey(Header.Date))
+        {
+            out.put(HEADER_NAMES[Header.Date.ordinal()]);
+            out.put(HttpDate.currentBytes());
+            out.put(CRLF);
+        }
+
+        String connection = headers.get(Header.Connection);
+        if (!keepAlive)
+        {
+            out.put(CONNECTION_CLOSE_LINE);
+        }
+        else if (connection != null)
+        {
+            out.put(HEADER_NAMES[Header.Connection.ordinal()]);
+            putValue(out, connection);
+            out.put(CRLF);
+        }
+        else
+        {
+            out.put(CONNECTION_KEEP_ALIVE_LINE);
+        }
+
+        out.put(CRLF); // End of headers
+    }
+
+    // Header values are almost always ASCII; anything else goes out as UTF-8
+    private static void putValue(ByteBuffer out, String value)
+    {
+        int length = value.length();
+        for (int i = 0; i < length; i++)
+        {
+            if (value.charAt(i) >= 0x80)
+            {
+                out.put(value.getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+        }
+        for (int i = 0; i < length; i++)
+        {
+            out.put((byte) value.charAt(i));
+        }
+    }
+
+    // Writes a non-negative number as ASCII digits without creating a String
+    private static void putDecimal(ByteBuffer out, long value)
+    {
+        if (value == 0)
+        {
+            out.put((byte) '0');
+            return;
+        }
+        long divisor = 1;
+        while (value / divisor >= 10) divisor *= 10;
+        while (divisor > 0)
+        {
+            out.put((byte) ('0' + (value / divisor) % 10));
+            divisor /= 10;
+        }
+    }
+
+    private static int estimateHeadSize(Response response)
+    {
+        byte[] preEncoded = response.getEncodedHead();
+        int size = 512 + response.getHttpVersion().length() + (preEncoded == null ? 0 : preEncoded.length);
+        for (Map.Entry<Header, String> entry : response.getHeaders().entrySet())
+        {
+            size += HEADER_NAMES[entry.getKey().ordinal()].length + entry.getValue().length() * 3 + 2;
+        }
+        for (Map.Entry<String, String> entry : response.getOtherHeaders())
+        {
+            size += (entry.getKey().length() + entry.getValue().length()) * 3 + 4;
+        }
+        return size;
+    }
+
+    private static void writeFully(GatheringByteChannel channel, ByteBuffer buffer) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            channel.write(buffer);
+        }
+    }
+
+    private static byte[] ascii(String text)
+    {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Buffers a streaming body and writes it out, framed as chunks when the length is unknown
+     * One buffer fill becomes one chunk, so chunk headers cost little.
+     */
+    private static final class BodyOutput extends OutputStream
+    {
+        private final GatheringByteChannel channel;
+        private final ByteBuffer buffer;
+        private final boolean chunked;
+        private final ByteBuffer chunkHeader = ByteBuffer.allocate(10);
+        private final ByteBuffer[] chunk = new ByteBuffer[3];
+
+        BodyOutput(GatheringByteChannel channel, ByteBuffer buffer, boolean chunked)
+        {
+            this.channel = channel;
+            this.buffer = buffer;
+            this.chunked = chunked;
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            if (!buffer.hasRemaining()) drain();
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException
+        {
+            while (length > 0)
+            {
+                if (!buffer.hasRemaining()) drain();
+                int n = Math.min(length, buffer.remaining());
+                buffer.put(data, offset, n);
+                offset += n;
+                length -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException
+        {
+            drain();
+        }
+
+        // Writes what is buffered, then the last chunk when chunked
+        void finish() throws IOException
+        {
+            drain();
+            if (chunked) writeFully(channel, ByteBuffer.wrap(LAST_CHUNK));
+        }
+
+        private void drain() throws IOException
+        {
+            if (buffer.position() == 0) return;
+            buffer.flip();
+            if (chunked)
+            {
+                chunkHeader.clear();
+                chunkHeader.put(ascii(Integer.toHexString(buffer.remaining()))).put(CRLF).flip();
+                chunk[0] = chunkHeader;
+                chunk[1] = buffer;
+                chunk[2] = ByteBuffer.wrap(CRLF);
+                long total = chunkHeader.remaining() + buffer.remaining() + 2L;
+                long written = 0;
+                while (written < total)
+                {
+                    written += channel.write(chunk);
+                }
+            }
+            else
+            {
+                writeFully(channel, buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,469 @@
+package com.http.proxy;
+
+import com.http.model.common.Header;
+import com.http.model.common.Headers;
+import com.http.model.request.HttpVerb;
+import com.http.model.request.Request;
+import com.http.model.response.Response;
+import com.http.model.response.Status;
+import com.http.model.response.StreamingBody;
+import com.http.routing.RouteHandler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reverse proxy to one or more HTTP/1.1 upstreams, mounted like any other handler:
+ * for (HttpVerb verb : HttpVerb.values()) router.addRoute(verb, "/api/*", proxy)
+ *
+ * Each upstream keeps a bounded pool of keep-alive connections. Responses
+ * stream back to the client as they arrive, except small ones with a known
+ * length, which are read in one go so their connection returns to the pool
+ * before the client is written to. Requests are balanced round-robin or to
+ * the upstream with the fewest requests in flight; an upstream that fails
+ * repeatedly (connect errors, timeouts, 502/503/504) is ejected for a while.
+ */
+public final class ProxyHandler implements RouteHandler
+{
+    // Responses up to this size are buffered so the upstream connection is released early
+    private static final int BUFFER_RESPONSE_LIMIT = 16 * 1024;
+
+    // Hop-by-hop headers (RFC 7230 6.1), plus framing that is redone on each side
+    private static final Set<String> HOP_BY_HOP = Set.of(
+            "connection", "keep-alive", "proxy-connection", "te", "trailer",
+            "transfer-encoding", "upgrade", "content-length");
+
+    public enum Balancing
+    {
+        ROUND_ROBIN,
+        LEAST_IN_FLIGHT
+    }
+
+    private final Upstream[] upstreams;
+    private final Balancing balancing;
+    private final String stripPrefix;
+    private final long acquireTimeoutMillis;
+    private final AtomicInteger next = new AtomicInteger();
+
+    private ProxyHandler(Builder builder)
+    {
+        this.upstreams = new Upstream[builder.hosts.size()];
+        for (int i = 0; i < upstreams.length; i++)
+        {
+            upstreams[i] = new Upstream(builder.hosts.get(i), builder.ports.get(i), builder);
+        }
+        this.balancing = builder.balancing;
+        this.stripPrefix = builder.stripPrefix;
+        this.acquireTimeoutMillis = builder.connectTimeout.toMillis();
+    }
+
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    @Override
+    public Response handle(Request request)
+    {
+        byte[] body = request.getBodyBytes();
+        String head = encodeRequestHead(request, body.length);
+        boolean idempotent = isIdempotent(request.getVerb());
+
+        Upstream failed = null;
+        boolean staleRetried = false;
+        for (int attempt = 0; attempt <= upstreams.length; attempt++)
+        {
+            Upstream upstream = choose(failed);
+            if (upstream == null) break;
+
+            UpstreamConnection connection;
+            try
+            {
+                connection = upstream.acquire(acquireTimeoutMillis);
+            }
+            catch (IOException e)
+            {
+                // Nothing was sent, so any method may go to another upstream
+                upstream.recordFailure("connect: " + e.getMessage());
+                failed = upstream;
+                continue;
+            }
+            if (connection == null)
+            {
+                return error(Status.SERVICE_UNAVAILABLE_503, "Upstream " + upstream.getName() + " is at its connection limit");
+            }
+
+            String statusLine;
+            try
+            {
+                OutputStream out = connection.output();
+                connection.write(head);
+                out.write(body);
+                out.flush();
+                statusLine = connection.readLine();
+            }
+            catch (IOException e)
+            {
+                upstream.release(connection, false);
+                if (connection.isReused() && idempotent && !staleRetried && !(e instanceof SocketTimeoutException))
+                {
+                    // Most likely the upstream closed the idle connection first; so have its pooled siblings
+                    upstream.closeIdle();
+                    staleRetried = true;
+                    attempt--;
+                    continue;
+                }
+                return upstreamFailure(upstream, e);
+            }
+
+            try
+            {
+                return relay(request, upstream, connection, statusLine);
+            }
+            catch (IOException e)
+            {
+                upstream.release(connection, false);
+                return upstreamFailure(upstream, e);
+            }
+        }
+        return error(Status.SERVICE_UNAVAILABLE_503, "No upstream available");
+    }
+
+    // Next upstream by the balancing policy, skipping ejected ones and the one that just failed
+    private Upstream choose(Upstream exclude)
+    {
+        long now = System.nanoTime();
+        int count = upstreams.length;
+        int start = Math.floorMod(next.getAndIncrement(), count);
+
+        Upstream chosen = null;
+        for (int i = 0; i < count; i++)
+        {
+            Upstream candidate = upstreams[(start + i) % count];
+            if (candidate == exclude || !candidate.isAvailable(now)) continue;
+            if (balancing == Balancing.ROUND_ROBIN) return candidate;
+            if (chosen == null || candidate.getInFlight() < chosen.getInFlight()) chosen = candidate;
+        }
+        return chosen;
+    }
+
+    // Request line and headers as sent upstream, with our own framing and connection handling
+    private String encodeRequestHead(Request request, int bodyLength)
+    {
+        String target = request.getResource();
+        if (stripPrefix != null && target.startsWith(stripPrefix))
+        {
+            target = target.substring(stripPrefix.length());
+            if (target.isEmpty() || target.charAt(0) != '/') target = "/" + target;
+        }
+
+        Headers headers = request.getHeaders();
+        Set<String> connectionTokens = connectionTokens(headers.getAll(Header.Connection));
+
+        StringBuilder head = new StringBuilder(256);
+        head.append(request.getVerb().name()).append(' ').append(target).append(" HTTP/1.1\r\n");
+        headers.forEach((name, value) -> {
+            String lower = name.toLowerCase(Locale.ROOT);
+            if (HOP_BY_HOP.contains(lower) || connectionTokens.contains(lower)) return;
+            head.append(name).append(": ").append(value).append("\r\n");
+        });
+        if (bodyLength > 0 || request.getVerb() == HttpVerb.POST || request.getVerb() == HttpVerb.PUT
+                || request.getVerb() == HttpVerb.PATCH)
+        {
+            head.append("Content-Length: ").append(bodyLength).append("\r\n");
+        }
+        return head.append("\r\n").toString();
+    }
+
+    // Reads the response head and turns it into a Response whose body is buffered or streamed
+    private Response relay(Request request, Upstream upstream, UpstreamConnection connection, String statusLine)
+            throws IOException
+    {
+        int code = parseStatusCode(statusLine);
+        Headers headers = readHeaders(connection);
+        while (code >= 100 && code < 200)
+        {
+            // Interim responses (100 Continue, 103 Early Hints) are not relayed
+            statusLine = connection.readLine();
+            code = parseStatusCode(statusLine);
+            headers = readHeaders(connection);
+        }
+
+        if (code == 502 || code == 503 || code == 504) upstream.recordFailure("status " + code);
+        else upstream.recordSuccess();
+
+        // Relayed as sent: any status code, repeated headers kept apart, no Content-Type made up
+        boolean reusable = isPersistent(statusLine, headers);
+        Response.Builder builder = new Response.Builder(code, statusLine.length() > 13 ? statusLine.substring(13) : "")
+                .withoutDefaultContentType();
+        Set<String> connectionTokens = connectionTokens(headers.getAll(Header.Connection));
+        headers.forEach((name, value) -> {
+            String lower = name.toLowerCase(Locale.ROOT);
+            if (!HOP_BY_HOP.contains(lower) && !connectionTokens.contains(lower)) builder.addHeader(name, value);
+        });
+
+        if (code == 204 || code == 304)
+        {
+            upstream.release(connection, reusable);
+            return builder.build();
+        }
+        if (request.getVerb() == HttpVerb.HEAD)
+        {
+            // No body follows, but the client is told the length a GET would have
+            upstream.release(connection, reusable);
+            String contentLength = headers.get(Header.Content_Length);
+            long length = contentLength == null ? -1 : parseContentLength(contentLength);
+            return builder.body(new HeadBody(length)).build();
+        }
+
+        String transferEncoding = headers.get(Header.Transfer_Encoding);
+        if (transferEncoding != null && transferEncoding.toLowerCase(Locale.ROOT).endsWith("chunked"))
+        {
+            return builder.body(new UpstreamBody(upstream, connection, -1, true, reusable)).build();
+        }
+
+        String contentLength = headers.get(Header.Content_Length);
+        if (contentLength == null)
+        {
+            // Delimited by the upstream closing the connection
+            return builder.body(new UpstreamBody(upstream, connection, -1, false, false)).build();
+        }
+
+        long length = parseContentLength(contentLength);
+        if (length > BUFFER_RESPONSE_LIMIT)
+        {
+            return builder.body(new UpstreamBody(upstream, connection, length, false, reusable)).build();
+        }
+
+        byte[] content = new byte[(int) length];
+        InputStream in = connection.input();
+        int filled = 0;
+        while (filled < content.length)
+        {
+            int read = in.read(content, filled, content.length - filled);
+            if (read == -1) throw new IOException("Upstream body ended early");
+            filled += read;
+        }
+        upstream.release(connection, reusable);
+        return builder.body(content).build();
+    }
+
+    /**
+     * Body of a relayed HEAD response: the upstream's declared length, and no bytes
+     * Only ever written head-only, which discards it.
+     */
+    private static final class HeadBody implements StreamingBody
+    {
+        private final long length;
+
+        HeadBody(long length)
+        {
+            this.length = length;
+        }
+
+        @Override
+        public long length()
+        {
+            return length;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException
+        {
+            throw new IOException("HEAD response has no body to write");
+        }
+
+        @Override
+        public void discard()
+        {
+            // Nothing is held
+        }
+    }
+
+    private Response upstreamFailure(Upstream upstream, IOException e)
+    {
+        upstream.recordFailure(e.getClass().getSimpleName() + ": " + e.getMessage());
+        if (e instanceof SocketTimeoutException)
+        {
+            return error(Status.GATEWAY_TIMEOUT_504, "Upstream " + upstream.getName() + " timed out");
+        }
+        return error(Status.BAD_GATEWAY_502, "Upstream " + upstream.getName() + " failed");
+    }
+
+    private static Response error(Status status, String message)
+    {
+        System.out.println("⚠️ Proxy: " + message);
+        return new Response.Builder(status).body(status.toString()).build();
+    }
+
+    private static Headers readHeaders(UpstreamConnection connection) throws IOException
+    {
+        Headers headers = new Headers();
+        String line;
+        while (!(line = connection.readLine()).isEmpty())
+        {
+            int colon = line.indexOf(':');
+            if (colon <= 0) throw new IOException("Malformed upstream header: " + line);
+            headers.add(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+        }
+        return headers;
+    }
+
+    private static int parseStatusCode(String statusLine) throws IOException
+    {
+        if (statusLine.startsWith("HTTP/1.") && statusLine.length() >= 12 && statusLine.charAt(8) == ' ')
+        {
+            try
+            {
+                return Integer.parseInt(statusLine.substring(9, 12));
+            }
+            catch (NumberFormatException e)
+            {
+                // reported below
+            }
+        }
+        throw new IOException("Malformed upstream status line: " + statusLine);
+    }
+
+    private static long parseContentLength(String value) throws IOException
+    {
+        try
+        {
+            long length = Long.parseLong(value.trim());
+            if (length >= 0) return length;
+        }
+        catch (NumberFormatException e)
+        {
+            // reported below
+        }
+        throw new IOException("Malformed upstream Content-Length: " + value);
+    }
+
+    // HTTP/1.1 keeps the connection unless told otherwise; HTTP/1.0 only if asked to
+    private static boolean isPersistent(String statusLine, Headers headers)
+    {
+        Set<String> tokens = connectionTokens(headers.getAll(Header.Connection));
+        if (statusLine.startsWith("HTTP/1.0")) return tokens.contains("keep-alive");
+        return !tokens.contains("close");
+    }
+
+    private static Set<String> connectionTokens(List<String> values)
+    {
+        if (values.isEmpty()) return Set.of();
+        Set<String> tokens = new HashSet<>();
+        for (String value : values)
+        {
+            for (String token : value.split(","))
+            {
+                if (!token.isBlank()) tokens.add(token.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isIdempotent(HttpVerb verb)
+    {
+        return verb != HttpVerb.POST && verb != HttpVerb.PATCH;
+    }
+
+    /**
+     * Builder for ProxyHandler instances
+     */
+    public static class Builder
+    {
+        private final List<String> hosts = new ArrayList<>();
+        private final List<Integer> ports = new ArrayList<>();
+        private String stripPrefix;
+        private Balancing balancing = Balancing.ROUND_ROBIN;
+        int maxConnections = 64;
+        int maxIdleConnections = 16;
+        Duration connectTimeout = Duration.ofSeconds(1);
+        Duration readTimeout = Duration.ofSeconds(30);
+        Duration idleTimeout = Duration.ofSeconds(4);
+        int failureThreshold = 3;
+        Duration ejectionTime = Duration.ofSeconds(10);
+
+        // Adds a backend; requests are spread over all of them
+        public Builder upstream(String host, int port)
+        {
+            this.hosts.add(host);
+            this.ports.add(port);
+            return this;
+        }
+
+        // Path prefix removed before forwarding, e.g. "/api" sends /api/users upstream as /users
+        public Builder stripPrefix(String prefix)
+        {
+            this.stripPrefix = prefix;
+            return this;
+        }
+
+        public Builder balancing(Balancing balancing)
+        {
+            this.balancing = balancing;
+            return this;
+        }
+
+        // Requests in progress per upstream; further requests wait up to the connect timeout, then get 503
+        public Builder maxConnections(int maxConnections)
+        {
+            this.maxConnections = maxConnections;
+            return this;
+        }
+
+        // Keep-alive connections kept open per upstream between requests
+        public Builder maxIdleConnections(int maxIdleConnections)
+        {
+            this.maxIdleConnections = maxIdleConnections;
+            return this;
+        }
+
+        public Builder connectTimeout(Duration timeout)
+        {
+            this.connectTimeout = timeout;
+            return this;
+        }
+
+        // Longest wait for any single read from the upstream
+        public Builder readTimeout(Duration timeout)
+        {
+            this.readTimeout = timeout;
+            return this;
+        }
+
+        // Pooled connections idle longer than this are closed instead of reused; keep it below the upstream's own
+        public Builder idleTimeout(Duration timeout)
+        {
+            this.idleTimeout = timeout;
+            return this;
+        }
+
+        // Consecutive failures that eject an upstream, and for how long
+        public Builder ejectAfter(int failures, Duration ejectionTime)
+        {
+            this.failureThreshold = failures;
+            this.ejectionTime = ejectionTime;
+            return this;
+        }
+
+        public ProxyHandler build()
+        {
+            if (hosts.isEmpty()) throw new IllegalArgumentException("Proxy needs at least one upstream");
+            if (maxConnections < 1 || maxIdleConnections < 0 || failureThreshold < 1)
+            {
+                throw new IllegalArgumentException("Invalid proxy pool settings");
+            }
+            return new ProxyHandler(this);
+        }
+    }
+}
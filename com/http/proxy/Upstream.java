@@ -0,0 +1,175 @@
+package com.http.proxy;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One backend behind a ProxyHandler: its keep-alive connection pool and passive health state
+ * At most maxConnections requests use the backend at once; finished
+ * connections wait in a LIFO idle pool, so the most recently used (and
+ * least likely to have been closed by the backend) is reused first.
+ * Consecutive failures eject the backend from balancing for a while;
+ * after that, a single further failure ejects it again.
+ */
+final class Upstream
+{
+    private final String name;
+    private final InetSocketAddress address;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+    private final long idleTimeoutNanos;
+    private final int maxIdle;
+    private final int failureThreshold;
+    private final long ejectionNanos;
+
+    private final Semaphore permits;
+    private final Deque<UpstreamConnection> idle = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile long ejectedUntil;
+    private volatile boolean ejected;
+
+    Upstream(String host, int port, ProxyHandler.Builder settings)
+    {
+        this.name = host + ":" + port;
+        this.address = InetSocketAddress.createUnresolved(host, port);
+        this.connectTimeoutMillis = toMillis(settings.connectTimeout);
+        this.readTimeoutMillis = toMillis(settings.readTimeout);
+        this.idleTimeoutNanos = settings.idleTimeout.toNanos();
+        this.maxIdle = settings.maxIdleConnections;
+        this.failureThreshold = settings.failureThreshold;
+        this.ejectionNanos = settings.ejectionTime.toNanos();
+        this.permits = new Semaphore(settings.maxConnections);
+    }
+
+    String getName()
+    {
+        return name;
+    }
+
+    int getInFlight()
+    {
+        return inFlight.get();
+    }
+
+    // False while ejected after repeated failures
+    boolean isAvailable(long now)
+    {
+        return !ejected || now - ejectedUntil >= 0;
+    }
+
+    /**
+     * Takes a connection for one exchange: a pooled one if available, otherwise a new one
+     * @param waitMillis How long to wait when maxConnections exchanges are already running
+     * @return The connection, or null if none became free in time
+     * @throws IOException if a new connection cannot be established
+     */
+    UpstreamConnection acquire(long waitMillis) throws IOException
+    {
+        try
+        {
+            if (!permits.tryAcquire(waitMillis, TimeUnit.MILLISECONDS)) return null;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        inFlight.incrementAndGet();
+
+        long now = System.nanoTime();
+        UpstreamConnection connection;
+        while ((connection = idle.pollFirst()) != null)
+        {
+            idleCount.decrementAndGet();
+            if (now - connection.getLastUsed() < idleTimeoutNanos) return connection;
+            connection.close(); // the backend has probably dropped it by now
+        }
+
+        try
+        {
+            return UpstreamConnection.open(resolve(), connectTimeoutMillis, readTimeoutMillis);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            endExchange();
+            throw e;
+        }
+    }
+
+    /**
+     * Ends an exchange started by acquire()
+     * @param reusable Whether the response was read completely and the backend keeps the connection open
+     */
+    void release(UpstreamConnection connection, boolean reusable)
+    {
+        if (reusable && !ejected && idleCount.incrementAndGet() <= maxIdle)
+        {
+            connection.markUsed();
+            idle.offerFirst(connection);
+        }
+        else
+        {
+            if (reusable) idleCount.decrementAndGet();
+            connection.close();
+        }
+        endExchange();
+    }
+
+    void recordSuccess()
+    {
+        consecutiveFailures.set(0);
+        ejected = false;
+    }
+
+    // Connect errors, timeouts, broken responses and gateway errors from the backend itself
+    void recordFailure(String reason)
+    {
+        int failures = consecutiveFailures.incrementAndGet();
+        if (failures < failureThreshold) return;
+
+        // On probation after ejection: the next failure ejects again straight away
+        consecutiveFailures.set(failureThreshold - 1);
+        ejectedUntil = System.nanoTime() + ejectionNanos;
+        ejected = true;
+        System.out.println("🚑 Upstream " + name + " ejected for " + TimeUnit.NANOSECONDS.toMillis(ejectionNanos)
+                + " ms after " + failures + " consecutive failures | " + reason);
+        closeIdle();
+    }
+
+    // Closes every pooled connection, e.g. once one of them turned out to be dead
+    void closeIdle()
+    {
+        UpstreamConnection connection;
+        while ((connection = idle.pollFirst()) != null)
+        {
+            idleCount.decrementAndGet();
+            connection.close();
+        }
+    }
+
+    private void endExchange()
+    {
+        inFlight.decrementAndGet();
+        permits.release();
+    }
+
+    // Resolved per connection so DNS changes are picked up as connections turn over
+    private InetSocketAddress resolve()
+    {
+        return new InetSocketAddress(address.getHostString(), address.getPort());
+    }
+
+    private static int toMillis(Duration duration)
+    {
+        return (int) Math.min(Integer.MAX_VALUE, duration.toMillis());
+    }
+}
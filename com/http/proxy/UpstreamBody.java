@@ -0,0 +1,172 @@
+package com.http.proxy;
+
+import com.http.model.response.StreamingBody;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Upstream response body relayed to the client as it arrives
+ * Copies a Content-Length body, decodes a chunked one (the client side
+ * re-frames it), or reads until the upstream closes. Once the body is
+ * through, the connection goes back to the pool if the exchange left it
+ * reusable; on any error, or if the body is discarded, it is closed.
+ */
+final class UpstreamBody implements StreamingBody
+{
+    private static final int COPY_BUFFER_SIZE = 16 * 1024;
+
+    private final Upstream upstream;
+    private final UpstreamConnection connection;
+    private final long length;
+    private final boolean chunked;
+    private final boolean reusable;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    /**
+     * @param length Content-Length, or -1 for chunked or close-delimited bodies
+     * @param reusable Whether the connection can be pooled after the body is read
+     */
+    UpstreamBody(Upstream upstream, UpstreamConnection connection, long length, boolean chunked, boolean reusable)
+    {
+        this.upstream = upstream;
+        this.connection = connection;
+        this.length = length;
+        this.chunked = chunked;
+        this.reusable = reusable && (length >= 0 || chunked);
+    }
+
+    @Override
+    public long length()
+    {
+        return length;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException
+    {
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        boolean complete = false;
+        try
+        {
+            if (chunked) copyChunked(out, buffer);
+            else copy(out, buffer, length);
+            complete = true;
+        }
+        catch (UpstreamReadException e)
+        {
+            upstream.recordFailure("body read: " + e.getCause().getMessage());
+            throw e.getCause();
+        }
+        finally
+        {
+            release(complete && reusable);
+        }
+    }
+
+    @Override
+    public void discard()
+    {
+        release(false);
+    }
+
+    // Copies remaining bytes, or everything up to end of stream when remaining is -1
+    private void copy(OutputStream out, byte[] buffer, long remaining) throws IOException
+    {
+        InputStream in = connection.input();
+        while (remaining != 0)
+        {
+            int limit = remaining < 0 ? buffer.length : (int) Math.min(buffer.length, remaining);
+            int read = read(in, buffer, limit);
+            if (read == -1)
+            {
+                if (remaining < 0) return;
+                throw new UpstreamReadException(new EOFException("Upstream body ended early"));
+            }
+            out.write(buffer, 0, read);
+            if (remaining > 0) remaining -= read;
+        }
+    }
+
+    private void copyChunked(OutputStream out, byte[] buffer) throws IOException
+    {
+        while (true)
+        {
+            long size = parseChunkSize(readLine());
+            if (size == 0) break;
+            copy(out, buffer, size);
+            if (!readLine().isEmpty()) throw new UpstreamReadException(new IOException("Malformed upstream chunk"));
+        }
+
+        // Trailers are dropped; the client-side framing has nowhere to put them
+        while (!readLine().isEmpty())
+        {
+            // skip
+        }
+    }
+
+    private static long parseChunkSize(String line) throws UpstreamReadException
+    {
+        int end = line.indexOf(';');
+        String hex = (end == -1 ? line : line.substring(0, end)).trim();
+        try
+        {
+            long size = Long.parseLong(hex, 16);
+            if (size >= 0) return size;
+        }
+        catch (NumberFormatException e)
+        {
+            // reported below
+        }
+        throw new UpstreamReadException(new IOException("Malformed upstream chunk size: " + line));
+    }
+
+    private int read(InputStream in, byte[] buffer, int limit) throws UpstreamReadException
+    {
+        try
+        {
+            return in.read(buffer, 0, limit);
+        }
+        catch (IOException e)
+        {
+            throw new UpstreamReadException(e);
+        }
+    }
+
+    private String readLine() throws UpstreamReadException
+    {
+        try
+        {
+            return connection.readLine();
+        }
+        catch (IOException e)
+        {
+            throw new UpstreamReadException(e);
+        }
+    }
+
+    private void release(boolean reuse)
+    {
+        if (released.compareAndSet(false, true)) upstream.release(connection, reuse);
+    }
+
+    // Separates upstream failures, which count against its health, from client write failures
+    private static final class UpstreamReadException extends IOException
+    {
+        private static final long serialVersionUID = 1L;
+
+        UpstreamReadException(IOException cause)
+        {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause()
+        {
+            return (IOException) super.getCause();
+        }
+    }
+}
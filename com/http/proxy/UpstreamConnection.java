@@ -0,0 +1,120 @@
+package com.http.proxy;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One persistent HTTP/1.1 connection to an upstream
+ * Used by a single exchange at a time; between exchanges it waits in its
+ * Upstream's idle pool.
+ */
+final class UpstreamConnection
+{
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_LINE_LENGTH = 16 * 1024;
+
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+    private long lastUsed = System.nanoTime();
+    private int exchanges;
+
+    private UpstreamConnection(Socket socket) throws IOException
+    {
+        this.socket = socket;
+        this.in = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+        this.out = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+    }
+
+    static UpstreamConnection open(InetSocketAddress address, int connectTimeoutMillis, int readTimeoutMillis)
+            throws IOException
+    {
+        Socket socket = new Socket();
+        try
+        {
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            socket.setSoTimeout(readTimeoutMillis);
+            socket.connect(address, connectTimeoutMillis);
+            return new UpstreamConnection(socket);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            socket.close();
+            throw e;
+        }
+    }
+
+    InputStream input()
+    {
+        return in;
+    }
+
+    OutputStream output()
+    {
+        return out;
+    }
+
+    long getLastUsed()
+    {
+        return lastUsed;
+    }
+
+    // Whether a previous exchange already succeeded here, so a failure may just mean the upstream closed it
+    boolean isReused()
+    {
+        return exchanges > 0;
+    }
+
+    void markUsed()
+    {
+        exchanges++;
+        lastUsed = System.nanoTime();
+    }
+
+    /**
+     * Reads one CRLF- (or LF-) terminated line as ISO-8859-1
+     * @throws IOException if the stream ends first or the line is too long
+     */
+    String readLine() throws IOException
+    {
+        StringBuilder line = new StringBuilder(64);
+        int b;
+        while ((b = in.read()) != -1)
+        {
+            if (b == '\n')
+            {
+                int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r') line.setLength(length - 1);
+                return line.toString();
+            }
+            if (line.length() == MAX_LINE_LENGTH) throw new IOException("Upstream line too long");
+            line.append((char) b);
+        }
+        throw new EOFException("Upstream closed the connection");
+    }
+
+    void write(String ascii) throws IOException
+    {
+        out.write(ascii.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    void close()
+    {
+        try
+        {
+            socket.close();
+        }
+        catch (IOException ignored)
+        {
+            // Nothing left to release
+        }
+    }
+}
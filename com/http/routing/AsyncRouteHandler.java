@@ -0,0 +1,17 @@
+package com.http.routing;
+
+import java.util.concurrent.CompletableFuture;
+
+import com.http.model.request.Request;
+import com.http.model.response.Response;
+
+/**
+ * Functional interface for handlers that complete their response later
+ * The worker thread is released as soon as the future is returned; the
+ * connection is resumed and the response written when it completes.
+ */
+@FunctionalInterface
+public interface AsyncRouteHandler 
+{
+    CompletableFuture<Response> handleAsync(Request request);
+}
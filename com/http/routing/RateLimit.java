@@ -0,0 +1,168 @@
+package com.http.routing;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-client request rate limit: every client gets a token bucket that
+ * refills at a steady rate up to a burst size
+ * A bucket is a single timestamp updated with CAS (the generic cell rate
+ * algorithm): the time at which the bucket would be full again. Buckets
+ * live in a fixed-size open-addressed table, so memory stays bounded however
+ * many clients appear; a bucket whose timestamp has passed is full, holds
+ * no state worth keeping and is reused for the next client that needs a slot.
+ * Buckets of clients that are still being limited are never recycled, so
+ * table pressure cannot hand a throttled client a fresh burst; a new client
+ * that finds no free slot is refused until one of them refills.
+ */
+public final class RateLimit
+{
+    private static final int DEFAULT_MAX_CLIENTS = 1 << 16;
+
+    // Slots examined per lookup before the table is considered full around a key
+    private static final int PROBE_LIMIT = 8;
+
+    private final String name;
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final AtomicReferenceArray<Bucket> table;
+    private final int mask;
+    private final LongAdder rejected = new LongAdder();
+
+    public RateLimit(String name, double requestsPerSecond, int burst)
+    {
+        this(name, requestsPerSecond, burst, DEFAULT_MAX_CLIENTS);
+    }
+
+    /**
+     * @param requestsPerSecond Sustained rate allowed per client
+     * @param burst Requests a client may make at once after being quiet
+     * @param maxClients Clients tracked at a time (rounded up to a power of two);
+     *        beyond that only buckets that have refilled are recycled
+     */
+    public RateLimit(String name, double requestsPerSecond, int burst, int maxClients)
+    {
+        if (!(requestsPerSecond > 0) || burst < 1 || maxClients < 1)
+        {
+            throw new IllegalArgumentException("Invalid settings for rate limit '" + name + "'");
+        }
+        this.name = name;
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond));
+        this.burstNanos = intervalNanos * burst;
+
+        int capacity = Integer.highestOneBit(Math.max(PROBE_LIMIT, maxClients) - 1) << 1;
+        this.table = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public long getRejectedCount()
+    {
+        return rejected.sum();
+    }
+
+    /**
+     * Takes one token from the client's bucket
+     * @param client Key identifying the client, e.g. its InetAddress
+     * @return 0 if the request may proceed; otherwise nanoseconds until the client's next token
+     */
+    public long tryAcquire(Object client)
+    {
+        long now = System.nanoTime();
+        Bucket bucket = bucketFor(client, now);
+        if (bucket == null)
+        {
+            rejected.increment();
+            return Math.max(1, nextSlotFreeAt(client) - now);
+        }
+
+        AtomicLong fullAt = bucket.fullAt;
+        while (true)
+        {
+            long current = fullAt.get();
+            long next = (current - now > 0 ? current : now) + intervalNanos;
+            long wait = next - now - burstNanos;
+            if (wait > 0)
+            {
+                rejected.increment();
+                return wait;
+            }
+            if (fullAt.compareAndSet(current, next)) return 0;
+        }
+    }
+
+    // Finds the client's bucket, claiming an empty slot or recycling a refilled one nearby; null if there is none
+    private Bucket bucketFor(Object client, long now)
+    {
+        int home = spread(client.hashCode());
+        while (true)
+        {
+            int victim = -1;
+            long victimFullAt = 0;
+            for (int probe = 0; probe < PROBE_LIMIT; probe++)
+            {
+                int slot = (home + probe) & mask;
+                Bucket bucket = table.get(slot);
+                if (bucket == null)
+                {
+                    Bucket created = new Bucket(client, now);
+                    if (table.compareAndSet(slot, null, created)) return created;
+                    bucket = table.get(slot);
+                }
+                if (bucket.client.equals(client)) return bucket;
+
+                // Only a full bucket is idle; any other still limits its client
+                long fullAt = bucket.fullAt.get();
+                if (fullAt - now <= 0 && (victim == -1 || fullAt - victimFullAt < 0))
+                {
+                    victim = slot;
+                    victimFullAt = fullAt;
+                }
+            }
+            if (victim == -1) return null;
+
+            // Slots are never emptied, so the client is not further along; take over the victim's slot
+            Bucket evicted = table.get(victim);
+            Bucket created = new Bucket(client, now);
+            if (evicted.fullAt.get() == victimFullAt && table.compareAndSet(victim, evicted, created)) return created;
+        }
+    }
+
+    // When the first bucket around the client's home slot will have refilled, i.e. can be recycled
+    private long nextSlotFreeAt(Object client)
+    {
+        int home = spread(client.hashCode());
+        long earliest = 0;
+        for (int probe = 0; probe < PROBE_LIMIT; probe++)
+        {
+            long fullAt = table.get((home + probe) & mask).fullAt.get();
+            if (probe == 0 || fullAt - earliest < 0) earliest = fullAt;
+        }
+        return earliest;
+    }
+
+    private static int spread(int hash)
+    {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static final class Bucket
+    {
+        final Object client;
+
+        // When the bucket will hold its full burst again; at or before now means it already does
+        final AtomicLong fullAt;
+
+        Bucket(Object client, long now)
+        {
+            this.client = client;
+            this.fullAt = new AtomicLong(now);
+        }
+    }
+}
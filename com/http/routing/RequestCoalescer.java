@@ -0,0 +1,191 @@
+package com.http.routing;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.http.model.common.Header;
+import com.http.model.common.Headers;
+import com.http.model.request.HttpVerb;
+import com.http.model.request.Request;
+import com.http.model.response.Response;
+import com.http.model.response.Status;
+
+/**
+ * Single-flight filter: concurrent identical GET/HEAD requests share one handler call
+ * The first request (leader) runs the handler; requests arriving while it is
+ * in flight wait for its Response instead of repeating the work. Failures are
+ * rethrown to every waiter, and waiters give up with 504 after the timeout.
+ * Requests carrying Authorization or Cookie headers are never coalesced, nor
+ * are conditional or Range requests, whose answers only fit the asker.
+ * A streaming response can only be written once, and a response that sets a
+ * cookie or is marked private, no-store or no-cache belongs to the leader
+ * alone, so waiters on such a leader run the handler themselves.
+ */
+public final class RequestCoalescer implements RouteFilter
+{
+    private final long timeoutNanos;
+    private final String[] varyHeaders;
+    private final Map<String, CompletableFuture<Response>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder leaders = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+
+    /**
+     * @param timeout How long a waiting request blocks on the leader
+     * @param varyHeaders Request headers that make otherwise identical requests distinct
+     */
+    public RequestCoalescer(Duration timeout, String... varyHeaders)
+    {
+        if (timeout == null || timeout.isNegative() || timeout.isZero())
+        {
+            throw new IllegalArgumentException("Coalescing timeout must be positive");
+        }
+        this.timeoutNanos = timeout.toNanos();
+        this.varyHeaders = varyHeaders.clone();
+    }
+
+    @Override
+    public Response filter(Request request, RouteHandler next)
+    {
+        if (!isCoalescable(request)) return next.handle(request);
+
+        String key = keyFor(request);
+        CompletableFuture<Response> flight = new CompletableFuture<>();
+        CompletableFuture<Response> leader = inFlight.putIfAbsent(key, flight);
+
+        if (leader == null)
+        {
+            leaders.increment();
+            return lead(key, flight, request, next);
+        }
+
+        Response shared = await(key, leader);
+        if (!isShareable(shared)) return next.handle(request);
+        coalesced.increment();
+        return shared;
+    }
+
+    // Async handlers hold no worker while they wait, so there is nothing to save by blocking waiters here
+    @Override
+    public CompletableFuture<Response> filterAsync(Request request, AsyncRouteHandler next)
+    {
+        return next.handleAsync(request);
+    }
+
+    public String stats()
+    {
+        return "leaders=" + leaders.sum() + " coalesced=" + coalesced.sum() + " timeouts=" + timeouts.sum()
+                + " inFlight=" + inFlight.size();
+    }
+
+    private Response lead(String key, CompletableFuture<Response> flight, Request request, RouteHandler next)
+    {
+        try
+        {
+            Response response = next.handle(request);
+            flight.complete(response);
+            return response;
+        }
+        catch (RuntimeException | Error e)
+        {
+            flight.completeExceptionally(e);
+            throw e;
+        }
+        finally
+        {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    private Response await(String key, CompletableFuture<Response> leader)
+    {
+        try
+        {
+            return leader.get(timeoutNanos, TimeUnit.NANOSECONDS);
+        }
+        catch (TimeoutException e)
+        {
+            timeouts.increment();
+            System.out.println("Coalesced request timed out waiting for: " + key);
+            return new Response.Builder(Status.GATEWAY_TIMEOUT_504)
+                    .body("504 Gateway Timeout")
+                    .build();
+        }
+        catch (ExecutionException e)
+        {
+            // Propagate the leader's failure as if this request had thrown it
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return new Response.Builder(Status.SERVICE_UNAVAILABLE_503)
+                    .body("503 Service Unavailable")
+                    .build();
+        }
+    }
+
+    private static boolean isShareable(Response response)
+    {
+        if (response.getStreamingBody() != null) return false;
+        if (isPrivate(response.getHeaders().get(Header.Cache_Control))) return false;
+        for (Map.Entry<String, String> header : response.getOtherHeaders())
+        {
+            String name = header.getKey();
+            if (name.equalsIgnoreCase("Set-Cookie")) return false;
+            if (name.equalsIgnoreCase("Cache-Control") && isPrivate(header.getValue())) return false;
+        }
+        return true;
+    }
+
+    private static boolean isPrivate(String cacheControl)
+    {
+        if (cacheControl == null) return false;
+        for (String directive : cacheControl.split(","))
+        {
+            String name = directive.trim();
+            int eq = name.indexOf('=');
+            if (eq >= 0) name = name.substring(0, eq).trim();
+            if (name.equalsIgnoreCase("private") || name.equalsIgnoreCase("no-store")
+                    || name.equalsIgnoreCase("no-cache")) return true;
+        }
+        return false;
+    }
+
+    // Bodiless, unconditional, whole-resource reads that are not tied to a user
+    private boolean isCoalescable(Request request)
+    {
+        HttpVerb verb = request.getVerb();
+        if (verb != HttpVerb.GET && verb != HttpVerb.HEAD) return false;
+
+        // A 304 or partial answer to one of these must never reach a plain GET sharing the key
+        Headers headers = request.getHeaders();
+        return !headers.contains(Header.Authorization) && !headers.contains(Header.Cookie)
+                && !headers.contains(Header.If_None_Match) && !headers.contains(Header.If_Modified_Since)
+                && !headers.contains(Header.Range);
+    }
+
+    private String keyFor(Request request)
+    {
+        if (varyHeaders.length == 0) return request.getVerb().name() + ' ' + request.getResource();
+
+        StringBuilder key = new StringBuilder(64)
+                .append(request.getVerb().name()).append(' ').append(request.getResource());
+        for (String header : varyHeaders)
+        {
+            String value = request.getHeader(header);
+            key.append('\n').append(header).append(':').append(value == null ? "" : value);
+        }
+        return key.toString();
+    }
+}
@@ -0,0 +1,340 @@
+package com.http.routing;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.http.model.common.Header;
+import com.http.model.request.HttpVerb;
+import com.http.model.request.Request;
+import com.http.model.response.Response;
+import com.http.model.response.Status;
+import com.http.protocol.ResponseEncoder;
+
+/**
+ * Opt-in TTL micro-cache for dynamic GET/HEAD routes, used as a route filter:
+ * router.addRoute(HttpVerb.GET, "/stats", handler, ResponseCache.builder().ttl(Duration.ofSeconds(1)).build())
+ *
+ * Entries are keyed on verb, path, selected query parameters and Vary headers,
+ * and hold the response with its head already encoded, so hits skip both the
+ * handler and the header encoder. Within the stale-while-revalidate window a
+ * stale entry is served while one background call refreshes it. The store is
+ * bounded by bytes and evicts least recently used entries.
+ */
+public final class ResponseCache implements RouteFilter
+{
+    private static final int ENTRY_OVERHEAD_BYTES = 128;
+
+    // Shared by all caches; revalidations are rare (one per stale entry at a time)
+    private static final ExecutorService DEFAULT_REVALIDATOR = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "response-cache-revalidate");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final long ttlNanos;
+    private final long staleNanos;
+    private final String[] queryParams;
+    private final String[] varyHeaders;
+    private final long maxBytes;
+    private final Executor revalidator;
+
+    private final Map<String, Entry> store = new ConcurrentHashMap<>();
+    private final AtomicLong storedBytes = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private ResponseCache(Builder builder)
+    {
+        this.ttlNanos = builder.ttl.toNanos();
+        this.staleNanos = builder.staleWhileRevalidate.toNanos();
+        this.queryParams = builder.queryParams;
+        this.varyHeaders = builder.varyHeaders;
+        this.maxBytes = builder.maxBytes;
+        this.revalidator = builder.revalidator;
+    }
+
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    @Override
+    public Response filter(Request request, RouteHandler next)
+    {
+        HttpVerb verb = request.getVerb();
+        if (verb != HttpVerb.GET && verb != HttpVerb.HEAD) return next.handle(request);
+
+        String key = keyFor(request);
+        long now = System.nanoTime();
+
+        Entry entry = store.get(key);
+        if (entry != null)
+        {
+            if (now - entry.freshUntil < 0)
+            {
+                hits.increment();
+                entry.lastAccess = now;
+                return entry.response;
+            }
+            if (now - entry.staleUntil < 0)
+            {
+                staleHits.increment();
+                entry.lastAccess = now;
+                if (entry.revalidating.compareAndSet(false, true))
+                {
+                    // The refresh outlives this request, whose connection recycles it after the response
+                    revalidate(key, request.copy(), next, entry);
+                }
+                return entry.response;
+            }
+            remove(key, entry);
+        }
+
+        misses.increment();
+        return storeIfCacheable(key, next.handle(request), now);
+    }
+
+    // Drops every entry
+    public void invalidateAll()
+    {
+        for (Map.Entry<String, Entry> cached : store.entrySet())
+        {
+            remove(cached.getKey(), cached.getValue());
+        }
+    }
+
+    public String stats()
+    {
+        return "hits=" + hits.sum() + " staleHits=" + staleHits.sum() + " misses=" + misses.sum()
+                + " evictions=" + evictions.sum() + " entries=" + store.size() + " bytes=" + storedBytes.get();
+    }
+
+    private void revalidate(String key, Request request, RouteHandler next, Entry stale)
+    {
+        try
+        {
+            revalidator.execute(() -> {
+                try
+                {
+                    storeIfCacheable(key, next.handle(request), System.nanoTime());
+                }
+                catch (RuntimeException e)
+                {
+                    System.out.println("Cache revalidation failed for " + key + " | " + e.getMessage());
+                }
+                finally
+                {
+                    stale.revalidating.set(false);
+                }
+            });
+        }
+        catch (RuntimeException e)
+        {
+            stale.revalidating.set(false);
+        }
+    }
+
+    // Stores successful, shareable responses; returns what the client should get
+    private Response storeIfCacheable(String key, Response response, long now)
+    {
+        if (!isCacheable(response)) return response;
+
+        Response encoded = Response.preEncoded(response, ResponseEncoder.encodeStableHead(response));
+        byte[] body = encoded.getBody();
+        long size = ENTRY_OVERHEAD_BYTES + key.length() * 2L + encoded.getEncodedHead().length
+                + (body == null ? 0 : body.length);
+        if (size > maxBytes / 4) return response; // keep single entries from flushing the cache
+
+        Entry entry = new Entry(encoded, size, now + ttlNanos, now + ttlNanos + staleNanos, now);
+        Entry previous = store.put(key, entry);
+        storedBytes.addAndGet(size - (previous == null ? 0 : previous.size));
+
+        if (storedBytes.get() > maxBytes) evict();
+        return encoded;
+    }
+
+    private boolean isCacheable(Response response)
+    {
+        if (response == null || response.getStatus() != Status.OK_200) return false;
+        if (response.getStreamingBody() != null) return false;
+
+        String cacheControl = response.getHeaders().get(Header.Cache_Control);
+        if (cacheControl == null) return true;
+
+        String directives = cacheControl.toLowerCase();
+        return !directives.contains("no-store") && !directives.contains("private") && !directives.contains("no-cache");
+    }
+
+    // Removes expired entries, then least recently used ones down to 90% of the budget
+    private void evict()
+    {
+        if (!evictionLock.tryLock()) return; // another thread is already evicting
+        try
+        {
+            long now = System.nanoTime();
+            List<Map.Entry<String, Entry>> live = new ArrayList<>(store.size());
+            for (Map.Entry<String, Entry> cached : store.entrySet())
+            {
+                if (now - cached.getValue().staleUntil >= 0) remove(cached.getKey(), cached.getValue());
+                else live.add(cached);
+            }
+
+            long target = maxBytes - maxBytes / 10;
+            if (storedBytes.get() <= target) return;
+
+            live.sort(Comparator.comparingLong(cached -> cached.getValue().lastAccess));
+            for (Map.Entry<String, Entry> cached : live)
+            {
+                if (storedBytes.get() <= target) break;
+                remove(cached.getKey(), cached.getValue());
+            }
+        }
+        finally
+        {
+            evictionLock.unlock();
+        }
+    }
+
+    private void remove(String key, Entry entry)
+    {
+        if (store.remove(key, entry))
+        {
+            storedBytes.addAndGet(-entry.size);
+            evictions.increment();
+        }
+    }
+
+    // "GET /path?selected=params" plus the value of every Vary header
+    private String keyFor(Request request)
+    {
+        StringBuilder key = new StringBuilder(64)
+                .append(request.getVerb().name()).append(' ')
+                .append(request.getPath());
+
+        for (String param : queryParams)
+        {
+            key.append('&').append(param).append('=');
+            List<String> values = request.getQueryParams(param);
+            for (int i = 0; i < values.size(); i++)
+            {
+                if (i > 0) key.append(',');
+                key.append(values.get(i));
+            }
+        }
+        for (String header : varyHeaders)
+        {
+            String value = request.getHeader(header);
+            key.append('\n').append(header).append(':').append(value == null ? "" : value);
+        }
+        return key.toString();
+    }
+
+    private static final class Entry
+    {
+        final Response response;
+        final long size;
+        final long freshUntil;
+        final long staleUntil;
+        final AtomicBoolean revalidating = new AtomicBoolean();
+        volatile long lastAccess;
+
+        Entry(Response response, long size, long freshUntil, long staleUntil, long now)
+        {
+            this.response = response;
+            this.size = size;
+            this.freshUntil = freshUntil;
+            this.staleUntil = staleUntil;
+            this.lastAccess = now;
+        }
+    }
+
+    /**
+     * Builder for ResponseCache instances
+     */
+    public static class Builder
+    {
+        private Duration ttl = Duration.ofSeconds(1);
+        private Duration staleWhileRevalidate = Duration.ZERO;
+        private String[] queryParams = new String[0];
+        private String[] varyHeaders = new String[0];
+        private long maxBytes = 16L * 1024 * 1024;
+        private Executor revalidator = DEFAULT_REVALIDATOR;
+
+        // How long an entry is served without calling the handler
+        public Builder ttl(Duration ttl)
+        {
+            this.ttl = ttl;
+            return this;
+        }
+
+        // Extra time a stale entry may be served while it is refreshed in the background
+        public Builder staleWhileRevalidate(Duration window)
+        {
+            this.staleWhileRevalidate = window;
+            return this;
+        }
+
+        // Query parameters that distinguish entries; all others are ignored
+        public Builder queryParams(String... names)
+        {
+            this.queryParams = names.clone();
+            return this;
+        }
+
+        // Request headers whose values distinguish entries
+        public Builder vary(String... headerNames)
+        {
+            this.varyHeaders = headerNames.clone();
+            return this;
+        }
+
+        public Builder vary(Header... headers)
+        {
+            this.varyHeaders = new String[headers.length];
+            for (int i = 0; i < headers.length; i++) varyHeaders[i] = headers[i].getHeaderValue();
+            return this;
+        }
+
+        // Upper bound on memory held by this cache
+        public Builder maxBytes(long maxBytes)
+        {
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        // Executor for stale-while-revalidate refreshes
+        public Builder revalidateOn(Executor executor)
+        {
+            this.revalidator = executor;
+            return this;
+        }
+
+        public ResponseCache build()
+        {
+            if (ttl == null || ttl.isNegative() || ttl.isZero())
+            {
+                throw new IllegalArgumentException("Cache TTL must be positive");
+            }
+            if (staleWhileRevalidate == null || staleWhileRevalidate.isNegative())
+            {
+                throw new IllegalArgumentException("Stale-while-revalidate window cannot be negative");
+            }
+            return new ResponseCache(this);
+        }
+    }
+}
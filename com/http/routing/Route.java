@@ -0,0 +1,96 @@
+package com.http.routing;
+
+import java.time.Duration;
+import java.util.regex.Pattern;
+
+import com.http.model.request.HttpVerb;
+
+/**
+ * A registered route: verb, path pattern and the handler serving it
+ * Exactly one of the synchronous and asynchronous handlers is set.
+ * The pipeline fields hold the handler already wrapped in its filters.
+ */
+final class Route
+{
+    final HttpVerb verb;
+    final String path;
+    final RouteHandler handler;
+    final AsyncRouteHandler asyncHandler;
+    final Duration timeout;
+    final RouteFilter[] filters;
+
+    // Bulkhead the route runs on; null means the connection's own worker
+    final SchedulingClass schedulingClass;
+
+    // Per-client limit for this route, checked on top of the global one; null if none
+    volatile RateLimit rateLimit;
+
+    // Handler precomposed with global and route filters by RouteManager
+    volatile RouteHandler pipeline;
+    volatile AsyncRouteHandler asyncPipeline;
+
+    // Compiled once at registration; null for literal paths
+    private final Pattern pathPattern;
+
+    Route(HttpVerb verb, String path, RouteHandler handler, AsyncRouteHandler asyncHandler, Duration timeout,
+          RouteFilter[] filters, SchedulingClass schedulingClass)
+    {
+        this.verb = verb;
+        this.path = path;
+        this.handler = handler;
+        this.asyncHandler = asyncHandler;
+        this.timeout = timeout;
+        this.filters = (filters == null) ? new RouteFilter[0] : filters.clone();
+        this.schedulingClass = schedulingClass;
+        this.pathPattern = isLiteral(path) ? null : compile(path);
+    }
+
+    boolean isAsync()
+    {
+        return asyncHandler != null;
+    }
+
+    boolean isPattern()
+    {
+        return pathPattern != null;
+    }
+
+    // Check if this route's pattern matches the request path
+    boolean matches(HttpVerb method, String requestPath)
+    {
+        if (method != verb) return false;
+        if (pathPattern == null) return path.equals(requestPath);
+        return pathPattern.matcher(requestPath).matches();
+    }
+
+    private static boolean isLiteral(String path)
+    {
+        return path.indexOf('*') < 0 && path.indexOf(':') < 0;
+    }
+
+    // Convert path parameters to regex, e.g., /users/:id -> /users/[^/]+, and * to .*
+    private static Pattern compile(String path)
+    {
+        StringBuilder regex = new StringBuilder("^");
+        String[] segments = path.split("/", -1);
+        for (int s = 0; s < segments.length; s++)
+        {
+            String segment = segments[s];
+            if (s > 0) regex.append('/');
+
+            if (segment.startsWith(":"))
+            {
+                regex.append("[^/]+");
+                continue;
+            }
+
+            String[] literals = segment.split("\\*", -1);
+            for (int i = 0; i < literals.length; i++)
+            {
+                if (i > 0) regex.append(".*");
+                if (!literals[i].isEmpty()) regex.append(Pattern.quote(literals[i]));
+            }
+        }
+        return Pattern.compile(regex.append('$').toString());
+    }
+}
@@ -0,0 +1,30 @@
+package com.http.routing;
+
+import java.util.concurrent.CompletableFuture;
+
+import com.http.model.request.Request;
+import com.http.model.response.Response;
+
+/**
+ * Cross-cutting step wrapped around route handlers (auth, CORS, logging, ...)
+ * A filter either returns its own response (short-circuit) or calls next.
+ * RouteManager composes filters into each route's handler at registration
+ * time, so no filter list is walked per request.
+ */
+@FunctionalInterface
+public interface RouteFilter 
+{
+    Response filter(Request request, RouteHandler next);
+
+    /**
+     * Variant applied around asynchronous routes
+     * Filters that guard async routes implement this without blocking, e.g.
+     * by short-circuiting up front and otherwise composing on
+     * next.handleAsync(request). RouteManager refuses to put a filter that
+     * does not override it in front of an async route.
+     */
+    default CompletableFuture<Response> filterAsync(Request request, AsyncRouteHandler next) 
+    {
+        throw new UnsupportedOperationException(getClass().getName() + " does not support async routes");
+    }
+}
@@ -1,90 +1,455 @@
 package com.http.routing;
 
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import com.http.model.request.Request;
 import com.http.model.request.HttpVerb;
 import com.http.model.response.Response;
 import com.http.model.response.Status;
+import com.http.sse.EventChannel;
+import com.http.trace.RequestTrace;
+import com.http.websocket.WebSocketHandler;
 
 /**
  * Routes incoming HTTP requests to appropriate handlers
  * Supports custom route registration, default GET handler,
- * path parameters, and wildcard routes.
+ * path parameters, wildcard routes, asynchronous handlers and filters.
  */
 public class RouteManager 
 {
-    // Thread-safe map storing route patterns to their handlers
-    private final Map<String, RouteHandler> handlerRegistry = new ConcurrentHashMap<>();
-    
+    // Thread-safe map storing route keys to their routes
+    private final Map<String, Route> handlerRegistry = new ConcurrentHashMap<>();
+
+    // The same routes by verb, then path, so per-request lookups build no "METHOD /path" key
+    private final Map<HttpVerb, Map<String, Route>> routesByVerb = new EnumMap<>(HttpVerb.class);
+    {
+        for (HttpVerb verb : HttpVerb.values()) routesByVerb.put(verb, new ConcurrentHashMap<>());
+    }
+
+    // Routes with path parameters or wildcards, in registration order
+    private final List<Route> patternRoutes = new CopyOnWriteArrayList<>();
+
+    // Named bulkheads that routes can be assigned to
+    private final Map<String, SchedulingClass> schedulingClasses = new ConcurrentHashMap<>();
+
+    // Filters wrapped around every route, outermost first
+    private final List<RouteFilter> globalFilters = new CopyOnWriteArrayList<>();
+
+    // WebSocket endpoints by exact path
+    private final Map<String, WebSocketHandler> webSocketHandlers = new ConcurrentHashMap<>();
+
+    // Server-Sent Events channels by exact path
+    private final Map<String, EventChannel> eventChannels = new ConcurrentHashMap<>();
+
+    // Per-client limit checked for every request before its body is read; null if none
+    private volatile RateLimit clientRateLimit = null;
+
     private RouteHandler fallbackGetHandler = null;
 
+    // Precomposed handlers for the fallback GET and for unmatched requests
+    private volatile RouteHandler fallbackPipeline = null;
+    private volatile RouteHandler unmatchedPipeline = this::unmatched;
+
     // Register default GET handler
     public void setDefaultGetHandler(RouteHandler handler) 
     {
         this.fallbackGetHandler = handler;
+        recompose();
     }
 
     // Add route for specific HTTP method and path
     public void addRoute(HttpVerb verb, String resource, RouteHandler handler) 
     {
-        String routeKey = buildRouteKey(verb, resource);
-        handlerRegistry.put(routeKey, handler);
+        register(new Route(verb, resource, handler, null, null, null, null));
+    }
+
+    // Add route wrapped in its own filters, applied inside the global ones
+    public void addRoute(HttpVerb verb, String resource, RouteHandler handler, RouteFilter... filters)
+    {
+        register(new Route(verb, resource, handler, null, null, filters, null));
+    }
+
+    /**
+     * Add route that runs on a scheduling class instead of the connection worker
+     * Body reading, the handler and the response write all happen on the class's
+     * executor; requests beyond its concurrency and queue are answered with 503.
+     */
+    public void addRoute(HttpVerb verb, String resource, SchedulingClass schedulingClass, RouteHandler handler,
+                         RouteFilter... filters)
+    {
+        register(new Route(verb, resource, handler, null, null, filters, schedulingClass));
+    }
+
+    /**
+     * Define a named bulkhead with its own worker threads and bounded queue
+     * @param concurrency Maximum handlers running at once for this class
+     * @param queueCapacity Requests allowed to wait when all workers are busy
+     */
+    public SchedulingClass defineSchedulingClass(String name, int concurrency, int queueCapacity)
+    {
+        SchedulingClass schedulingClass = new SchedulingClass(name, concurrency, queueCapacity);
+        if (schedulingClasses.putIfAbsent(name, schedulingClass) != null)
+        {
+            throw new IllegalArgumentException("Scheduling class already defined: " + name);
+        }
+        return schedulingClass;
+    }
+
+    public Collection<SchedulingClass> getSchedulingClasses()
+    {
+        return Collections.unmodifiableCollection(schedulingClasses.values());
+    }
+
+    /**
+     * Scheduling class of the route matching this request head
+     * @return The class, or null when the request runs on the connection worker
+     */
+    public SchedulingClass schedulingClassFor(HttpVerb method, String path)
+    {
+        Route route = findRoute(method, path);
+        return (route == null) ? null : route.schedulingClass;
+    }
+
+    /**
+     * Limit how fast each client may send requests, whatever the route
+     * Requests over the limit are answered with 429 before their body is read.
+     * @param limit The limit, or null to remove it
+     */
+    public void setClientRateLimit(RateLimit limit)
+    {
+        this.clientRateLimit = limit;
+    }
+
+    public RateLimit getClientRateLimit()
+    {
+        return clientRateLimit;
+    }
+
+    /**
+     * Limit how fast each client may call one registered route, on top of the client limit
+     * @throws IllegalArgumentException if no route is registered for the verb and resource
+     */
+    public void limitRate(HttpVerb verb, String resource, RateLimit limit)
+    {
+        Route route = handlerRegistry.get(buildRouteKey(verb, resource));
+        if (route == null)
+        {
+            throw new IllegalArgumentException("No route registered for " + verb + " " + resource);
+        }
+        route.rateLimit = limit;
+    }
+
+    /**
+     * Per-client limit of the route matching this request head
+     * @return The route's limit, or null when only the client limit applies
+     */
+    public RateLimit rateLimitFor(HttpVerb method, String path)
+    {
+        Route route = findRoute(method, path);
+        return (route == null) ? null : route.rateLimit;
+    }
+
+    /**
+     * Add a filter around every route, the fallback GET handler and unmatched requests
+     * Filters added first run outermost. Existing routes are recomposed immediately.
+     */
+    public void addFilter(RouteFilter filter)
+    {
+        for (Route route : handlerRegistry.values())
+        {
+            if (route.isAsync()) requireAsyncSupport(filter, route);
+        }
+        globalFilters.add(filter);
+        recompose();
+    }
+
+    /**
+     * Add an asynchronous route; the response is written when the future completes
+     * @param timeout Time allowed for the future to complete before answering 504
+     */
+    public void addRoute(HttpVerb verb, String resource, AsyncRouteHandler handler, Duration timeout)
+    {
+        addRoute(verb, resource, handler, timeout, new RouteFilter[0]);
+    }
+
+    /**
+     * Add an asynchronous route wrapped in its own filters, applied inside the global ones
+     * Filters run through RouteFilter.filterAsync; every route and global filter must implement it.
+     */
+    public void addRoute(HttpVerb verb, String resource, AsyncRouteHandler handler, Duration timeout,
+                         RouteFilter... filters)
+    {
+        if (timeout == null || timeout.isNegative() || timeout.isZero())
+        {
+            throw new IllegalArgumentException("Async route timeout must be positive: " + verb + " " + resource);
+        }
+        register(new Route(verb, resource, null, handler, timeout, filters, null));
     }
 
-    // Route incoming request
+    /**
+     * Add a WebSocket endpoint; GET upgrade requests for this exact path switch to WebSocket frames
+     * Requests for the path without an upgrade still go to the regular routes.
+     */
+    public void addWebSocket(String path, WebSocketHandler handler)
+    {
+        if (webSocketHandlers.putIfAbsent(path, handler) != null)
+        {
+            throw new IllegalArgumentException("WebSocket endpoint already registered: " + path);
+        }
+    }
+
+    // Handler of the WebSocket endpoint at this path, or null if there is none
+    public WebSocketHandler webSocketHandlerFor(String path)
+    {
+        return webSocketHandlers.get(path);
+    }
+
+    /**
+     * Add a Server-Sent Events endpoint; GETs for this exact path subscribe to the returned channel
+     * Events broadcast on the channel reach every connected client.
+     */
+    public EventChannel addEventStream(String path)
+    {
+        EventChannel channel = new EventChannel(path);
+        if (eventChannels.putIfAbsent(path, channel) != null)
+        {
+            throw new IllegalArgumentException("Event stream already registered: " + path);
+        }
+        return channel;
+    }
+
+    // Channel of the event stream at this path, or null if there is none
+    public EventChannel eventChannelFor(String path)
+    {
+        return eventChannels.get(path);
+    }
+
+    // Route incoming request, waiting for asynchronous handlers to finish
     public Response route(Request request) 
     {
-        HttpVerb method = request.getVerb();
-        String path = request.getResource();
+        return routeAsync(request).join();
+    }
 
-        // Try exact match first
-        String routeKey = buildRouteKey(method, path);
-        RouteHandler handler = handlerRegistry.get(routeKey);
-        if (handler != null) return handler.handle(request);
+    /**
+     * Route incoming request without blocking on asynchronous handlers
+     * Synchronous handlers run on the calling thread and return a completed future.
+     * The future never completes exceptionally: timeouts become 504, rejected
+     * work 503 and handler failures 500.
+     */
+    public CompletableFuture<Response> routeAsync(Request request)
+    {
+        return routeAsync(request, null);
+    }
 
-        // Try wildcard and path-parameter routes
-        for (Map.Entry<String, RouteHandler> entry : handlerRegistry.entrySet()) 
+    /**
+     * Like routeAsync(request), recording into the trace when the route was
+     * matched (and which) and when the handler's response was complete
+     * @param trace Trace of the request, or null
+     */
+    public CompletableFuture<Response> routeAsync(Request request, RequestTrace trace)
+    {
+        HttpVerb method = request.getVerb();
+        String path = request.getPath();
+
+        Route route = findRoute(method, path);
+        if (trace != null && trace.isActive())
         {
-            String patternKey = entry.getKey();
-            if (matchesPattern(patternKey, method, path)) 
+            trace.routed(route == null ? null : route.path);
+            CompletableFuture<Response> pending = select(route, request);
+            if (pending.isDone())
             {
-                return entry.getValue().handle(request);
+                trace.handled();
+                return pending;
             }
+            return pending.whenComplete((response, error) -> trace.handled());
         }
+        return select(route, request);
+    }
+
+    private CompletableFuture<Response> select(Route route, Request request)
+    {
+        if (route != null) return dispatch(route, request);
 
-        // Fallback GET handler
-        if (method == HttpVerb.GET && fallbackGetHandler != null) 
+        // Fallback GET handler, which also answers HEAD
+        RouteHandler fallback = fallbackPipeline;
+        HttpVerb method = request.getVerb();
+        if ((method == HttpVerb.GET || method == HttpVerb.HEAD) && fallback != null) 
         {
-            return fallbackGetHandler.handle(request);
+            return CompletableFuture.completedFuture(fallback.handle(request));
         }
 
         // Return error for unmatched routes
-        return generateErrorResponse(method, path, routeKey);
+        return CompletableFuture.completedFuture(unmatchedPipeline.handle(request));
     }
 
-    // Build key as "METHOD /path"
-    private String buildRouteKey(HttpVerb verb, String resource) 
+    private void register(Route route)
     {
-        return verb + " " + resource;
+        if (route.isAsync())
+        {
+            for (RouteFilter filter : route.filters) requireAsyncSupport(filter, route);
+            for (RouteFilter filter : globalFilters) requireAsyncSupport(filter, route);
+        }
+        compose(route);
+        String routeKey = buildRouteKey(route.verb, route.path);
+        Route previous = handlerRegistry.put(routeKey, route);
+        routesByVerb.get(route.verb).put(route.path, route);
+        if (previous != null && previous.isPattern()) patternRoutes.remove(previous);
+        if (route.isPattern()) patternRoutes.add(route);
+    }
+
+    private Route findRoute(HttpVerb method, String path)
+    {
+        // Try exact match first
+        Route route = routesByVerb.get(method).get(path);
+        if (route != null) return route;
+
+        // Try wildcard and path-parameter routes
+        for (Route candidate : patternRoutes)
+        {
+            if (candidate.matches(method, path)) return candidate;
+        }
+        return null;
+    }
+
+    // Wraps the route's handler in route filters, then global filters (outermost)
+    private void compose(Route route)
+    {
+        if (route.isAsync())
+        {
+            AsyncRouteHandler chain = route.asyncHandler;
+            for (int i = route.filters.length - 1; i >= 0; i--) chain = wrapAsync(route.filters[i], chain);
+            for (int i = globalFilters.size() - 1; i >= 0; i--) chain = wrapAsync(globalFilters.get(i), chain);
+            route.asyncPipeline = chain;
+        }
+        else
+        {
+            route.pipeline = wrapGlobal(wrapAll(route.filters, route.handler));
+        }
+    }
+
+    private void recompose()
+    {
+        for (Route route : handlerRegistry.values()) compose(route);
+        fallbackPipeline = (fallbackGetHandler == null) ? null : wrapGlobal(fallbackGetHandler);
+        unmatchedPipeline = wrapGlobal(this::unmatched);
+    }
+
+    private RouteHandler wrapGlobal(RouteHandler handler)
+    {
+        return wrapAll(globalFilters.toArray(new RouteFilter[0]), handler);
+    }
+
+    private static RouteHandler wrapAll(RouteFilter[] filters, RouteHandler handler)
+    {
+        RouteHandler chain = handler;
+        for (int i = filters.length - 1; i >= 0; i--)
+        {
+            RouteFilter filter = filters[i];
+            RouteHandler next = chain;
+            chain = request -> filter.filter(request, next);
+        }
+        return chain;
+    }
+
+    // A filter that only implements filter() could guard an async route only by blocking a thread on it
+    private static void requireAsyncSupport(RouteFilter filter, Route route)
+    {
+        try
+        {
+            Method filterAsync = filter.getClass().getMethod("filterAsync", Request.class, AsyncRouteHandler.class);
+            if (filterAsync.getDeclaringClass() != RouteFilter.class) return;
+        }
+        catch (NoSuchMethodException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        throw new IllegalArgumentException("Filter " + filter.getClass().getName()
+                + " does not implement filterAsync and cannot wrap async route " + route.verb + " " + route.path);
     }
 
-    // Check if registered route pattern matches request path
-    private boolean matchesPattern(String patternKey, HttpVerb method, String path) 
+    private static AsyncRouteHandler wrapAsync(RouteFilter filter, AsyncRouteHandler next)
     {
-        String[] parts = patternKey.split(" ", 2);
-        if (parts.length != 2 || !parts[0].equals(method.toString())) return false;
+        return request -> filter.filterAsync(request, next);
+    }
+
+    private CompletableFuture<Response> dispatch(Route route, Request request)
+    {
+        if (!route.isAsync())
+        {
+            return CompletableFuture.completedFuture(route.pipeline.handle(request));
+        }
 
-        String routePattern = parts[1];
-        // Convert path parameters to regex, e.g., /users/:id -> /users/[^/]+
-        String regex = routePattern.replaceAll(":[^/]+", "[^/]+");
-        regex = regex.replace("*", ".*"); // wildcard support
-        Pattern p = Pattern.compile("^" + regex + "$");
-        Matcher m = p.matcher(path);
-        return m.matches();
+        // The handler may still hold the request after a timeout answered it; keep it off the recycled instance
+        CompletableFuture<Response> pending;
+        try
+        {
+            pending = route.asyncPipeline.handleAsync(request.copy());
+        }
+        catch (RuntimeException e)
+        {
+            pending = CompletableFuture.failedFuture(e);
+        }
+        if (pending == null)
+        {
+            pending = CompletableFuture.failedFuture(new IllegalStateException("Async handler returned no future"));
+        }
+
+        // Copy first so the timeout does not complete the handler's own future
+        return pending.copy()
+                .orTimeout(route.timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .exceptionally(error -> asyncFailureResponse(route, error));
+    }
+
+    // Maps a failed or timed-out async handler to an error response
+    private Response asyncFailureResponse(Route route, Throwable error)
+    {
+        Throwable cause = (error instanceof CompletionException && error.getCause() != null) ? error.getCause() : error;
+
+        if (cause instanceof TimeoutException)
+        {
+            System.out.println("Async route timed out after " + route.timeout.toMillis() + " ms: " + route.verb + " " + route.path);
+            return new Response.Builder(Status.GATEWAY_TIMEOUT_504)
+                    .body("504 Gateway Timeout")
+                    .build();
+        }
+        if (cause instanceof RejectedExecutionException)
+        {
+            System.out.println("Async route rejected: " + route.verb + " " + route.path);
+            return new Response.Builder(Status.SERVICE_UNAVAILABLE_503)
+                    .body("503 Service Unavailable")
+                    .build();
+        }
+
+        System.out.println("Async route failed: " + route.verb + " " + route.path + " | " + cause);
+        return new Response.Builder(Status.INTERNAL_SERVER_ERROR_500)
+                .body("500 Internal Server Error")
+                .build();
+    }
+
+    private Response unmatched(Request request)
+    {
+        HttpVerb method = request.getVerb();
+        String path = request.getPath();
+        return generateErrorResponse(method, path, buildRouteKey(method, path));
+    }
+
+    // Build key as "METHOD /path"
+    private String buildRouteKey(HttpVerb verb, String resource) 
+    {
+        return verb + " " + resource;
     }
 
     private Response generateErrorResponse(HttpVerb method, String path, String routePattern) 
@@ -95,7 +460,7 @@ public class RouteManager
             return new Response.Builder(Status.NOT_FOUND_404)
                     .body("404 Not Found")
                     .build();
-        } 
+        }
         else 
         {
             System.out.println("Method not allowed: " + method + " " + path);
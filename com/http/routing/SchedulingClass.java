@@ -0,0 +1,85 @@
+package com.http.routing;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bulkhead for a group of routes: a bounded executor with its own
+ * concurrency limit and queue, so a saturated class cannot starve others.
+ * Created through RouteManager.defineSchedulingClass().
+ */
+public final class SchedulingClass
+{
+    private final String name;
+    private final ThreadPoolExecutor executor;
+    private final LongAdder rejected = new LongAdder();
+
+    SchedulingClass(String name, int concurrency, int queueCapacity)
+    {
+        if (concurrency < 1 || queueCapacity < 0)
+        {
+            throw new IllegalArgumentException("Invalid limits for scheduling class '" + name + "'");
+        }
+        this.name = name;
+
+        AtomicInteger threadIds = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(concurrency, concurrency, 60, TimeUnit.SECONDS,
+                queueCapacity == 0 ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(queueCapacity),
+                task -> {
+                    Thread thread = new Thread(task, "route-" + name + "-" + threadIds.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Runs the task on this class's workers
+     * @throws RejectedExecutionException if all workers are busy and the queue is full
+     */
+    public void execute(Runnable task)
+    {
+        try
+        {
+            executor.execute(task);
+        }
+        catch (RejectedExecutionException e)
+        {
+            rejected.increment();
+            throw e;
+        }
+    }
+
+    // Stops accepting work; queued and running tasks still complete
+    public void shutdown()
+    {
+        executor.shutdown();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    public String stats()
+    {
+        return name + ": active=" + executor.getActiveCount() + " queued=" + executor.getQueue().size()
+                + " completed=" + executor.getCompletedTaskCount() + " rejected=" + rejected.sum();
+    }
+
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+}
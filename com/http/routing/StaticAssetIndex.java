@@ -0,0 +1,361 @@
+package com.http.routing;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.http.protocol.HttpDate;
+
+/**
+ * In-memory index of a static file tree, so lookups never touch the filesystem
+ * Maps normalised request paths ("/css/site.css") to precomputed file
+ * metadata: size, modification time, MIME type, ETag and Last-Modified.
+ * Directories resolve to their index.html. The index is built in parallel
+ * at startup and published as an immutable snapshot; a WatchService thread
+ * re-reads only the entries that change and publishes a new snapshot.
+ */
+public final class StaticAssetIndex
+{
+    private static final String INDEX_FILE = "index.html";
+    private static final String DEFAULT_MIME_TYPE = "application/octet-stream";
+
+    private static final Map<String, String> MIME_TYPES = Map.of(
+            "html", "text/html; charset=utf-8",
+            "htm", "text/html; charset=utf-8",
+            "txt", "text/plain; charset=utf-8",
+            "css", "text/css; charset=utf-8",
+            "js", "application/javascript",
+            "json", "application/json",
+            "png", "image/png",
+            "jpg", "image/jpeg",
+            "jpeg", "image/jpeg",
+            "gif", "image/gif");
+
+    private final Path root;
+
+    // Current snapshot; replaced whole, never modified
+    private volatile Map<String, Asset> assets;
+
+    private WatchService watcher;
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+
+    private StaticAssetIndex(Path root)
+    {
+        this.root = root;
+    }
+
+    /**
+     * Indexes the tree under root and keeps the index up to date while the server runs
+     * A root that does not exist at startup gives an index that stays empty.
+     */
+    public static StaticAssetIndex watch(Path root)
+    {
+        StaticAssetIndex index = new StaticAssetIndex(root.toAbsolutePath().normalize());
+        long started = System.nanoTime();
+        index.assets = index.scan();
+        System.out.println("🗂️ Indexed " + index.countFiles() + " static files under " + index.root + " in "
+                + (System.nanoTime() - started) / 1_000_000 + " ms");
+        index.startWatching();
+        return index;
+    }
+
+    public Path getRoot()
+    {
+        return root;
+    }
+
+    /**
+     * Resolves a request path to the file it serves
+     * @param path Request path without query string, e.g. "/" or "/docs/"
+     * @return The file (a directory's index.html for directories), or null if there is none
+     */
+    public Asset lookup(String path)
+    {
+        Map<String, Asset> snapshot = assets;
+        Asset asset = snapshot.get(key(path));
+        if (asset != null && asset.isDirectory()) asset = snapshot.get(childKey(asset.key, INDEX_FILE));
+        return asset;
+    }
+
+    // Normalised key: one leading slash, no trailing slash except for the root
+    private static String key(String path)
+    {
+        int end = path.length();
+        while (end > 1 && path.charAt(end - 1) == '/') end--;
+        return end == path.length() ? path : path.substring(0, end);
+    }
+
+    private static String childKey(String parentKey, String name)
+    {
+        return parentKey.equals("/") ? "/" + name : parentKey + "/" + name;
+    }
+
+    private String keyOf(Path path)
+    {
+        Path relative = root.relativize(path);
+        if (relative.toString().isEmpty()) return "/";
+
+        StringBuilder key = new StringBuilder();
+        for (Path segment : relative) key.append('/').append(segment);
+        return key.toString();
+    }
+
+    // Full parallel walk of the tree
+    private Map<String, Asset> scan()
+    {
+        if (!Files.isDirectory(root)) return Map.of();
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(root))
+        {
+            paths = walk.collect(Collectors.toList());
+        }
+        catch (IOException | RuntimeException e)
+        {
+            System.out.println("⚠️ Could not index " + root + ": " + e.getMessage());
+            return assets == null ? Map.of() : assets;
+        }
+
+        return paths.parallelStream()
+                .map(this::describe)
+                .filter(asset -> asset != null)
+                .collect(Collectors.toUnmodifiableMap(asset -> asset.key, asset -> asset, (first, second) -> first));
+    }
+
+    // Reads one file's metadata, or null if it vanished or cannot be read
+    private Asset describe(Path path)
+    {
+        try
+        {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            String key = keyOf(path);
+            if (attributes.isDirectory()) return new Asset(key, path, true, 0, 0, null);
+            if (!attributes.isRegularFile()) return null;
+            return new Asset(key, path, false, attributes.size(), attributes.lastModifiedTime().toMillis(),
+                    mimeTypeOf(path.getFileName().toString()));
+        }
+        catch (IOException e)
+        {
+            return null;
+        }
+    }
+
+    private static String mimeTypeOf(String filename)
+    {
+        int dot = filename.lastIndexOf('.');
+        if (dot < 0) return DEFAULT_MIME_TYPE;
+        return MIME_TYPES.getOrDefault(filename.substring(dot + 1).toLowerCase(Locale.ROOT), DEFAULT_MIME_TYPE);
+    }
+
+    private int countFiles()
+    {
+        int files = 0;
+        for (Asset asset : assets.values())
+        {
+            if (!asset.isDirectory()) files++;
+        }
+        return files;
+    }
+
+    // ---- Incremental refresh ----
+
+    private void startWatching()
+    {
+        if (!Files.isDirectory(root)) return;
+        try
+        {
+            watcher = FileSystems.getDefault().newWatchService();
+            registerTree(root);
+        }
+        catch (IOException e)
+        {
+            System.out.println("⚠️ Static files under " + root + " will not be refreshed: " + e.getMessage());
+            return;
+        }
+
+        Thread thread = new Thread(this::runWatcher, "static-asset-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void registerTree(Path directory) throws IOException
+    {
+        try (Stream<Path> walk = Files.walk(directory))
+        {
+            for (Path path : (Iterable<Path>) walk.filter(Files::isDirectory)::iterator)
+            {
+                WatchKey key = path.register(watcher,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+                watchedDirectories.put(key, path);
+            }
+        }
+    }
+
+    private void runWatcher()
+    {
+        while (true)
+        {
+            WatchKey key;
+            try
+            {
+                key = watcher.take();
+            }
+            catch (InterruptedException | ClosedWatchServiceException e)
+            {
+                return;
+            }
+
+            // Gather everything that is already pending, then publish one snapshot for the batch
+            Set<Path> changed = new HashSet<>();
+            boolean overflow = false;
+            do
+            {
+                Path directory = watchedDirectories.get(key);
+                for (WatchEvent<?> event : key.pollEvents())
+                {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) overflow = true;
+                    else if (directory != null) changed.add(directory.resolve((Path) event.context()));
+                }
+                if (!key.reset()) watchedDirectories.remove(key);
+            }
+            while ((key = watcher.poll()) != null);
+
+            try
+            {
+                if (overflow) assets = scan();
+                else apply(changed);
+            }
+            catch (RuntimeException e)
+            {
+                System.out.println("⚠️ Static file index refresh failed: " + e.getMessage());
+            }
+        }
+    }
+
+    // Re-reads the changed paths only; a new directory is walked and watched as a whole
+    private void apply(Set<Path> changed)
+    {
+        Map<String, Asset> next = new HashMap<>(assets);
+        for (Path path : changed)
+        {
+            String key = keyOf(path);
+            Asset asset = describe(path);
+            if (asset == null)
+            {
+                // Deleted: drop the entry and, for a directory, everything below it
+                String prefix = key + "/";
+                next.remove(key);
+                next.keySet().removeIf(candidate -> candidate.startsWith(prefix));
+                continue;
+            }
+
+            next.put(key, asset);
+            if (asset.isDirectory())
+            {
+                try
+                {
+                    registerTree(path);
+                    try (Stream<Path> walk = Files.walk(path))
+                    {
+                        List<Path> children = walk.collect(Collectors.toList());
+                        for (Path child : children)
+                        {
+                            Asset described = describe(child);
+                            if (described != null) next.put(described.key, described);
+                        }
+                    }
+                }
+                catch (NoSuchFileException e)
+                {
+                    next.remove(key); // gone again before it could be walked
+                }
+                catch (IOException | RuntimeException e)
+                {
+                    System.out.println("⚠️ Could not index new directory " + path + ": " + e.getMessage());
+                }
+            }
+        }
+        assets = Map.copyOf(next);
+    }
+
+    /**
+     * Metadata of one indexed file or directory
+     */
+    public static final class Asset
+    {
+        private final String key;
+        private final Path path;
+        private final boolean directory;
+        private final long size;
+        private final long lastModifiedMillis;
+        private final String mimeType;
+        private final String etag;
+        private final String lastModified;
+
+        private Asset(String key, Path path, boolean directory, long size, long lastModifiedMillis, String mimeType)
+        {
+            this.key = key;
+            this.path = path;
+            this.directory = directory;
+            this.size = size;
+            this.lastModifiedMillis = lastModifiedMillis;
+            this.mimeType = mimeType;
+            this.etag = directory ? null : "\"" + Long.toHexString(size) + "-" + Long.toHexString(lastModifiedMillis) + "\"";
+            this.lastModified = directory ? null : HttpDate.format(lastModifiedMillis);
+        }
+
+        public Path getPath()
+        {
+            return path;
+        }
+
+        public boolean isDirectory()
+        {
+            return directory;
+        }
+
+        public long getSize()
+        {
+            return size;
+        }
+
+        public long getLastModifiedMillis()
+        {
+            return lastModifiedMillis;
+        }
+
+        public String getMimeType()
+        {
+            return mimeType;
+        }
+
+        // Strong validator derived from size and modification time
+        public String getETag()
+        {
+            return etag;
+        }
+
+        // Modification time as an HTTP date
+        public String getLastModified()
+        {
+            return lastModified;
+        }
+    }
+}
@@ -1,91 +1,126 @@
 package com.http.routing;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 import com.http.model.common.Header;
+import com.http.model.request.HttpVerb;
 import com.http.model.request.Request;
 import com.http.model.response.Response;
 import com.http.model.response.Status;
+import com.http.model.response.StreamingBody;
 
 /**
  * Handles static file serving from the resources directory
- * Supports HTML, TXT, PNG, JPG, CSS, JS, GIF file types
+ * Files are looked up in a StaticAssetIndex, so 404s, HEAD and conditional
+ * requests (If-None-Match) are answered from memory. GET reads small files
+ * whole and streams larger ones from disk.
  */
-public class StaticFileHandler implements RouteHandler 
+public class StaticFileHandler implements RouteHandler
 {
     private static final Path STATIC_FILES_DIRECTORY = Paths.get("resources").toAbsolutePath().normalize();
 
+    // Larger files are streamed instead of read into memory
+    private static final long MAX_BUFFERED_FILE_SIZE = 256 * 1024;
+
+    private final StaticAssetIndex index;
+
+    public StaticFileHandler()
+    {
+        this(StaticAssetIndex.watch(STATIC_FILES_DIRECTORY));
+    }
+
+    public StaticFileHandler(StaticAssetIndex index)
+    {
+        this.index = index;
+    }
+
     @Override
-    public Response handle(Request request) 
+    public Response handle(Request request)
     {
-        String requestedPath = request.getResource();
+        String requestedPath = request.getPath();
 
-        // Default to index.html for root
-        if (requestedPath.equals("/")) 
+        // Security check; only paths with dot segments need normalising, and the normalised path is what gets served
+        if (requestedPath.contains("/."))
         {
-            requestedPath = "/index.html";
+            requestedPath = securePath(requestedPath);
+            if (requestedPath == null)
+            {
+                System.out.println("SECURITY ALERT: Path traversal blocked: " + request.getPath());
+                return new Response.Builder(Status.FORBIDDEN_403)
+                        .body("403 Forbidden")
+                        .build();
+            }
         }
 
-        Path targetPath = STATIC_FILES_DIRECTORY.resolve(requestedPath.substring(1)).normalize();
+        // Directories (including the root) resolve to their index.html
+        StaticAssetIndex.Asset asset = index.lookup(requestedPath);
+        if (asset == null)
+        {
+            return notFound();
+        }
 
-        // Security check
-        if (!isPathSecure(targetPath)) 
+        if (matches(request.getHeader(Header.If_None_Match), asset.getETag()))
         {
-            System.out.println("SECURITY ALERT: Path traversal blocked: " + requestedPath);
-            return new Response.Builder(Status.FORBIDDEN_403)
-                    .body("403 Forbidden")
+            return new Response.Builder(Status.NOT_MODIFIED_304)
+                    .header(Header.ETag, asset.getETag())
+                    .header(Header.Last_Modified, asset.getLastModified())
                     .build();
         }
 
-        File targetFile = targetPath.toFile();
-        if (!targetFile.exists() || targetFile.isDirectory()) 
+        Response.Builder builder = new Response.Builder(Status.OK_200)
+                .header(Header.Content_Type, asset.getMimeType())
+                .header(Header.ETag, asset.getETag())
+                .header(Header.Last_Modified, asset.getLastModified());
+
+        // Add download header for non-displayable types
+        if (asset.getMimeType().equals("application/octet-stream"))
         {
-            return new Response.Builder(Status.NOT_FOUND_404)
-                    .body("404 Not Found")
-                    .build();
+            builder.header(Header.Content_Disposition,
+                    "attachment; filename=\"" + asset.getPath().getFileName() + "\"");
         }
 
-        return serveFile(targetFile);
+        // HEAD is answered from the index alone; the encoder sends the length but never reads the file
+        if (request.getVerb() == HttpVerb.HEAD || asset.getSize() > MAX_BUFFERED_FILE_SIZE)
+        {
+            return builder.body(new FileBody(asset)).build();
+        }
+        return serveFile(asset, builder);
     }
 
-    private boolean isPathSecure(Path path) 
+    // The path with dot segments resolved, or null if it leaves the static directory
+    private static String securePath(String requestedPath)
     {
-        return path.startsWith(STATIC_FILES_DIRECTORY);
+        Path target = STATIC_FILES_DIRECTORY.resolve(requestedPath.substring(1)).normalize();
+        if (!target.startsWith(STATIC_FILES_DIRECTORY)) return null;
+
+        StringBuilder path = new StringBuilder();
+        for (Path segment : STATIC_FILES_DIRECTORY.relativize(target)) path.append('/').append(segment);
+        return path.length() == 0 ? "/" : path.toString();
     }
 
-    private Response serveFile(File file) 
+    private Response serveFile(StaticAssetIndex.Asset asset, Response.Builder builder)
     {
-        try 
+        try
         {
-            byte[] fileContent = Files.readAllBytes(file.toPath());
-            String mimeType = determineMimeType(file.getName());
-
-            if (mimeType == null) 
-            {
-                return new Response.Builder(Status.UNSUPPORTED_MEDIA_TYPE_415)
-                        .body("415 Unsupported Media Type")
-                        .build();
-            }
-
-            Response.Builder builder = new Response.Builder(Status.OK_200)
-                    .header(Header.Content_Type, mimeType);
-
-            // Add download header for non-displayable types
-            if (mimeType.equals("application/octet-stream")) 
-            {
-                builder.header(Header.Content_Disposition,
-                        "attachment; filename=\"" + file.getName() + "\"");
-            }
-
-            builder.body(fileContent);
-            System.out.println("Serving file: " + file.getAbsolutePath());
-            return builder.build();
-        } 
-        catch (IOException e) 
+            byte[] fileContent = Files.readAllBytes(asset.getPath());
+            System.out.println("Serving file: " + asset.getPath());
+            return builder.body(fileContent).build();
+        }
+        catch (NoSuchFileException e)
+        {
+            // Deleted since the index last saw it
+            return notFound();
+        }
+        catch (IOException e)
         {
             System.out.println("Error reading file: " + e.getMessage());
             return new Response.Builder(Status.INTERNAL_SERVER_ERROR_500)
@@ -94,18 +129,70 @@ public class StaticFileHandler implements RouteHandler
         }
     }
 
-    private String determineMimeType(String filename) 
+    // Whether an If-None-Match value (a list of ETags, or *) covers the current ETag
+    private static boolean matches(String ifNoneMatch, String etag)
     {
-        filename = filename.toLowerCase();
-        if (filename.endsWith(".html") || filename.endsWith(".htm")) return "text/html; charset=utf-8";
-        if (filename.endsWith(".txt")) return "text/plain; charset=utf-8";
-        if (filename.endsWith(".css")) return "text/css; charset=utf-8";
-        if (filename.endsWith(".js")) return "application/javascript";
-        if (filename.endsWith(".png")) return "image/png";
-        if (filename.endsWith(".jpg") || filename.endsWith(".jpeg")) return "image/jpeg";
-        if (filename.endsWith(".gif")) return "image/gif";
-
-        // Unknown file type
-        return "application/octet-stream";
+        if (ifNoneMatch == null) return false;
+        for (String candidate : ifNoneMatch.split(","))
+        {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) tag = tag.substring(2);
+            if (tag.equals("*") || tag.equals(etag)) return true;
+        }
+        return false;
+    }
+
+    private static Response notFound()
+    {
+        return new Response.Builder(Status.NOT_FOUND_404)
+                .body("404 Not Found")
+                .build();
+    }
+
+    /**
+     * File streamed from disk when the response is written, using the indexed size
+     * If the file changed size since it was indexed, the connection is cut short
+     * rather than sending a body that disagrees with Content-Length.
+     */
+    private static final class FileBody implements StreamingBody
+    {
+        private final StaticAssetIndex.Asset asset;
+
+        FileBody(StaticAssetIndex.Asset asset)
+        {
+            this.asset = asset;
+        }
+
+        @Override
+        public long length()
+        {
+            return asset.getSize();
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException
+        {
+            long remaining = asset.getSize();
+            try (FileChannel file = FileChannel.open(asset.getPath(), StandardOpenOption.READ))
+            {
+                if (file.size() != remaining) throw new IOException("File changed while serving: " + asset.getPath());
+                WritableByteChannel target = Channels.newChannel(out);
+                long position = 0;
+                while (remaining > 0)
+                {
+                    long sent = file.transferTo(position, remaining, target);
+                    if (sent <= 0) throw new IOException("File truncated while serving: " + asset.getPath());
+                    position += sent;
+                    remaining -= sent;
+                }
+            }
+            System.out.println("Serving file: " + asset.getPath());
+        }
+
+        @Override
+        public void discard()
+        {
+            // Nothing is opened before writeTo()
+        }
     }
 }
@@ -0,0 +1,145 @@
+package com.http.server;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Gradient-style adaptive concurrency limit, after Netflix concurrency-limits
+ * Tracks a fast (recent) and slow (long-term) average of request latency.
+ * When recent latency rises above the long-term baseline, requests are
+ * queueing somewhere and the limit shrinks in proportion; when latency is
+ * at baseline the limit grows by roughly sqrt(limit) per window.
+ * Requests above the current limit are rejected by the caller with 503.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final int WINDOW_SAMPLES = 100;
+    private static final long WINDOW_NANOS = 100_000_000L; // 100 ms
+    private static final double SMOOTHING = 0.2;
+    private static final double LONG_RTT_DECAY = 0.01;
+
+    private final int minLimit;
+    private final int maxLimit;
+
+    private volatile int limit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    // Samples collected for the current window
+    private final LongAdder windowRttSum = new LongAdder();
+    private final LongAdder windowCount = new LongAdder();
+    private final AtomicInteger windowMaxInFlight = new AtomicInteger();
+    private volatile long windowStart = System.nanoTime();
+    private final ReentrantLock updateLock = new ReentrantLock();
+
+    // Guarded by updateLock
+    private double estimatedLimit;
+    private double longRtt;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || initialLimit < minLimit || maxLimit < initialLimit) {
+            throw new IllegalArgumentException("Require 1 <= min <= initial <= max for concurrency limits");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+        this.estimatedLimit = initialLimit;
+    }
+
+    /**
+     * Claims a slot if the current limit allows it.
+     * @return Start timestamp to pass to release(), or -1 if the request must be rejected
+     */
+    public long tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                rejected.increment();
+                return -1;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                accepted.increment();
+                windowMaxInFlight.accumulateAndGet(current + 1, Math::max);
+                long start = System.nanoTime();
+                return start == -1 ? 0 : start;
+            }
+        }
+    }
+
+    /**
+     * Frees a slot taken by tryAcquire() without recording its latency
+     * (rejected, failed or dropped requests).
+     * @param start Value returned by tryAcquire()
+     */
+    public void release(long start) {
+        if (start == -1) return;
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Frees a slot taken by tryAcquire() and records its latency.
+     * @param start Value returned by tryAcquire()
+     * @param completedAt System.nanoTime() when the response was ready; time spent
+     *                    writing it afterwards is the client's, not the server's
+     */
+    public void release(long start, long completedAt) {
+        if (start == -1) return;
+        inFlight.decrementAndGet();
+
+        windowRttSum.add(Math.max(0, completedAt - start));
+        windowCount.increment();
+
+        long now = System.nanoTime();
+        if (windowCount.sum() >= WINDOW_SAMPLES || now - windowStart >= WINDOW_NANOS) {
+            if (updateLock.tryLock()) {
+                try {
+                    closeWindow(now);
+                } finally {
+                    updateLock.unlock();
+                }
+            }
+        }
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public String stats() {
+        return "limit=" + limit + " inFlight=" + inFlight.get() + " accepted=" + accepted.sum()
+                + " rejected=" + rejected.sum() + " longRttMs=" + String.format("%.2f", longRtt / 1_000_000.0);
+    }
+
+    // Folds the window's samples into the limit estimate
+    private void closeWindow(long now) {
+        long count = windowCount.sumThenReset();
+        long rttSum = windowRttSum.sumThenReset();
+        int maxInFlight = windowMaxInFlight.getAndSet(inFlight.get());
+        windowStart = now;
+        if (count == 0) return;
+
+        double shortRtt = (double) rttSum / count;
+        longRtt = (longRtt == 0) ? shortRtt : longRtt * (1 - LONG_RTT_DECAY) + shortRtt * LONG_RTT_DECAY;
+
+        // Don't grow the limit while the server is not even using half of it
+        if (maxInFlight < estimatedLimit / 2) return;
+
+        // Let the baseline drift down quickly when latency recovers
+        if (longRtt / shortRtt > 2) longRtt *= 0.95;
+
+        double gradient = Math.max(0.5, Math.min(1.0, longRtt / shortRtt));
+        double queueAllowance = Math.sqrt(estimatedLimit);
+        double target = estimatedLimit * gradient + queueAllowance;
+
+        estimatedLimit = estimatedLimit * (1 - SMOOTHING) + target * SMOOTHING;
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, estimatedLimit));
+        limit = (int) estimatedLimit;
+    }
+}
@@ -1,97 +1,870 @@
 package com.http.server;
 
+import com.http.exception.Http2Exception;
+import com.http.http2.Http2Connection;
+import com.http.http2.Http2Stream;
 import com.http.model.common.Header;
+import com.http.model.common.Headers;
+import com.http.model.request.HttpVerb;
 import com.http.model.request.Request;
 import com.http.model.response.Response;
+import com.http.model.response.Status;
+import com.http.protocol.ChannelInput;
+import com.http.protocol.RequestHead;
+import com.http.protocol.RequestParser;
+import com.http.protocol.ResponseEncoder;
+import com.http.routing.RateLimit;
 import com.http.routing.RouteManager;
+import com.http.routing.SchedulingClass;
+import com.http.sse.EventChannel;
+import com.http.sse.EventStreamConnection;
+import com.http.server.ConnectionTimeouts.Kind;
+import com.http.trace.HttpConnectionEvent;
+import com.http.trace.RequestTrace;
+import com.http.tls.TlsChannel;
+import com.http.tls.TlsConfig;
+import com.http.websocket.WebSocketConnection;
+import com.http.websocket.WebSocketHandler;
+import com.http.websocket.WebSocketHandshake;
 
-import java.io.*;
-import java.net.Socket;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * Handles an individual client connection in its own thread.
- * Reads the request, routes it, and writes the response.
+ * Handles one client connection, serving its requests in turn (keep-alive).
+ * Reads the request head, routes it, and writes the response.
+ * Routes tagged with a scheduling class have their body, handler and
+ * response processed on that class's executor instead of this worker.
+ * When the route answers asynchronously the worker thread is released and
+ * the connection is resumed on the worker pool once the response is ready.
+ * Until a complete request head has arrived the connection is parked on the
+ * IdleConnectionPoller, so idle and slow clients don't hold a worker; every
+ * phase runs under a deadline from ConnectionTimeouts.
+ * Requests over their client's rate limit are answered with 429 right after
+ * header parsing, before any WebSocket, SSE or h2c upgrade. Every other
+ * request takes a permit from the adaptive concurrency limiter once its body
+ * is read and returns it after its response is written; the latency sample
+ * ends when the response is ready, so slow clients don't lower the limit.
+ * HTTPS connections read and write through a TlsChannel over the same socket.
+ * Cleartext connections may switch to HTTP/2 (h2c), by prior knowledge or
+ * with "Upgrade: h2c"; from then on each stream is dispatched like a request
+ * of its own and the connection is parked between bursts of frames.
+ * A GET carrying "Upgrade: websocket" for a registered endpoint switches the
+ * connection to WebSocket frames, parked the same way between messages.
+ * A GET for a Server-Sent Events path subscribes the connection to that
+ * EventChannel, whose writer thread sends the events from then on.
+ * Each request's phases are timed into a RequestTrace, which emits a JFR
+ * event for slow requests while a recording is running.
  */
 public class ConnectionHandler implements Runnable {
 
-    private final Socket clientSocket;
+    private static final int MAX_REQUESTS_PER_CONNECTION = 1000;
+    private static final byte[] SWITCHING_TO_H2C = ("HTTP/1.1 101 Switching Protocols\r\n"
+            + "Connection: Upgrade\r\nUpgrade: h2c\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+
+    private final SocketChannel clientChannel;
+    private final ByteChannel io;
+    private final GatheringByteChannel output;
+    private final boolean cleartext;
+
+    // The TLS layer over clientChannel on HTTPS connections, null otherwise
+    private final TlsChannel tls;
+    private final HttpService service;
     private final RouteManager router;
+    private final Executor workers;
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final ConnectionTimeouts timeouts;
+    private final IdleConnectionPoller poller;
+    private final RequestParser parser = new RequestParser();
+
+    // Connection state, handed between threads only through executors
+    private ChannelInput reader;
+    private TimerWheel.Timeout deadline;
+    private Kind armedKind;
+    private int requestsServed;
+
+    // Set once the connection has switched to HTTP/2
+    private volatile Http2Connection http2;
+
+    // Whether HTTP/2 stream 1 is an upgraded HTTP/1 request, already charged against the rate limits
+    private boolean upgradedToHttp2;
+
+    // Set once the connection has switched to WebSocket
+    private volatile WebSocketConnection webSocket;
+
+    // Set once the connection has become a Server-Sent Events subscriber
+    private volatile EventStreamConnection eventStream;
+
+    // Set while the connection waits on the poller, i.e. no thread owns it
+    private final AtomicBoolean parked = new AtomicBoolean();
+
+    // Rate limit key: the peer's IP address, or null on a Unix domain socket
+    private final InetAddress clientAddress;
+
+    // Start timestamp of the limiter permit held by the current request, -1 when none
+    private long permit = -1;
+
+    // When the current request's response was ready; the end of its limiter latency sample
+    private long permitCompletedAt;
+
+    // Whether the current HTTP/1 request's client understands chunked transfer coding
+    private boolean chunkedAllowed = true;
 
-    public ConnectionHandler(Socket socket, RouteManager router) {
-        this.clientSocket = socket;
-        this.router = router;
+    // Phase timing of the current HTTP/1 request, reused across keep-alive requests
+    private final RequestTrace trace = new RequestTrace();
+
+    // Open from accept until the first worker picks the connection up; null once ended or when not recorded
+    private HttpConnectionEvent acceptEvent = HttpConnectionEvent.accepted();
+
+    public ConnectionHandler(SocketChannel channel, HttpService service) {
+        this(channel, service, null);
+    }
+
+    /**
+     * @param tls TLS settings for an HTTPS listener, or null for plaintext
+     */
+    public ConnectionHandler(SocketChannel channel, HttpService service, TlsConfig tls) {
+        this.clientChannel = channel;
+        this.clientAddress = inetAddressOf(channel);
+        this.cleartext = tls == null;
+        if (tls == null) {
+            this.tls = null;
+            this.io = channel;
+            this.output = channel;
+        } else {
+            this.tls = new TlsChannel(channel, tls.createEngine());
+            this.io = this.tls;
+            this.output = this.tls;
+        }
+        this.service = service;
+        this.router = service.router();
+        this.workers = service.workers();
+        this.limiter = service.getConcurrencyLimiter();
+        this.timeouts = service.getConnectionTimeouts();
+        this.poller = service.idlePoller();
+        trace.queued();
     }
 
     @Override
     public void run() {
-        try (InputStream input = clientSocket.getInputStream();
-             OutputStream output = clientSocket.getOutputStream();
-             BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+        boolean handedOff = false;
 
-            System.out.println("🆕 New client connected: " + clientSocket.getRemoteSocketAddress());
+        try {
+            if (acceptEvent != null) {
+                acceptEvent.pickedUp(peer(clientChannel), !cleartext);
+                acceptEvent = null;
+            }
+            if (armedKind == Kind.IDLE) disarm(); // resumed by the poller
 
-            // Read request line
-            String requestLine = reader.readLine();
-            if (requestLine == null || requestLine.isEmpty()) {
-                clientSocket.close();
+            if (http2 != null) {
+                handedOff = serveHttp2();
                 return;
             }
+            if (webSocket != null) {
+                handedOff = serveWebSocket();
+                return;
+            }
+            if (eventStream != null) {
+                handedOff = serveEventStream();
+                return;
+            }
+
+            while (true) {
+                if (reader == null) reader = new ChannelInput(io);
 
-            // Read headers
-            Map<String, String> rawHeaders = new HashMap<>();
-            String headerLine;
-            while ((headerLine = reader.readLine()) != null && !headerLine.isEmpty()) {
-                String[] parts = headerLine.split(": ", 2);
-                if (parts.length == 2) {
-                    rawHeaders.put(parts[0], parts[1]);
+                // The TLS handshake runs under the deadline of the request head it precedes
+                if (tls != null && !tls.isHandshakeComplete() && armedKind != Kind.HEADER_READ) arm(Kind.HEADER_READ);
+
+                // Only take up a worker once the whole request head has arrived
+                if (!reader.hasBufferedHead()) {
+                    if (readAvailable() < 0) return;
+                    if (!reader.hasBufferedHead()) {
+                        park();
+                        handedOff = true;
+                        return;
+                    }
+                }
+
+                trace.started();
+                if (requestsServed == 0) {
+                    System.out.println("🆕 New client connected: " + peer(clientChannel));
+
+                    // h2c with prior knowledge: the client opens with the HTTP/2 connection preface
+                    if (cleartext && reader.startsWith(Http2Connection.PREFACE_START)) {
+                        handedOff = startHttp2(null, null);
+                        return;
+                    }
+                }
+
+                // Parse request line and headers; the body is read by whoever processes the request
+                RequestHead head = readHead();
+                if (head == null) return;
+                chunkedAllowed = "HTTP/1.1".equals(head.getHttpVersion());
+                trace.request(head.getVerb().name(), head.getPath(), head.getHttpVersion());
+
+                // Over-limit clients are turned away before their body is read or the connection is upgraded
+                Response limited = checkRateLimits(head.getVerb(), head.getPath(), head.getHeaders());
+                if (limited != null) {
+                    respond(limited, false);
+                    return;
+                }
+
+                if (!service.isDraining() && WebSocketHandshake.isUpgradeRequest(head.getVerb(), head.getHeaders())) {
+                    WebSocketHandler endpoint = router.webSocketHandlerFor(head.getPath());
+                    if (endpoint != null) {
+                        handedOff = upgradeToWebSocket(head, endpoint);
+                        return;
+                    }
+                }
+
+                if (head.getVerb() == HttpVerb.GET && !service.isDraining()) {
+                    EventChannel events = router.eventChannelFor(head.getPath());
+                    if (events != null) {
+                        handedOff = startEventStream(head, events);
+                        return;
+                    }
+                }
+
+                if (isHttp2Upgrade(head)) {
+                    handedOff = upgradeToHttp2(head);
+                    return;
+                }
+
+                SchedulingClass schedulingClass = router.schedulingClassFor(head.getVerb(), head.getPath());
+                if (schedulingClass != null) {
+                    try {
+                        schedulingClass.execute(() -> {
+                            if (process(head)) resubmit();
+                        });
+                        handedOff = true;
+                    } catch (RejectedExecutionException e) {
+                        System.out.println("🚧 Scheduling class '" + schedulingClass.getName() + "' saturated, rejecting "
+                                + head.getVerb() + " " + head.getPath());
+                        respond(unavailable(), false);
+                    }
+                    return;
+                }
+
+                if (!process(head)) {
+                    handedOff = true;
+                    return;
                 }
             }
 
-            // Parse request
-            Request request = new com.http.protocol.RequestParser()
-                    .parse(requestLine, rawHeaders, reader);
+        } catch (Exception e) {
+            System.out.println("⚠️ Error handling client: " + e.getMessage());
+        } finally {
+            if (!handedOff) {
+                disarm();
+                releasePermit(false);
+                close();
+            }
+        }
+    }
+
+    SocketChannel channel() {
+        return clientChannel;
+    }
+
+    // Gives up on a connection the server could not resume
+    void abandon() {
+        close();
+    }
+
+    // Called just before the connection is handed to the worker pool, so its wait there is timed
+    void queued() {
+        trace.queued();
+    }
+
+    // Readiness the poller waits for: writability while TLS handshake bytes are stuck, else input
+    int interestOps() {
+        return tls != null && tls.hasPendingOutput() ? SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+    }
+
+    // Whether decrypted TLS input is waiting, which the socket will never signal as readable
+    boolean hasBufferedInput() {
+        return tls != null && tls.hasBufferedInput();
+    }
+
+    // Claims a parked connection; only the caller that gets true may resume or close it
+    boolean unpark() {
+        return parked.compareAndSet(true, false);
+    }
+
+    // Closes the connection if it is parked between requests (used when draining)
+    void closeIfIdle() {
+        WebSocketConnection socket = webSocket;
+        if (socket != null) {
+            // Start the closing handshake; the connection closes when the client answers or the deadline passes
+            socket.goAway();
+            return;
+        }
+        Http2Connection connection = http2;
+        if (connection != null) {
+            // Open streams are answered first; the connection closes once the last one is done
+            connection.goAway();
+            if (!connection.isIdle()) return;
+        }
+        if (unpark()) close();
+    }
+
+    // Closes the channel under whichever thread owns the connection, which then cleans up
+    void forceClose() {
+        if (unpark()) {
+            close();
+            return;
+        }
+        try {
+            clientChannel.close();
+        } catch (IOException ignored) {}
+        service.connectionClosed(this);
+    }
+
+    // Reads the request line and headers under the header deadline
+    private RequestHead readHead() throws IOException {
+        if (armedKind != Kind.HEADER_READ) arm(Kind.HEADER_READ);
+        String requestLine = reader.readLine();
+        // Tolerate blank lines between requests
+        while (requestLine != null && requestLine.isEmpty()) {
+            requestLine = reader.readLine();
+        }
+        if (requestLine == null) return null;
+
+        RequestHead head = parser.parseHead(requestLine, reader);
+        disarm();
+        return head;
+    }
 
-            // Handle connection headers safely
-            Map<Header, String> mutableHeaders = new HashMap<>(request.getHeaders());
-            mutableHeaders.put(Header.Connection, "keep-alive");
+    /**
+     * Reads the body, routes the request and writes (or schedules) the response
+     * @return true if the connection is ready for its next request on this thread;
+     *         otherwise it has been closed or handed to an async continuation
+     */
+    private boolean process(RequestHead head) {
+        boolean detached = false;
+        boolean keepAlive = false;
+
+        try {
+            arm(Kind.BODY_READ);
+            Request request = parser.readBody(head, reader);
+            disarm();
+            trace.read();
+
+            boolean reusable = isReusable(head);
+            if (!reusable) releaseReader();
+            boolean headOnly = head.getVerb() == HttpVerb.HEAD;
+
+            // The permit covers routing and the handler only, so slow uploads and downloads don't skew its samples
+            permit = limiter.tryAcquire();
+            if (permit == -1) {
+                System.out.println("🚦 Concurrency limit " + limiter.getLimit() + " reached, rejecting "
+                        + head.getVerb() + " " + head.getPath());
+                respond(unavailable(), false);
+                return false;
+            }
 
             // Route the request
-            Response response = router.route(request);
+            CompletableFuture<Response> pending = router.routeAsync(request, trace);
 
-            // Send response
-            writeResponse(output, response);
+            if (pending.isDone()) {
+                // Send response
+                permitCompletedAt = System.nanoTime();
+                keepAlive = respond(pending.join(), reusable, headOnly);
+            } else {
+                // Resume on the worker pool once the async handler completes
+                detached = true;
+                pending.thenApply(this::completed)
+                        .thenAcceptAsync(response -> resume(response, reusable, headOnly), workers)
+                        .exceptionally(error -> {
+                            System.out.println("⚠️ Could not resume client: " + error.getMessage());
+                            releasePermit(false);
+                            close();
+                            return null;
+                        });
+            }
 
         } catch (Exception e) {
             System.out.println("⚠️ Error handling client: " + e.getMessage());
+        } finally {
+            if (!detached && !keepAlive) {
+                disarm();
+                releasePermit(false);
+                close();
+            }
+        }
+        return keepAlive;
+    }
+
+    // Stamps the end of the current request's limiter sample as the async handler completes
+    private Response completed(Response response) {
+        permitCompletedAt = System.nanoTime();
+        return response;
+    }
+
+    // Writes a response that completed after the worker thread was released
+    private void resume(Response response, boolean reusable, boolean headOnly) {
+        boolean keepAlive = false;
+        try {
+            keepAlive = respond(response, reusable, headOnly);
+        } catch (IOException e) {
+            System.out.println("⚠️ Error writing async response: " + e.getMessage());
+        } finally {
+            if (!keepAlive) close();
+        }
+
+        // Already on a worker: carry on with the next request
+        if (keepAlive) run();
+    }
+
+    private boolean respond(Response response, boolean reusable) throws IOException {
+        return respond(response, reusable, false);
+    }
+
+    /**
+     * Writes the response under the write deadline and releases the request's permit
+     * @param headOnly Whether this answers HEAD: Content-Length is kept, the body is not sent
+     * @return true if the connection stays open for another request
+     */
+    private boolean respond(Response response, boolean reusable, boolean headOnly) throws IOException {
+        boolean keepAlive = reusable && !service.isDraining()
+                && !"close".equalsIgnoreCase(response.getHeaders().get(Header.Connection));
+        boolean written = false;
+
+        arm(Kind.WRITE);
+        try {
+            keepAlive = ResponseEncoder.forCurrentThread().write(output, response, keepAlive, headOnly, chunkedAllowed);
+            written = true;
+            trace.flushed(response.getStatusCode());
+        } finally {
+            disarm();
+            releasePermit(written);
+        }
+
+        requestsServed++;
+        return keepAlive;
+    }
+
+    // Whether the client allows another request on this connection and the body was fully consumed
+    private boolean isReusable(RequestHead head) {
+        if (requestsServed + 1 >= MAX_REQUESTS_PER_CONNECTION || service.isDraining()) return false;
+
+        String connection = head.getHeaders().get(Header.Connection);
+        boolean http11 = "HTTP/1.1".equals(head.getHttpVersion());
+        if (connection != null && hasToken(connection, "close")) return false;
+        if (!http11 && (connection == null || !hasToken(connection, "keep-alive"))) return false;
+
+        // Unread or chunked bodies would be parsed as the next request
+        if (head.getHeaders().contains(Header.Transfer_Encoding)) return false;
+        HttpVerb verb = head.getVerb();
+        boolean bodyRead = verb == HttpVerb.POST || verb == HttpVerb.PUT || verb == HttpVerb.PATCH;
+        String length = head.getHeaders().get(Header.Content_Length);
+        return bodyRead || length == null || "0".equals(length.trim());
+    }
+
+    // "Upgrade: h2c" on a cleartext HTTP/1.1 request that also carries HTTP2-Settings (RFC 7540 section 3.2)
+    private boolean isHttp2Upgrade(RequestHead head) {
+        if (!cleartext || service.isDraining() || !"HTTP/1.1".equals(head.getHttpVersion())) return false;
+
+        Headers headers = head.getHeaders();
+        String upgrade = headers.get(Header.Upgrade);
+        String connection = headers.get(Header.Connection);
+        return upgrade != null && hasToken(upgrade, "h2c")
+                && connection != null && hasToken(connection, "upgrade")
+                && headers.contains("HTTP2-Settings");
+    }
+
+    // Reads the body, answers 101 and carries on with the request as HTTP/2 stream 1
+    private boolean upgradeToHttp2(RequestHead head) throws IOException {
+        arm(Kind.BODY_READ);
+        Request request = parser.readBody(head, reader);
+        disarm();
+
+        arm(Kind.WRITE);
+        ByteBuffer switching = ByteBuffer.wrap(SWITCHING_TO_H2C);
+        while (switching.hasRemaining()) {
+            output.write(switching);
+        }
+        disarm();
+
+        return startHttp2(request, head.getHeaders().get("HTTP2-Settings"));
+    }
+
+    /**
+     * Switches the connection to HTTP/2, handing over whatever the HTTP/1 reader had buffered
+     * @param upgraded Request to answer as stream 1, or null with prior knowledge
+     * @return true if the connection was parked, false if it is finished
+     */
+    private boolean startHttp2(Request upgraded, String http2Settings) throws IOException {
+        ByteBuffer buffered = drainReader();
+        clientChannel.configureBlocking(false);
+
+        Http2Connection connection = new Http2Connection(clientChannel, this::dispatchHttp2, this::onHttp2Idle,
+                timeouts.getLimit(Kind.WRITE));
+        http2 = connection;
+        upgradedToHttp2 = upgraded != null;
+        connection.start(buffered);
+        if (upgraded != null) connection.upgrade(upgraded, http2Settings);
+
+        System.out.println("🔀 Switched " + peer(clientChannel) + " to HTTP/2");
+        return serveHttp2();
+    }
+
+    /**
+     * Handles the frames that have arrived, then parks the connection until more do
+     * @return true if parked; false if the connection is finished and should be closed
+     */
+    private boolean serveHttp2() throws IOException {
+        Http2Connection connection = http2;
+        if (!connection.onReadable()) return false;
+        if (service.isDraining()) {
+            connection.goAway();
+            if (connection.isIdle()) return false;
+        }
+
+        // Only an idle connection runs the idle deadline; open streams have their own write timeout
+        boolean idle = connection.isIdle();
+        if (!idle) {
+            disarm();
+        } else if (armedKind != Kind.IDLE) {
+            arm(Kind.IDLE);
+        }
+        parked.set(true);
+        poller.park(this);
+
+        // The last stream may have finished before we parked, when onHttp2Idle could not claim the connection
+        if (!idle && connection.isIdle() && unpark()) resubmit();
+        return true;
+    }
+
+    /**
+     * Answers the opening handshake and hands the connection to the endpoint's WebSocketHandler
+     * @return true if the connection was parked, false if it is finished
+     */
+    private boolean upgradeToWebSocket(RequestHead head, WebSocketHandler endpoint) throws IOException {
+        arm(Kind.BODY_READ);
+        Request request = parser.readBody(head, reader);
+        disarm();
+
+        Response handshake = WebSocketHandshake.handshake(head.getHeaders());
+        if (handshake.getStatus() != Status.SWITCHING_PROTOCOLS_101) {
+            respond(handshake, false);
+            return false;
+        }
+
+        arm(Kind.WRITE);
+        ResponseEncoder.forCurrentThread().write(output, handshake, true);
+        disarm();
+        requestsServed++;
+
+        ByteBuffer buffered = drainReader();
+        clientChannel.configureBlocking(false);
+
+        WebSocketConnection connection = new WebSocketConnection(io, output, request, endpoint,
+                timeouts.getLimit(Kind.WRITE));
+        webSocket = connection;
+        System.out.println("🔌 WebSocket opened: " + head.getPath() + " from " + peer(clientChannel));
+        connection.start(buffered);
+        return serveWebSocket();
+    }
+
+    /**
+     * Handles the frames that have arrived, then parks the connection until more do
+     * @return true if parked; false if the connection is finished and should be closed
+     */
+    private boolean serveWebSocket() throws IOException {
+        disarm();
+        if (!webSocket.onReadable()) return false;
+
+        arm(Kind.WEBSOCKET_IDLE);
+        parked.set(true);
+        poller.park(this);
+        return true;
+    }
+
+    /**
+     * Subscribes the connection to an event stream; the channel's writer thread sends the response from here on
+     * Anything the client pipelined behind the GET is discarded.
+     * @return true if the connection was parked, false if it is finished
+     */
+    private boolean startEventStream(RequestHead head, EventChannel events) throws IOException {
+        requestsServed++;
+        releaseReader();
+        clientChannel.configureBlocking(false);
+
+        EventStreamConnection subscriber = new EventStreamConnection(io, output, events, this::forceClose);
+        eventStream = subscriber;
+        System.out.println("📡 Event stream opened: " + head.getPath() + " from " + peer(clientChannel));
+        subscriber.start(head.getHeaders().get(Header.Last_Event_ID));
+        return serveEventStream();
+    }
+
+    /**
+     * Waits for the client to close the stream; heartbeats from the channel catch clients that vanish silently
+     * @return true if parked; false if the client has closed the connection
+     */
+    private boolean serveEventStream() throws IOException {
+        disarm();
+        if (!eventStream.onReadable()) return false;
+
+        parked.set(true);
+        poller.park(this);
+        return true;
+    }
+
+    // Last open stream finished: a parked connection is resumed to arm its idle deadline (or close when draining)
+    private void onHttp2Idle() {
+        if (unpark()) resubmit();
+    }
+
+    // Runs one stream like an HTTP/1 request: limiter permit, then its scheduling class or the worker pool
+    private void dispatchHttp2(Http2Stream stream, Request request) {
+        RequestTrace streamTrace = new RequestTrace();
+        streamTrace.queued();
+        streamTrace.request(request.getVerb().name(), request.getPath(), request.getHttpVersion());
+
+        boolean charged = upgradedToHttp2 && stream.getId() == 1;
+        Response limited = charged ? null : checkRateLimits(request.getVerb(), request.getPath(), request.getHeaders());
+        if (limited != null) {
+            answerHttp2(stream, limited, -1, 0, streamTrace);
+            return;
+        }
+
+        Runnable task = () -> {
+            // Frames were decoded by the connection, so reading takes no time of its own
+            streamTrace.started();
+            streamTrace.read();
+
+            // As for HTTP/1, the permit covers routing and the handler, not the wait for a worker
+            long streamPermit = limiter.tryAcquire();
+            if (streamPermit == -1) {
+                // REFUSED_STREAM tells the client the request was not processed and may be retried
+                System.out.println("🚦 Concurrency limit " + limiter.getLimit() + " reached, refusing HTTP/2 "
+                        + request.getVerb() + " " + request.getPath());
+                stream.reset(Http2Exception.REFUSED_STREAM);
+                return;
+            }
+
             try {
-                if (!clientSocket.isClosed()) clientSocket.close();
-            } catch (IOException ignored) {}
+                CompletableFuture<Response> pending = router.routeAsync(request, streamTrace);
+                if (pending.isDone()) {
+                    answerHttp2(stream, pending.join(), streamPermit, System.nanoTime(), streamTrace);
+                } else {
+                    pending.thenAccept(response -> {
+                                long completedAt = System.nanoTime();
+                                workers.execute(() -> answerHttp2(stream, response, streamPermit, completedAt, streamTrace));
+                            })
+                            .exceptionally(error -> {
+                                System.out.println("⚠️ Could not resume HTTP/2 stream: " + error.getMessage());
+                                limiter.release(streamPermit);
+                                stream.reset(Http2Exception.INTERNAL_ERROR);
+                                return null;
+                            });
+                }
+            } catch (RuntimeException e) {
+                System.out.println("⚠️ Error handling HTTP/2 stream: " + e.getMessage());
+                limiter.release(streamPermit);
+                stream.reset(Http2Exception.INTERNAL_ERROR);
+            }
+        };
+
+        SchedulingClass schedulingClass = router.schedulingClassFor(request.getVerb(), request.getPath());
+        try {
+            if (schedulingClass != null) {
+                schedulingClass.execute(task);
+            } else {
+                workers.execute(task);
+            }
+        } catch (RejectedExecutionException e) {
+            stream.reset(Http2Exception.REFUSED_STREAM);
+        }
+    }
+
+    /**
+     * Writes a stream's response, then releases its permit
+     * @param completedAt When the response was ready, the end of the permit's latency sample
+     */
+    private void answerHttp2(Http2Stream stream, Response response, long streamPermit, long completedAt,
+                             RequestTrace streamTrace) {
+        boolean written = false;
+        try {
+            written = stream.respond(response);
+            if (written) streamTrace.flushed(response.getStatusCode());
+        } catch (IOException e) {
+            System.out.println("⚠️ Error writing HTTP/2 response: " + e.getMessage());
+        } finally {
+            if (written) limiter.release(streamPermit, completedAt);
+            else limiter.release(streamPermit);
+        }
+    }
+
+    /**
+     * Takes a token from the client's global and route rate limits
+     * @return 429 with Retry-After if either is exhausted, null if the request may proceed
+     */
+    private Response checkRateLimits(HttpVerb verb, String path, Headers headers) {
+        RateLimit clientLimit = router.getClientRateLimit();
+        RateLimit routeLimit = router.rateLimitFor(verb, path);
+        if (clientLimit == null && routeLimit == null) return null;
+
+        Object client = clientKey(headers);
+        long wait = (clientLimit == null) ? 0 : clientLimit.tryAcquire(client);
+        if (wait == 0 && routeLimit != null) wait = routeLimit.tryAcquire(client);
+        if (wait == 0) return null;
+
+        long retryAfterSeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + TimeUnit.SECONDS.toNanos(1) - 1));
+        return new Response.Builder(Status.TOO_MANY_REQUESTS_429)
+                .header(Header.Retry_After, Long.toString(retryAfterSeconds))
+                .body("429 Too Many Requests")
+                .build();
+    }
+
+    // Unix domain socket peers are the proxy in front of us; the client is its first X-Forwarded-For entry
+    private Object clientKey(Headers headers) {
+        if (clientAddress != null) return clientAddress;
+
+        String forwarded = headers.get(Header.X_Forwarded_For);
+        if (forwarded == null) return "unix";
+        int comma = forwarded.indexOf(',');
+        return (comma < 0 ? forwarded : forwarded.substring(0, comma)).trim();
+    }
+
+    private static InetAddress inetAddressOf(SocketChannel channel) {
+        try {
+            SocketAddress remote = channel.getRemoteAddress();
+            return (remote instanceof InetSocketAddress) ? ((InetSocketAddress) remote).getAddress() : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Client address for logs; Unix domain socket clients are unnamed, so they show the socket they came in on
+    static String peer(SocketChannel channel) throws IOException {
+        SocketAddress remote = channel.getRemoteAddress();
+        if (remote instanceof UnixDomainSocketAddress) return "unix:" + channel.getLocalAddress();
+        return String.valueOf(remote);
+    }
+
+    private static boolean hasToken(String headerValue, String token) {
+        for (String part : headerValue.split(",")) {
+            if (part.trim().equalsIgnoreCase(token)) return true;
+        }
+        return false;
+    }
+
+    // Non-blocking reads until the head is buffered or no data is waiting: bytes read, or -1 at end of stream
+    private int readAvailable() throws IOException {
+        clientChannel.configureBlocking(false);
+        try {
+            // A TLS record may decrypt to less than the whole head while more records sit in its buffer
+            int total = 0;
+            while (!reader.hasBufferedHead()) {
+                int read = reader.readAvailable();
+                if (read < 0) return total > 0 ? total : -1;
+                if (read == 0) break;
+                total += read;
+            }
+            return total;
+        } finally {
+            clientChannel.configureBlocking(true);
         }
     }
 
-    // Writes the response to the client socket
-    private void writeResponse(OutputStream output, Response response) throws IOException {
-        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+    // Hands the connection to the poller until more of its next request arrives
+    private void park() throws IOException {
+        if (reader.available() == 0 && (tls == null || tls.isHandshakeComplete())) {
+            // Nothing buffered: an idle connection doesn't need to hold a read buffer
+            releaseReader();
+            arm(Kind.IDLE);
+        } else if (armedKind != Kind.HEADER_READ) {
+            // Partial head: the header deadline runs from its first byte, across parks
+            arm(Kind.HEADER_READ);
+        }
+        clientChannel.configureBlocking(false);
+        parked.set(true);
+        poller.park(this);
+    }
+
+    private void resubmit() {
+        trace.queued();
+        try {
+            workers.execute(this);
+        } catch (RejectedExecutionException e) {
+            close();
+        }
+    }
 
-        // Status line
-        writer.write(response.getHttpVersion() + " " + response.getStatus().getStatusCode() + " " +
-                response.getStatus().getStatusMessage() + "\r\n");
+    private void arm(Kind kind) {
+        disarm();
+        armedKind = kind;
+        deadline = timeouts.arm(kind, clientChannel, () -> {
+            // A parked connection has no owner to clean up after it
+            if (unpark()) close();
+            poller.wakeup();
+            if (kind != Kind.IDLE) {
+                System.out.println("⏱️ Closing connection: " + kind.name().toLowerCase() + " deadline passed");
+            }
+        });
+    }
 
-        // Headers
-        for (Map.Entry<Header, String> entry : response.getHeaders().entrySet()) {
-            writer.write(entry.getKey().getHeaderValue() + ": " + entry.getValue() + "\r\n");
+    private void disarm() {
+        if (deadline != null) {
+            deadline.cancel();
+            deadline = null;
+            armedKind = null;
         }
-        writer.write("\r\n"); // End of headers
-        writer.flush();
+    }
 
-        // Body
-        byte[] body = response.getBody();
-        if (body != null && body.length > 0) {
-            output.write(body);
-            output.flush();
+    // Only responses that were written feed the limiter's latency samples, timed to when they were ready
+    private void releasePermit(boolean sample) {
+        if (permit == -1) return;
+        if (sample) limiter.release(permit, permitCompletedAt);
+        else limiter.release(permit);
+        permit = -1;
+    }
+
+    // Takes whatever the HTTP/1 reader buffered past the request, for the protocol that replaces it
+    private ByteBuffer drainReader() throws IOException {
+        byte[] buffered = new byte[reader.available()];
+        if (buffered.length > 0) reader.read(buffered, 0, buffered.length);
+        releaseReader();
+        return ByteBuffer.wrap(buffered);
+    }
+
+    private void releaseReader() {
+        if (reader != null) {
+            reader.close();
+            reader = null;
         }
     }
+
+    private Response unavailable() {
+        return new Response.Builder(Status.SERVICE_UNAVAILABLE_503)
+                .body("503 Service Unavailable")
+                .build();
+    }
+
+    private void close() {
+        releaseReader();
+        if (http2 != null) http2.close();
+        if (webSocket != null) webSocket.terminated();
+        if (eventStream != null) eventStream.close();
+        try {
+            if (clientChannel.isOpen()) io.close();
+        } catch (IOException ignored) {}
+        service.connectionClosed(this);
+    }
 }
@@ -0,0 +1,96 @@
+package com.http.server;
+
+import java.nio.channels.Channel;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-phase connection deadlines, all tracked on one TimerWheel
+ * A deadline that passes closes the connection's channel, which also
+ * unblocks a worker stuck reading from or writing to it.
+ * Limits default to the http.timeout.*.ms system properties.
+ */
+public class ConnectionTimeouts {
+
+    public enum Kind {
+        // Waiting for the first byte of a request (new or keep-alive connection)
+        IDLE("http.timeout.idle.ms", 15_000),
+        // From the first byte of a request until its headers are parsed
+        HEADER_READ("http.timeout.header.ms", 10_000),
+        // Reading the request body
+        BODY_READ("http.timeout.body.ms", 30_000),
+        // Writing the response
+        WRITE("http.timeout.write.ms", 30_000),
+        // Waiting for the next frame on an open WebSocket
+        WEBSOCKET_IDLE("http.timeout.websocket.ms", 300_000);
+
+        private final String property;
+        private final long defaultMillis;
+
+        Kind(String property, long defaultMillis) {
+            this.property = property;
+            this.defaultMillis = defaultMillis;
+        }
+    }
+
+    private static final long TICK_MILLIS = 100;
+    private static final int WHEEL_SIZE = 512;
+
+    private final TimerWheel wheel = new TimerWheel("http-connection-timer", TICK_MILLIS, WHEEL_SIZE);
+    private final AtomicLongArray limitsMillis = new AtomicLongArray(Kind.values().length);
+    private final Map<Kind, LongAdder> expired = new EnumMap<>(Kind.class);
+
+    public ConnectionTimeouts() {
+        for (Kind kind : Kind.values()) {
+            limitsMillis.set(kind.ordinal(), Long.getLong(kind.property, kind.defaultMillis));
+            expired.put(kind, new LongAdder());
+        }
+    }
+
+    // Changes a limit for deadlines armed from now on
+    public void setLimit(Kind kind, Duration limit) {
+        if (limit.isNegative() || limit.isZero()) {
+            throw new IllegalArgumentException("Timeout for " + kind + " must be positive");
+        }
+        limitsMillis.set(kind.ordinal(), limit.toMillis());
+    }
+
+    public Duration getLimit(Kind kind) {
+        return Duration.ofMillis(limitsMillis.get(kind.ordinal()));
+    }
+
+    /**
+     * Arms a deadline that closes the channel when it passes
+     * @return Handle to cancel once the phase completes in time
+     */
+    public TimerWheel.Timeout arm(Kind kind, Channel channel, Runnable onExpiry) {
+        return wheel.schedule(() -> {
+            expired.get(kind).increment();
+            try {
+                channel.close();
+            } catch (Exception ignored) {}
+            onExpiry.run();
+        }, limitsMillis.get(kind.ordinal()), TimeUnit.MILLISECONDS);
+    }
+
+    // Number of connections closed because the given deadline passed
+    public long expiredCount(Kind kind) {
+        return expired.get(kind).sum();
+    }
+
+    public String stats() {
+        StringBuilder stats = new StringBuilder("armed=").append(wheel.pending());
+        for (Kind kind : Kind.values()) {
+            stats.append(' ').append(kind.name().toLowerCase()).append("Expired=").append(expired.get(kind).sum());
+        }
+        return stats.toString();
+    }
+
+    public void stop() {
+        wheel.stop();
+    }
+}
@@ -1,27 +1,67 @@
 package com.http.server;
 
 import java.io.IOException;
+import java.net.ConnectException;
 import java.net.InetAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
 import java.net.UnknownHostException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.http.routing.RouteManager;
+import com.http.routing.SchedulingClass;
+import com.http.tls.TlsConfig;
 
 /**
  * Lightweight Multi-threaded HTTP Service
  * - Manages incoming connections with a configurable thread pool
  * - Routes requests using the provided Router instance
+ * - Bounds concurrent requests with a latency-driven adaptive limit
+ * - Keeps connections alive between requests, parking idle ones on a selector
+ *   and closing them when a read, write or idle deadline passes
+ * - Shuts down gracefully: stops accepting, drains in-flight requests, then force-closes
+ * - Optionally serves HTTPS on a second port, terminating TLS in-process
+ * - Optionally serves on a Unix domain socket, alongside or instead of TCP
  */
 public class HttpService {
 
+    private static final int MAX_CONCURRENCY = 1000;
+
     private final int port;
     private final String host;
     private final RouteManager router;
     private final int threadCount;
     private final ExecutorService executor;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final ConnectionTimeouts connectionTimeouts = new ConnectionTimeouts();
+    private volatile IdleConnectionPoller idlePoller;
+    private int tlsPort;
+    private TlsConfig tlsConfig;
+    private UnixSocketConfig unixSocketConfig;
+    private volatile boolean unixSocketBound;
+
+    // Shutdown state
+    private final List<ServerSocketChannel> listeners = new CopyOnWriteArrayList<>();
+    private final Set<ConnectionHandler> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean shutdownStarted = new AtomicBoolean();
+    private final CountDownLatch terminated = new CountDownLatch(1);
+    private volatile boolean draining;
 
     /**
      * Initializes the HTTP Service with required parameters.
@@ -32,6 +72,55 @@ public class HttpService {
         this.router = router;
         this.threadCount = threadCount;
         this.executor = Executors.newFixedThreadPool(threadCount);
+        // Start at the worker count; async and bulkhead routes may hold more requests than workers
+        this.concurrencyLimiter = new AdaptiveConcurrencyLimiter(threadCount, 1, Math.max(threadCount, MAX_CONCURRENCY));
+    }
+
+    /**
+     * Adds an HTTPS listener on the given port, sharing routes and workers with
+     * the plaintext one. Must be called before boot().
+     */
+    public void enableTls(int port, TlsConfig config) {
+        this.tlsPort = port;
+        this.tlsConfig = config;
+    }
+
+    /**
+     * Adds a listener on a Unix domain socket, sharing routes and workers with
+     * the TCP ones (or replacing the plaintext one if the config is exclusive).
+     * Must be called before boot().
+     */
+    public void enableUnixSocket(UnixSocketConfig config) {
+        this.unixSocketConfig = config;
+    }
+
+    public AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    public ConnectionTimeouts getConnectionTimeouts() {
+        return connectionTimeouts;
+    }
+
+    RouteManager router() {
+        return router;
+    }
+
+    ExecutorService workers() {
+        return executor;
+    }
+
+    IdleConnectionPoller idlePoller() {
+        return idlePoller;
+    }
+
+    // Once set, responses carry Connection: close and connections are not reused
+    boolean isDraining() {
+        return draining;
+    }
+
+    void connectionClosed(ConnectionHandler handler) {
+        connections.remove(handler);
     }
 
     /**
@@ -47,21 +136,109 @@ public class HttpService {
         }
 
         int backlogLimit = 50;
+        boolean tcp = unixSocketConfig == null || !unixSocketConfig.isExclusive();
 
-        try (ServerSocket listener = new ServerSocket(port, backlogLimit, inetHost)) {
-            System.out.println("🌍 Service active on " + host + ":" + port);
+        // Blocking channels: same thread-per-connection model, but with gathering writes
+        try {
+            idlePoller = new IdleConnectionPoller(executor);
+            ServerSocketChannel listener = null;
+            if (tcp) {
+                listener = ServerSocketChannel.open();
+                listeners.add(listener);
+                listener.bind(new InetSocketAddress(inetHost, port), backlogLimit);
+                System.out.println("🌍 Service active on " + host + ":" + port);
+            }
             System.out.println("🧵 Thread pool capacity: " + threadCount + " workers");
 
-            listenForClients(listener);
+            if (tlsConfig != null) {
+                startTlsListener(inetHost, backlogLimit);
+            }
+
+            if (unixSocketConfig != null) {
+                ServerSocketChannel unixListener = bindUnixSocket(backlogLimit);
+                if (listener == null) {
+                    listener = unixListener;
+                } else {
+                    startAcceptor(unixListener, null, "unix-acceptor");
+                }
+            }
+
+            listenForClients(listener, null);
         } catch (IOException e) {
-            System.out.println("💥 Server I/O failure: " + e.getMessage());
+            if (!draining) System.out.println("💥 Server I/O failure: " + e.getMessage());
         } finally {
-            executor.shutdown();
+            // Returns once a concurrent shutdown() has finished draining
+            shutdown(Duration.ZERO);
         }
 
         System.out.println("🔴 HTTP Service stopped.");
     }
 
+    /**
+     * Stops the service without dropping requests that are already being handled.
+     * Closes the listeners, closes idle connections, lets in-flight requests finish
+     * (their responses carry Connection: close), and force-closes whatever is
+     * still open when the grace period ends. Later calls wait for the first to finish.
+     * @param gracePeriod How long in-flight requests may take to complete
+     */
+    public void shutdown(Duration gracePeriod) {
+        if (!shutdownStarted.compareAndSet(false, true)) {
+            awaitTerminated();
+            return;
+        }
+
+        long deadline = System.nanoTime() + gracePeriod.toNanos();
+        draining = true;
+
+        try {
+            for (ServerSocketChannel listener : listeners) {
+                closeQuietly(listener);
+            }
+            deleteUnixSocket();
+
+            // Idle connections have nothing in flight and can go right away
+            for (ConnectionHandler connection : connections) {
+                connection.closeIfIdle();
+            }
+            if (idlePoller != null) idlePoller.wakeup();
+
+            if (!connections.isEmpty()) {
+                System.out.println("🟡 Draining " + connections.size() + " connection(s) for up to "
+                        + gracePeriod.toMillis() + " ms");
+            }
+            while (!connections.isEmpty() && System.nanoTime() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(20);
+                // Connections resumed by the poller during the drain finish their request and close
+                for (ConnectionHandler connection : connections) {
+                    connection.closeIfIdle();
+                }
+            }
+
+            if (!connections.isEmpty()) {
+                System.out.println("⛔ Grace period over, force-closing " + connections.size() + " connection(s)");
+                for (ConnectionHandler connection : connections) {
+                    connection.forceClose();
+                }
+            }
+
+            for (SchedulingClass schedulingClass : router.getSchedulingClasses()) {
+                schedulingClass.shutdown();
+            }
+            executor.shutdown();
+            long remaining = Math.max(0, deadline - System.nanoTime());
+            if (!executor.awaitTermination(remaining, TimeUnit.NANOSECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        } finally {
+            if (idlePoller != null) idlePoller.stop();
+            connectionTimeouts.stop();
+            terminated.countDown();
+        }
+    }
+
     /**
      * Resolves host string into a valid InetAddress instance.
      */
@@ -74,16 +251,120 @@ public class HttpService {
         }
     }
 
+    /**
+     * Binds the HTTPS listener and accepts on it from a separate thread.
+     */
+    private void startTlsListener(InetAddress inetHost, int backlogLimit) throws IOException {
+        ServerSocketChannel tlsListener = ServerSocketChannel.open();
+        tlsListener.bind(new InetSocketAddress(inetHost, tlsPort), backlogLimit);
+        listeners.add(tlsListener);
+        System.out.println("🔒 HTTPS active on " + host + ":" + tlsPort + " | ALPN: " + tlsConfig.getApplicationProtocols());
+
+        startAcceptor(tlsListener, tlsConfig, "https-acceptor");
+    }
+
+    /**
+     * Binds the Unix domain socket, first removing a stale socket file if configured to.
+     */
+    private ServerSocketChannel bindUnixSocket(int backlogLimit) throws IOException {
+        Path path = unixSocketConfig.getPath();
+        if (unixSocketConfig.isDeleteStale()) deleteStaleSocket(path);
+
+        ServerSocketChannel unixListener = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        listeners.add(unixListener);
+        unixListener.bind(UnixDomainSocketAddress.of(path), backlogLimit);
+        unixSocketBound = true;
+
+        if (unixSocketConfig.getPermissions() != null) {
+            Files.setPosixFilePermissions(path, unixSocketConfig.getPermissions());
+        }
+        System.out.println("🧦 Service active on unix:" + path);
+        return unixListener;
+    }
+
+    /**
+     * Deletes a socket file nobody is listening on, as left behind when a server is killed.
+     * Fails if another process still accepts on it, or if the path is not a socket.
+     */
+    private static void deleteStaleSocket(Path path) throws IOException {
+        if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) return;
+        if (Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS) || Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+            throw new IOException("Unix socket path " + path + " exists and is not a socket");
+        }
+
+        try (SocketChannel probe = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            probe.connect(UnixDomainSocketAddress.of(path));
+        } catch (ConnectException e) {
+            Files.delete(path);
+            System.out.println("🧹 Removed stale unix socket " + path);
+            return;
+        }
+        throw new IOException("Unix socket " + path + " is in use by another server");
+    }
+
+    // Unlike a TCP port, the socket file outlives the listener; only the server that created it removes it
+    private void deleteUnixSocket() {
+        if (!unixSocketBound) return;
+        unixSocketBound = false;
+        try {
+            Files.deleteIfExists(unixSocketConfig.getPath());
+        } catch (IOException e) {
+            System.out.println("⚠️ Could not remove unix socket " + unixSocketConfig.getPath() + " | " + e.getMessage());
+        }
+    }
+
+    /**
+     * Accepts on an additional listener from a separate thread.
+     */
+    private void startAcceptor(ServerSocketChannel listener, TlsConfig tls, String name) {
+        Thread acceptor = new Thread(() -> {
+            try {
+                listenForClients(listener, tls);
+            } catch (IOException e) {
+                if (!draining) System.out.println("💥 Listener " + name + " failure: " + e.getMessage());
+            } finally {
+                closeQuietly(listener);
+            }
+        }, name);
+        acceptor.start();
+    }
+
     /**
      * Accepts incoming client sockets and dispatches them to worker threads.
+     * Returns once the listener is closed by shutdown().
+     * @param tls TLS settings for HTTPS listeners, null for plaintext
      */
-    private void listenForClients(ServerSocket listener) throws IOException {
-        while (true) {
-            Socket socket = listener.accept();
-            System.out.println("🔗 Connection established from " + socket.getRemoteSocketAddress());
+    private void listenForClients(ServerSocketChannel listener, TlsConfig tls) throws IOException {
+        while (!draining) {
+            SocketChannel channel = listener.accept();
+            System.out.println("🔗 Connection established from " + ConnectionHandler.peer(channel));
 
             // delegate connection processing to thread pool
-            executor.execute(new ConnectionHandler(socket, router));
+            ConnectionHandler handler = new ConnectionHandler(channel, this, tls);
+            connections.add(handler);
+            if (draining) {
+                handler.forceClose();
+                return;
+            }
+            try {
+                executor.execute(handler);
+            } catch (RejectedExecutionException e) {
+                handler.forceClose(); // shutdown raced with this accept
+            }
+        }
+    }
+
+    private void awaitTerminated() {
+        try {
+            terminated.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
+
+    private static void closeQuietly(ServerSocketChannel listener) {
+        try {
+            listener.close();
+        } catch (IOException ignored) {}
+    }
 }
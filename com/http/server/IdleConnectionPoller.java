@@ -0,0 +1,117 @@
+package com.http.server;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * Parks connections that are waiting for their next request
+ * Idle connections are registered with one selector instead of holding a
+ * worker in a blocking read; once a connection becomes readable it is
+ * deregistered and its handler is resubmitted to the worker pool.
+ */
+public class IdleConnectionPoller {
+
+    private final Selector selector;
+    private final Executor workers;
+    private final Queue<ConnectionHandler> parking = new ConcurrentLinkedQueue<>();
+    private final Thread pollerThread;
+    private volatile boolean running = true;
+
+    public IdleConnectionPoller(Executor workers) throws IOException {
+        this.selector = Selector.open();
+        this.workers = workers;
+        this.pollerThread = new Thread(this::runPoller, "http-idle-poller");
+        this.pollerThread.setDaemon(true);
+        this.pollerThread.start();
+    }
+
+    /**
+     * Waits for the handler's (non-blocking) channel to become readable, or writable
+     * while it has TLS output pending, then runs the handler
+     */
+    public void park(ConnectionHandler handler) {
+        parking.add(handler);
+        selector.wakeup();
+    }
+
+    // Lets the selector notice channels closed while parked
+    public void wakeup() {
+        selector.wakeup();
+    }
+
+    public void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private void runPoller() {
+        List<ConnectionHandler> ready = new ArrayList<>();
+        try {
+            while (running) {
+                selector.select();
+                registerParked();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    key.cancel();
+                    ConnectionHandler handler = (ConnectionHandler) key.attachment();
+                    // Skip connections a deadline or shutdown has already closed
+                    if (handler.unpark()) ready.add(handler);
+                }
+                if (ready.isEmpty()) continue;
+
+                // Flush the cancelled keys so the channels can go back to blocking mode
+                selector.selectNow();
+                for (ConnectionHandler handler : ready) {
+                    dispatch(handler);
+                }
+                ready.clear();
+            }
+        } catch (IOException e) {
+            System.out.println("💥 Idle connection poller failed: " + e.getMessage());
+        } finally {
+            try {
+                selector.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    private void registerParked() {
+        ConnectionHandler handler;
+        while ((handler = parking.poll()) != null) {
+            if (handler.hasBufferedInput()) {
+                // Already has input to work on; waiting for the socket could stall it until a deadline
+                if (handler.unpark()) dispatch(handler);
+                continue;
+            }
+            SocketChannel channel = handler.channel();
+            try {
+                channel.register(selector, handler.interestOps(), handler);
+            } catch (ClosedChannelException e) {
+                // Closed by a deadline before it got parked
+                if (handler.unpark()) handler.abandon();
+            }
+        }
+    }
+
+    private void dispatch(ConnectionHandler handler) {
+        try {
+            handler.queued();
+            workers.execute(handler);
+        } catch (RuntimeException e) {
+            System.out.println("⚠️ Could not resume idle client: " + e.getMessage());
+            handler.abandon();
+        }
+    }
+}
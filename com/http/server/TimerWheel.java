@@ -0,0 +1,208 @@
+package com.http.server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hashed timer wheel for connection deadlines
+ * Timeouts are hashed into buckets by expiry tick; one ticker thread
+ * advances the wheel and runs expired tasks. Scheduling and cancelling are
+ * O(1) and lock-free for callers (both are queued and applied on the next
+ * tick), so tens of thousands of armed deadlines cost next to nothing.
+ * Expiry is accurate to one tick; tasks must be short and non-blocking.
+ */
+public class TimerWheel {
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Thread ticker;
+    private final long startTime;
+    private volatile boolean running = true;
+    private long tick;
+
+    /**
+     * @param name Ticker thread name
+     * @param tickMillis Resolution of the wheel
+     * @param wheelSize Number of buckets, rounded up to a power of two
+     */
+    public TimerWheel(String name, long tickMillis, int wheelSize) {
+        if (tickMillis <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("Tick duration and wheel size must be positive");
+        }
+        int size = Integer.highestOneBit(Math.max(wheelSize - 1, 1)) << 1;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) wheel[i] = new Bucket();
+        this.mask = size - 1;
+        this.startTime = System.nanoTime();
+
+        this.ticker = new Thread(this::runTicker, name);
+        this.ticker.setDaemon(true);
+        this.ticker.start();
+    }
+
+    /**
+     * Arms a task to run on the ticker thread once the delay has passed
+     * @return Handle that cancels the task
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        Timeout timeout = new Timeout(this, task, System.nanoTime() - startTime + unit.toNanos(delay));
+        pending.incrementAndGet();
+        scheduled.add(timeout);
+        return timeout;
+    }
+
+    // Timeouts armed and neither expired nor cancelled yet
+    public int pending() {
+        return pending.get();
+    }
+
+    // Stops the ticker; armed tasks never run
+    public void stop() {
+        running = false;
+        ticker.interrupt();
+    }
+
+    private void runTicker() {
+        while (running) {
+            long deadline = (tick + 1) * tickNanos;
+            long sleepNanos = deadline - (System.nanoTime() - startTime);
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    if (!running) return;
+                    continue;
+                }
+            }
+
+            removeCancelled();
+            transferScheduled();
+            wheel[(int) (tick & mask)].expire();
+            tick++;
+        }
+    }
+
+    // Moves newly scheduled timeouts into their buckets (bounded per tick)
+    private void transferScheduled() {
+        for (int i = 0; i < 100_000; i++) {
+            Timeout timeout = scheduled.poll();
+            if (timeout == null) return;
+            if (timeout.state.get() != Timeout.ARMED) continue;
+
+            long expiryTick = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (expiryTick - tick) / wheel.length;
+            // Already overdue timeouts go into the current bucket
+            long bucketTick = Math.max(expiryTick, tick);
+            wheel[(int) (bucketTick & mask)].add(timeout);
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) timeout.bucket.remove(timeout);
+        }
+    }
+
+    /**
+     * Handle to an armed task
+     */
+    public static final class Timeout {
+
+        private static final int ARMED = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final TimerWheel wheel;
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(ARMED);
+
+        // Owned by the ticker thread
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(TimerWheel wheel, Runnable task, long deadline) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * @return false if the task already ran or was cancelled before
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(ARMED, CANCELLED)) return false;
+            wheel.pending.decrementAndGet();
+            wheel.cancelled.add(this);
+            return true;
+        }
+
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(ARMED, EXPIRED)) return;
+            wheel.pending.decrementAndGet();
+            try {
+                task.run();
+            } catch (Throwable t) {
+                System.out.println("⚠️ Timer task failed: " + t);
+            }
+        }
+    }
+
+    // Doubly linked list of timeouts, only touched by the ticker thread
+    private static final class Bucket {
+
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.prev != null) timeout.prev.next = timeout.next;
+            if (timeout.next != null) timeout.next.prev = timeout.prev;
+            if (timeout == head) head = timeout.next;
+            if (timeout == tail) tail = timeout.prev;
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        void expire() {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    timeout.expire();
+                } else if (timeout.state.get() == Timeout.CANCELLED) {
+                    remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.http.server;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+
+/**
+ * Settings for serving HTTP on a Unix domain socket, e.g. behind a proxy on the same host
+ * Connections on the socket share workers, routes, limiter and deadlines
+ * with the TCP listeners; only the transport differs.
+ */
+public final class UnixSocketConfig {
+
+    private final Path path;
+    private final Set<PosixFilePermission> permissions;
+    private final boolean deleteStale;
+    private final boolean exclusive;
+
+    private UnixSocketConfig(Builder builder) {
+        this.path = builder.path;
+        this.permissions = builder.permissions;
+        this.deleteStale = builder.deleteStale;
+        this.exclusive = builder.exclusive;
+    }
+
+    /**
+     * @param path Socket file to create; its directory must exist
+     */
+    public static Builder builder(Path path) {
+        return new Builder(path);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    // Permissions applied to the socket file after binding, or null to keep the umask default
+    public Set<PosixFilePermission> getPermissions() {
+        return permissions;
+    }
+
+    public boolean isDeleteStale() {
+        return deleteStale;
+    }
+
+    // Whether the plaintext TCP listener is left out
+    public boolean isExclusive() {
+        return exclusive;
+    }
+
+    /**
+     * Builder for UnixSocketConfig instances
+     */
+    public static class Builder {
+        private final Path path;
+        private Set<PosixFilePermission> permissions;
+        private boolean deleteStale = true;
+        private boolean exclusive;
+
+        private Builder(Path path) {
+            this.path = path;
+        }
+
+        /**
+         * Restricts who may connect, e.g. "rw-rw----" for the owner and the proxy's group
+         * The file briefly has umask permissions between bind and chmod; place the
+         * socket in a directory only trusted users can enter if that matters.
+         */
+        public Builder permissions(String permissions) {
+            this.permissions = PosixFilePermissions.fromString(permissions);
+            return this;
+        }
+
+        // Remove a socket file left by a crashed server; one still accepting connections is never touched
+        public Builder deleteStale(boolean deleteStale) {
+            this.deleteStale = deleteStale;
+            return this;
+        }
+
+        // Serve only on the socket, without the plaintext TCP listener
+        public Builder exclusive(boolean exclusive) {
+            this.exclusive = exclusive;
+            return this;
+        }
+
+        public UnixSocketConfig build() {
+            if (path == null) throw new IllegalArgumentException("Unix socket path is required");
+            return new UnixSocketConfig(this);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.http.sse;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A Server-Sent Events topic, registered with RouteManager.addEventStream()
+ * Each broadcast is encoded once into a read-only buffer that every
+ * subscriber writes from, and is kept in a ring of recent events so a
+ * reconnecting client can resume after its Last-Event-ID. One writer
+ * thread per channel flushes all subscribers with non-blocking writes;
+ * a subscriber that falls more than http.sse.queue.events behind is
+ * disconnected instead of buffering without bound.
+ */
+public final class EventChannel
+{
+    private static final int HISTORY_SIZE = Integer.getInteger("http.sse.history.events", 256);
+    private static final int QUEUE_LIMIT = Integer.getInteger("http.sse.queue.events", 256);
+    private static final long HEARTBEAT_MILLIS = Long.getLong("http.sse.heartbeat.ms", 15_000);
+
+    // How soon a subscriber whose socket buffer was full is written to again
+    private static final long RETRY_MILLIS = 20;
+
+    // A comment line: keeps proxies from timing the stream out and detects dead clients
+    private static final ByteBuffer HEARTBEAT = readOnly(":\n\n".getBytes(StandardCharsets.US_ASCII));
+
+    private final String name;
+    private final ScheduledExecutorService writer;
+
+    // Guards the history ring and the order in which events reach subscribers
+    private final Object lock = new Object();
+    private final long[] historyIds = new long[HISTORY_SIZE];
+    private final ByteBuffer[] historyEvents = new ByteBuffer[HISTORY_SIZE];
+    private int historyNext;
+    private int historyCount;
+    private long lastId;
+
+    private final Set<EventStreamConnection> subscribers = ConcurrentHashMap.newKeySet();
+
+    // Subscribers with queued bytes, drained by the writer thread
+    private final Set<EventStreamConnection> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    public EventChannel(String name)
+    {
+        this.name = name;
+        this.writer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "http-sse-writer-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleAtFixedRate(this::heartbeat, HEARTBEAT_MILLIS, HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public int getSubscriberCount()
+    {
+        return subscribers.size();
+    }
+
+    // Sends an unnamed event (delivered to the client's onmessage handler)
+    public long broadcast(String data)
+    {
+        return broadcast(null, data);
+    }
+
+    /**
+     * Sends an event to every subscriber
+     * Returns without waiting for the writes; slow subscribers receive it later.
+     * @param event Event type for addEventListener() on the client, or null
+     * @param data Payload; line breaks become separate data lines
+     * @return The id assigned to the event
+     */
+    public long broadcast(String event, String data)
+    {
+        List<EventStreamConnection> overflowed = null;
+        long id;
+        synchronized (lock)
+        {
+            id = ++lastId;
+            ByteBuffer encoded = readOnly(encode(id, event, data));
+
+            historyIds[historyNext] = id;
+            historyEvents[historyNext] = encoded;
+            historyNext = (historyNext + 1) % HISTORY_SIZE;
+            historyCount = Math.min(historyCount + 1, HISTORY_SIZE);
+
+            for (EventStreamConnection subscriber : subscribers)
+            {
+                if (subscriber.offer(encoded.duplicate(), true))
+                {
+                    pending.add(subscriber);
+                }
+                else
+                {
+                    if (overflowed == null) overflowed = new ArrayList<>();
+                    overflowed.add(subscriber);
+                }
+            }
+        }
+
+        disconnect(overflowed);
+        requestFlush();
+        return id;
+    }
+
+    /**
+     * Adds a subscriber whose response head is already queued
+     * @param lastEventId Last-Event-ID sent by a reconnecting client, or null;
+     *        retained events after it are replayed before any new ones
+     */
+    void subscribe(EventStreamConnection subscriber, String lastEventId)
+    {
+        synchronized (lock)
+        {
+            long resumeAfter = parseId(lastEventId);
+            if (resumeAfter >= 0 && resumeAfter < lastId)
+            {
+                int oldest = (historyNext - historyCount + HISTORY_SIZE) % HISTORY_SIZE;
+                for (int i = 0; i < historyCount; i++)
+                {
+                    int slot = (oldest + i) % HISTORY_SIZE;
+                    if (historyIds[slot] > resumeAfter) subscriber.offer(historyEvents[slot].duplicate(), false);
+                }
+            }
+            subscribers.add(subscriber);
+        }
+        pending.add(subscriber);
+        requestFlush();
+    }
+
+    void unsubscribe(EventStreamConnection subscriber)
+    {
+        subscribers.remove(subscriber);
+        pending.remove(subscriber);
+    }
+
+    static int queueLimit()
+    {
+        return QUEUE_LIMIT;
+    }
+
+    private void heartbeat()
+    {
+        List<EventStreamConnection> overflowed = null;
+        for (EventStreamConnection subscriber : subscribers)
+        {
+            if (subscriber.offer(HEARTBEAT.duplicate(), true))
+            {
+                pending.add(subscriber);
+            }
+            else
+            {
+                if (overflowed == null) overflowed = new ArrayList<>();
+                overflowed.add(subscriber);
+            }
+        }
+        disconnect(overflowed);
+        flush();
+    }
+
+    private void requestFlush()
+    {
+        if (flushScheduled.compareAndSet(false, true)) writer.execute(this::flush);
+    }
+
+    // Writer thread: writes what each pending subscriber's socket takes, retrying the rest shortly
+    private void flush()
+    {
+        flushScheduled.set(false);
+        for (EventStreamConnection subscriber : pending)
+        {
+            // Removed first, so an event queued during the write re-adds it
+            pending.remove(subscriber);
+            if (!subscriber.flush()) pending.add(subscriber);
+        }
+        if (!pending.isEmpty() && flushScheduled.compareAndSet(false, true))
+        {
+            writer.schedule(this::flush, RETRY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void disconnect(List<EventStreamConnection> overflowed)
+    {
+        if (overflowed == null) return;
+        for (EventStreamConnection subscriber : overflowed)
+        {
+            System.out.println("🐌 Event stream '" + name + "' subscriber fell " + QUEUE_LIMIT
+                    + " events behind, disconnecting");
+            subscriber.disconnect();
+        }
+    }
+
+    // id, optional event type and one data line per line of the payload, ended by a blank line
+    private static byte[] encode(long id, String event, String data)
+    {
+        StringBuilder out = new StringBuilder(data.length() + 32);
+        out.append("id: ").append(id).append('\n');
+        if (event != null) out.append("event: ").append(event).append('\n');
+        for (String line : data.split("\r\n|\r|\n", -1))
+        {
+            out.append("data: ").append(line).append('\n');
+        }
+        out.append('\n');
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long parseId(String lastEventId)
+    {
+        if (lastEventId == null) return -1;
+        try
+        {
+            return Long.parseLong(lastEventId.trim());
+        }
+        catch (NumberFormatException e)
+        {
+            return -1;
+        }
+    }
+
+    private static ByteBuffer readOnly(byte[] bytes)
+    {
+        return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+}
@@ -0,0 +1,163 @@
+package com.http.sse;
+
+import com.http.model.common.Header;
+import com.http.protocol.HttpDate;
+import com.http.protocol.ResponseEncoder;
+import com.http.tls.TlsChannel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One client subscribed to an EventChannel over a non-blocking HTTP/1.1 connection
+ * The response has no Content-Length: the event stream runs until either
+ * side closes the connection. Events are queued as views of the channel's
+ * shared buffers and written by the channel's writer thread; the connection
+ * is parked on the poller only to notice when the client goes away.
+ */
+public final class EventStreamConnection
+{
+    private static final int MAX_GATHER = 16;
+
+    private final ByteChannel input;
+    private final GatheringByteChannel output;
+    private final EventChannel channel;
+    private final Runnable onDisconnect;
+
+    private final Queue<ByteBuffer> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private volatile boolean closed;
+
+    // Guards the channel; writes come from the writer thread, reads from whichever worker was woken
+    private final Object ioLock = new Object();
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+    private final ByteBuffer discard = ByteBuffer.allocate(256);
+
+    /**
+     * @param input Non-blocking channel positioned after the request head
+     * @param output The same channel, for gathering writes
+     * @param onDisconnect Closes the connection when the subscriber falls behind or a write fails
+     */
+    public EventStreamConnection(ByteChannel input, GatheringByteChannel output, EventChannel channel,
+                                 Runnable onDisconnect)
+    {
+        this.input = input;
+        this.output = output;
+        this.channel = channel;
+        this.onDisconnect = onDisconnect;
+    }
+
+    /**
+     * Queues the response head and subscribes to the channel
+     * @param lastEventId Last-Event-ID request header, or null
+     */
+    public void start(String lastEventId)
+    {
+        offer(ByteBuffer.wrap(responseHead()), false);
+        channel.subscribe(this, lastEventId);
+    }
+
+    /**
+     * Reads and discards whatever the client sent; clients have nothing to say on an event stream
+     * @return false once the client has closed the connection
+     */
+    public boolean onReadable() throws IOException
+    {
+        synchronized (ioLock)
+        {
+            while (true)
+            {
+                discard.clear();
+                int read = input.read(discard);
+                if (read < 0) return false;
+                if (read == 0) return true;
+            }
+        }
+    }
+
+    // Stops delivery; called when the connection closes for any reason
+    public void close()
+    {
+        closed = true;
+        channel.unsubscribe(this);
+        queue.clear();
+    }
+
+    /**
+     * Queues an encoded event
+     * @param bounded Whether the queue limit applies (it does not for the head and replayed history)
+     * @return false if the subscriber is too far behind to take it
+     */
+    boolean offer(ByteBuffer event, boolean bounded)
+    {
+        if (closed) return true;
+        if (bounded && queued.get() >= EventChannel.queueLimit()) return false;
+        queued.incrementAndGet();
+        queue.add(event);
+        return true;
+    }
+
+    void disconnect()
+    {
+        close();
+        onDisconnect.run();
+    }
+
+    /**
+     * Writer thread: writes queued events until the socket buffer is full
+     * @return true if nothing is left to write (or the subscriber is gone)
+     */
+    boolean flush()
+    {
+        if (closed) return true;
+        try
+        {
+            synchronized (ioLock)
+            {
+                while (true)
+                {
+                    int count = 0;
+                    Iterator<ByteBuffer> events = queue.iterator();
+                    while (count < MAX_GATHER && events.hasNext())
+                    {
+                        gather[count++] = events.next();
+                    }
+                    if (count == 0) return !(output instanceof TlsChannel) || ((TlsChannel) output).flush();
+
+                    long written = output.write(gather, 0, count);
+                    for (int i = 0; i < count && !gather[i].hasRemaining(); i++)
+                    {
+                        queue.poll();
+                        queued.decrementAndGet();
+                    }
+                    Arrays.fill(gather, 0, count, null);
+                    if (written == 0) return false;
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            disconnect();
+            return true;
+        }
+    }
+
+    private static byte[] responseHead()
+    {
+        String head = "HTTP/1.1 200 OK\r\n"
+                + Header.Content_Type + ": text/event-stream; charset=utf-8\r\n"
+                + Header.Cache_Control + ": no-cache\r\n"
+                + Header.Server + ": " + ResponseEncoder.SERVER_NAME + "\r\n"
+                + Header.Date + ": " + HttpDate.current() + "\r\n"
+                + Header.Connection + ": close\r\n\r\n";
+        return head.getBytes(StandardCharsets.UTF_8);
+    }
+}
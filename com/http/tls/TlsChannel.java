@@ -0,0 +1,357 @@
+package com.http.tls;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SocketChannel;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+
+/**
+ * Byte channel that encrypts and decrypts through an SSLEngine
+ * The handshake is driven lazily by the first read or write. Works on top of
+ * blocking and non-blocking socket channels: in non-blocking mode read()
+ * returns 0 when no complete record has arrived yet, and write() returns
+ * early (keeping the encrypted remainder) when the socket cannot take more.
+ * The same holds for the handshake, which never waits on the socket itself:
+ * hasPendingOutput() tells the caller to wait for writability, not input.
+ * Instances are not thread-safe; one thread owns the connection at a time.
+ */
+public final class TlsChannel implements ByteChannel, GatheringByteChannel
+{
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final SocketChannel socket;
+    private final SSLEngine engine;
+
+    // netIn and appIn are kept in write mode (filled from position 0), netOut too
+    private ByteBuffer netIn;
+    private ByteBuffer netOut;
+    private ByteBuffer appIn;
+    private boolean inboundDone;
+    private boolean handshakeBegun;
+    private boolean handshakeComplete;
+
+    public TlsChannel(SocketChannel socket, SSLEngine engine)
+    {
+        this.socket = socket;
+        this.engine = engine;
+        int packetSize = engine.getSession().getPacketBufferSize();
+        this.netIn = ByteBuffer.allocate(packetSize);
+        this.netOut = ByteBuffer.allocate(packetSize);
+        this.appIn = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+    }
+
+    // Whether the initial handshake has finished; until then a peer that goes quiet is mid-handshake
+    public boolean isHandshakeComplete()
+    {
+        return handshakeComplete;
+    }
+
+    // Whether encrypted bytes are waiting for the socket to accept them
+    public boolean hasPendingOutput()
+    {
+        return netOut.position() > 0;
+    }
+
+    // Whether decrypted bytes are waiting that the socket will not signal as readable
+    public boolean hasBufferedInput()
+    {
+        return appIn.position() > 0;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException
+    {
+        if (appIn.position() > 0) return drainAppIn(dst);
+        if (inboundDone) return -1;
+        if (!handshake()) return inboundDone ? -1 : 0;
+        if (appIn.position() > 0) return drainAppIn(dst); // application data sent along with the handshake
+
+        while (true)
+        {
+            netIn.flip();
+            SSLEngineResult result;
+            try
+            {
+                result = engine.unwrap(netIn, appIn);
+            }
+            finally
+            {
+                netIn.compact();
+            }
+
+            switch (result.getStatus())
+            {
+                case OK:
+                    if (result.getHandshakeStatus() != HandshakeStatus.NOT_HANDSHAKING
+                            && result.getHandshakeStatus() != HandshakeStatus.FINISHED)
+                    {
+                        // Post-handshake messages, e.g. TLS 1.3 key updates
+                        if (!handshake() && appIn.position() == 0) return inboundDone ? -1 : 0;
+                    }
+                    if (appIn.position() > 0) return drainAppIn(dst);
+                    break;
+                case BUFFER_UNDERFLOW:
+                    ensureNetInCapacity();
+                    int read = socket.read(netIn);
+                    if (read < 0) return endOfStream();
+                    if (read == 0) return 0;
+                    break;
+                case BUFFER_OVERFLOW:
+                    appIn = enlarge(appIn, engine.getSession().getApplicationBufferSize());
+                    break;
+                case CLOSED:
+                    inboundDone = true;
+                    return appIn.position() > 0 ? drainAppIn(dst) : -1;
+            }
+        }
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException
+    {
+        return (int) write(new ByteBuffer[] { src }, 0, 1);
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs) throws IOException
+    {
+        return write(srcs, 0, srcs.length);
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException
+    {
+        if (!flush()) return 0;
+        if (!handshake()) return 0;
+
+        long consumed = 0;
+        while (hasRemaining(srcs, offset, length))
+        {
+            SSLEngineResult result = engine.wrap(srcs, offset, length, netOut);
+            consumed += result.bytesConsumed();
+
+            switch (result.getStatus())
+            {
+                case OK:
+                    if (!flush()) return consumed;
+                    break;
+                case BUFFER_OVERFLOW:
+                    netOut = enlarge(netOut, engine.getSession().getPacketBufferSize());
+                    break;
+                case CLOSED:
+                    throw new ClosedChannelException();
+                default:
+                    throw new SSLException("Unexpected wrap result: " + result.getStatus());
+            }
+        }
+        return consumed;
+    }
+
+    /**
+     * Writes out encrypted bytes left over from an earlier write
+     * @return true once nothing is pending
+     */
+    public boolean flush() throws IOException
+    {
+        netOut.flip();
+        try
+        {
+            while (netOut.hasRemaining())
+            {
+                if (socket.write(netOut) == 0) return false;
+            }
+            return true;
+        }
+        finally
+        {
+            netOut.compact();
+        }
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+        return socket.isOpen();
+    }
+
+    // Sends close_notify when the socket is still usable, then closes it
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            if (socket.isOpen() && !engine.isOutboundDone())
+            {
+                engine.closeOutbound();
+                engine.wrap(EMPTY, netOut);
+                flush();
+            }
+        }
+        catch (IOException ignored)
+        {
+            // The peer may already be gone; the socket is closed either way
+        }
+        finally
+        {
+            socket.close();
+        }
+    }
+
+    /**
+     * Advances the handshake as far as the available input allows
+     * @return true when no handshake is in progress; false when more input is needed
+     */
+    private boolean handshake() throws IOException
+    {
+        // Begun explicitly so the status tells a handshake that has not finished from one not yet started
+        if (!handshakeBegun)
+        {
+            engine.beginHandshake();
+            handshakeBegun = true;
+        }
+
+        // Handshake bytes an earlier call could not send go first
+        if (!flush()) return false;
+        while (true)
+        {
+            switch (engine.getHandshakeStatus())
+            {
+                case NOT_HANDSHAKING:
+                case FINISHED:
+                    handshakeComplete = true;
+                    return true;
+
+                case NEED_TASK:
+                    Runnable task;
+                    while ((task = engine.getDelegatedTask()) != null)
+                    {
+                        task.run();
+                    }
+                    break;
+
+                case NEED_WRAP:
+                    SSLEngineResult wrapped = engine.wrap(EMPTY, netOut);
+                    if (wrapped.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW)
+                    {
+                        netOut = enlarge(netOut, engine.getSession().getPacketBufferSize());
+                        break;
+                    }
+                    if (wrapped.getStatus() == SSLEngineResult.Status.CLOSED)
+                    {
+                        flush(); // best effort for the alert
+                        throw new SSLException("TLS handshake aborted");
+                    }
+                    // Socket full: the caller waits for it to become writable and calls again
+                    if (!flush()) return false;
+                    break;
+
+                case NEED_UNWRAP:
+                case NEED_UNWRAP_AGAIN:
+                    netIn.flip();
+                    SSLEngineResult unwrapped;
+                    try
+                    {
+                        unwrapped = engine.unwrap(netIn, appIn);
+                    }
+                    finally
+                    {
+                        netIn.compact();
+                    }
+
+                    if (unwrapped.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW)
+                    {
+                        ensureNetInCapacity();
+                        int read = socket.read(netIn);
+                        if (read < 0)
+                        {
+                            endOfStream();
+                            return false;
+                        }
+                        if (read == 0) return false;
+                    }
+                    else if (unwrapped.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW)
+                    {
+                        appIn = enlarge(appIn, engine.getSession().getApplicationBufferSize());
+                    }
+                    else if (unwrapped.getStatus() == SSLEngineResult.Status.CLOSED)
+                    {
+                        inboundDone = true;
+                        return false;
+                    }
+                    break;
+            }
+        }
+    }
+
+    private int endOfStream() throws IOException
+    {
+        inboundDone = true;
+        try
+        {
+            engine.closeInbound();
+        }
+        catch (SSLException e)
+        {
+            // Peer closed without close_notify; nothing more will arrive either way
+        }
+        if (engine.getHandshakeStatus() != HandshakeStatus.NOT_HANDSHAKING && appIn.position() == 0)
+        {
+            throw new EOFException("Connection closed during TLS handshake");
+        }
+        return -1;
+    }
+
+    private int drainAppIn(ByteBuffer dst)
+    {
+        appIn.flip();
+        int count = Math.min(appIn.remaining(), dst.remaining());
+        if (count == appIn.remaining())
+        {
+            dst.put(appIn);
+        }
+        else
+        {
+            ByteBuffer slice = appIn.duplicate();
+            slice.limit(slice.position() + count);
+            dst.put(slice);
+            appIn.position(appIn.position() + count);
+        }
+        appIn.compact();
+        return count;
+    }
+
+    private void ensureNetInCapacity()
+    {
+        int packetSize = engine.getSession().getPacketBufferSize();
+        if (netIn.capacity() < packetSize || !netIn.hasRemaining())
+        {
+            netIn = enlarge(netIn, packetSize);
+        }
+    }
+
+    // Copies a write-mode buffer into a larger one
+    private static ByteBuffer enlarge(ByteBuffer buffer, int minCapacity)
+    {
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(minCapacity, buffer.capacity() * 2));
+        buffer.flip();
+        larger.put(buffer);
+        return larger;
+    }
+
+    private static boolean hasRemaining(ByteBuffer[] buffers, int offset, int length)
+    {
+        for (int i = offset; i < offset + length; i++)
+        {
+            if (buffers[i].hasRemaining()) return true;
+        }
+        return false;
+    }
+}
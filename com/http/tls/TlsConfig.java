@@ -0,0 +1,159 @@
+package com.http.tls;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSessionContext;
+
+/**
+ * Server-side TLS settings: certificate, protocols, session resumption and ALPN
+ * Built once at startup; createEngine() is called for every accepted connection.
+ *
+ * Resumption uses the server session cache (TLS 1.2 session IDs and TLS 1.3
+ * PSKs) and, unless disabled, stateless session tickets so resumed clients
+ * skip the full handshake without server-side state.
+ */
+public final class TlsConfig
+{
+    private final SSLContext context;
+    private final String[] protocols;
+    private final List<String> applicationProtocols;
+
+    private TlsConfig(Builder builder, SSLContext context)
+    {
+        this.context = context;
+        this.protocols = builder.protocols;
+        this.applicationProtocols = List.of(builder.applicationProtocols);
+    }
+
+    /**
+     * @param keyStore PKCS12 or JKS file holding the server key and certificate chain
+     * @param password Store password, also used for the key unless keyPassword() is set
+     */
+    public static Builder builder(Path keyStore, char[] password)
+    {
+        return new Builder(keyStore, password);
+    }
+
+    // Server-mode engine with this configuration's protocols and ALPN selection
+    public SSLEngine createEngine()
+    {
+        SSLEngine engine = context.createSSLEngine();
+        engine.setUseClientMode(false);
+
+        SSLParameters parameters = engine.getSSLParameters();
+        parameters.setProtocols(protocols);
+        parameters.setUseCipherSuitesOrder(true);
+        engine.setSSLParameters(parameters);
+
+        // Server preference order; no ALPN answer if the client offers none of ours
+        engine.setHandshakeApplicationProtocolSelector((sslEngine, offered) -> {
+            for (String protocol : applicationProtocols)
+            {
+                if (offered.contains(protocol)) return protocol;
+            }
+            return null;
+        });
+        return engine;
+    }
+
+    public List<String> getApplicationProtocols()
+    {
+        return applicationProtocols;
+    }
+
+    /**
+     * Builder for TlsConfig instances
+     */
+    public static class Builder
+    {
+        private final Path keyStore;
+        private final char[] storePassword;
+        private char[] keyPassword;
+        private String[] protocols = { "TLSv1.3", "TLSv1.2" };
+        private String[] applicationProtocols = { "http/1.1" };
+        private int sessionCacheSize = 20_000;
+        private Duration sessionTimeout = Duration.ofHours(4);
+        private boolean sessionTickets = true;
+
+        private Builder(Path keyStore, char[] password)
+        {
+            this.keyStore = keyStore;
+            this.storePassword = password.clone();
+        }
+
+        public Builder keyPassword(char[] password)
+        {
+            this.keyPassword = password.clone();
+            return this;
+        }
+
+        public Builder protocols(String... protocols)
+        {
+            this.protocols = protocols.clone();
+            return this;
+        }
+
+        // ALPN protocol IDs in server preference order
+        public Builder applicationProtocols(String... protocols)
+        {
+            this.applicationProtocols = protocols.clone();
+            return this;
+        }
+
+        // Maximum number of sessions kept for resumption
+        public Builder sessionCacheSize(int size)
+        {
+            this.sessionCacheSize = size;
+            return this;
+        }
+
+        // How long a cached session may be resumed
+        public Builder sessionTimeout(Duration timeout)
+        {
+            this.sessionTimeout = timeout;
+            return this;
+        }
+
+        // Stateless tickets are a JVM-wide JSSE setting; set before the first TLS use
+        public Builder sessionTickets(boolean enabled)
+        {
+            this.sessionTickets = enabled;
+            return this;
+        }
+
+        public TlsConfig build() throws IOException, GeneralSecurityException
+        {
+            if (sessionCacheSize < 0 || sessionTimeout.isNegative())
+            {
+                throw new IllegalArgumentException("Session cache size and timeout cannot be negative");
+            }
+            System.setProperty("jdk.tls.server.enableSessionTicketExtension", Boolean.toString(sessionTickets));
+
+            KeyStore store = KeyStore.getInstance(keyStore.toFile(), storePassword);
+            KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keyManagers.init(store, keyPassword != null ? keyPassword : storePassword);
+
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(keyManagers.getKeyManagers(), null, null);
+
+            SSLSessionContext sessions = context.getServerSessionContext();
+            sessions.setSessionCacheSize(sessionCacheSize);
+            sessions.setSessionTimeout((int) Math.min(Integer.MAX_VALUE, sessionTimeout.toSeconds()));
+
+            if (keyPassword != null) Arrays.fill(keyPassword, '\0');
+            Arrays.fill(storePassword, '\0');
+
+            return new TlsConfig(this, context);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.http.trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event spanning from accepting a connection until a worker first picks it up
+ * Long ones mean the worker pool is saturated, before any request is read.
+ */
+@Name("com.http.ConnectionAccepted")
+@Label("HTTP Connection Accepted")
+@Category("HTTP Server")
+@Description("An accepted client connection waiting for its first worker")
+@StackTrace(false)
+@Threshold("20 ms")
+public class HttpConnectionEvent extends Event
+{
+    @Label("Peer")
+    String peer;
+
+    @Label("Secure")
+    boolean secure;
+
+    /**
+     * Starts the event right after accept
+     * @return The begun event, or null when the event is not being recorded
+     */
+    public static HttpConnectionEvent accepted()
+    {
+        HttpConnectionEvent event = new HttpConnectionEvent();
+        if (!event.isEnabled()) return null;
+        event.begin();
+        return event;
+    }
+
+    // Ends the event once a worker has the connection
+    public void pickedUp(String peer, boolean secure)
+    {
+        end();
+        if (!shouldCommit()) return;
+        this.peer = peer;
+        this.secure = secure;
+        commit();
+    }
+}
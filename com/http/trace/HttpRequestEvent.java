@@ -0,0 +1,66 @@
+package com.http.trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event for one request, from the moment it waits for a
+ * worker until its response has been flushed, split into phases
+ * Only requests slower than the threshold are recorded; lower it in a
+ * custom .jfc (or with "jfr configure") to see every request.
+ */
+@Name("com.http.Request")
+@Label("HTTP Request")
+@Category("HTTP Server")
+@Description("A request served by the HTTP server, with the time spent in each phase")
+@StackTrace(false)
+@Threshold("100 ms")
+public class HttpRequestEvent extends Event
+{
+    @Label("Method")
+    String method;
+
+    @Label("Path")
+    String path;
+
+    @Label("Route")
+    @Description("Pattern of the matched route; empty for the fallback or unmatched handler, missing if answered before routing (e.g. 429)")
+    String route;
+
+    @Label("Protocol")
+    String protocol;
+
+    @Label("Status")
+    int status;
+
+    @Label("Queue Time")
+    @Description("Waiting for a worker after the request arrived")
+    @Timespan(Timespan.NANOSECONDS)
+    long queueTime;
+
+    @Label("Read Time")
+    @Description("Parsing the head and reading the body, including any wait for a scheduling class")
+    @Timespan(Timespan.NANOSECONDS)
+    long readTime;
+
+    @Label("Route Time")
+    @Description("Matching the request to a route")
+    @Timespan(Timespan.NANOSECONDS)
+    long routeTime;
+
+    @Label("Handler Time")
+    @Description("Running filters and the handler, until its response was complete")
+    @Timespan(Timespan.NANOSECONDS)
+    long handlerTime;
+
+    @Label("Write Time")
+    @Description("Encoding and flushing the response, including resuming after an async handler")
+    @Timespan(Timespan.NANOSECONDS)
+    long writeTime;
+}
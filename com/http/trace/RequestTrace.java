@@ -0,0 +1,119 @@
+package com.http.trace;
+
+/**
+ * Phase timestamps of the request a connection (or HTTP/2 stream) is serving,
+ * committed as an HttpRequestEvent once its response is flushed
+ * One instance is reused for every request on an HTTP/1 connection. When
+ * the event is not being recorded every method returns after a field check,
+ * so tracing costs next to nothing outside a JFR recording. Handed between
+ * threads only through executors and futures, like the connection itself.
+ */
+public final class RequestTrace
+{
+    // Event being filled in; null when no request is being traced
+    private HttpRequestEvent event;
+
+    private long queuedAt;
+    private long startedAt;
+    private long readAt;
+    private long routedAt;
+    private long handledAt;
+
+    /**
+     * Starts tracing a request that is about to wait for a worker
+     * Replaces anything begun earlier that never reached a response, e.g. a
+     * connection that was parked again before its request head was complete.
+     */
+    public void queued()
+    {
+        HttpRequestEvent next = new HttpRequestEvent();
+        if (!next.isEnabled())
+        {
+            event = null;
+            return;
+        }
+        next.begin();
+        event = next;
+        queuedAt = System.nanoTime();
+        startedAt = 0;
+        readAt = 0;
+        routedAt = 0;
+        handledAt = 0;
+    }
+
+    // A worker has started on the request; begins tracing if it did not wait in a queue
+    public void started()
+    {
+        if (event == null)
+        {
+            queued();
+            if (event == null) return;
+        }
+        if (startedAt == 0) startedAt = System.nanoTime();
+    }
+
+    // Request line parsed: what is being asked for
+    public void request(String method, String path, String protocol)
+    {
+        HttpRequestEvent current = event;
+        if (current == null) return;
+        current.method = method;
+        current.path = path;
+        current.protocol = protocol;
+    }
+
+    // Head and body have been read
+    public void read()
+    {
+        if (event != null) readAt = System.nanoTime();
+    }
+
+    // Route matched; pattern is null for the fallback or unmatched handler
+    public void routed(String pattern)
+    {
+        HttpRequestEvent current = event;
+        if (current == null) return;
+        routedAt = System.nanoTime();
+        current.route = pattern == null ? "" : pattern;
+    }
+
+    // The handler's response is complete
+    public void handled()
+    {
+        if (event != null) handledAt = System.nanoTime();
+    }
+
+    // Whether a request is currently being traced, i.e. its phases are worth timing
+    public boolean isActive()
+    {
+        return event != null;
+    }
+
+    /**
+     * Ends the request once its response is flushed and records it if it was slow enough
+     * Phases that were skipped (e.g. a 429 sent before routing) count as zero.
+     */
+    public void flushed(int status)
+    {
+        HttpRequestEvent current = event;
+        if (current == null) return;
+        event = null;
+
+        current.end();
+        if (!current.shouldCommit()) return;
+
+        long flushedAt = System.nanoTime();
+        long started = startedAt == 0 ? queuedAt : startedAt;
+        long read = Math.max(readAt, started);
+        long routed = Math.max(routedAt, read);
+        long handled = Math.max(handledAt, routed);
+
+        current.status = status;
+        current.queueTime = started - queuedAt;
+        current.readTime = read - started;
+        current.routeTime = routed - read;
+        current.handlerTime = handled - routed;
+        current.writeTime = flushedAt - handled;
+        current.commit();
+    }
+}
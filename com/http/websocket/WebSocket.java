@@ -0,0 +1,69 @@
+package com.http.websocket;
+
+import com.http.model.request.Request;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An open WebSocket, as seen by its WebSocketHandler
+ * Messages may be sent from any thread; each goes out as a single frame,
+ * and concurrent sends never interleave.
+ */
+public final class WebSocket
+{
+    private final WebSocketConnection connection;
+    private final Request request;
+
+    WebSocket(WebSocketConnection connection, Request request)
+    {
+        this.connection = connection;
+        this.request = request;
+    }
+
+    // The upgrade request, e.g. for its path, query parameters or cookies
+    public Request getRequest()
+    {
+        return request;
+    }
+
+    /**
+     * @throws IOException if the socket is closing or the write fails
+     */
+    public void sendText(String message) throws IOException
+    {
+        connection.send(WebSocketConnection.OP_TEXT, ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    public void sendBinary(byte[] message) throws IOException
+    {
+        connection.send(WebSocketConnection.OP_BINARY, ByteBuffer.wrap(message));
+    }
+
+    // Application data is echoed back in the client's pong
+    public void ping(byte[] data) throws IOException
+    {
+        if (data.length > WebSocketConnection.MAX_CONTROL_PAYLOAD)
+        {
+            throw new IllegalArgumentException("Ping payload exceeds " + WebSocketConnection.MAX_CONTROL_PAYLOAD + " bytes");
+        }
+        connection.send(WebSocketConnection.OP_PING, ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Starts the closing handshake; the connection closes once the client answers
+     * @param code RFC 6455 close code, e.g. 1000 for a normal closure
+     * @param reason Short explanation, at most 123 bytes of UTF-8
+     */
+    public void close(int code, String reason)
+    {
+        connection.close(code, reason);
+    }
+
+    // False once either side has started closing
+    public boolean isOpen()
+    {
+        return connection.isOpen();
+    }
+}
@@ -0,0 +1,475 @@
+package com.http.websocket;
+
+import com.http.exception.WebSocketException;
+import com.http.model.request.Request;
+import com.http.protocol.ChannelWrites;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Server side of a WebSocket connection after the handshake (RFC 6455)
+ * One thread at a time reads: onReadable() drains the non-blocking channel,
+ * unmasks each complete frame in place, reassembles fragmented messages and
+ * hands them to the WebSocketHandler; the caller then parks the connection
+ * until more data arrives. Frames are written from any thread under the
+ * same lock that guards reads, so the channel may also be a TlsChannel.
+ */
+public final class WebSocketConnection
+{
+    // Opcodes
+    static final int OP_CONTINUATION = 0x0;
+    static final int OP_TEXT = 0x1;
+    static final int OP_BINARY = 0x2;
+    static final int OP_CLOSE = 0x8;
+    static final int OP_PING = 0x9;
+    static final int OP_PONG = 0xA;
+
+    static final int MAX_CONTROL_PAYLOAD = 125;
+    private static final int MAX_CLOSE_REASON = MAX_CONTROL_PAYLOAD - 2;
+
+    // Largest message accepted, whether in one frame or reassembled from fragments
+    private static final int MAX_MESSAGE_SIZE = Integer.getInteger("http.websocket.max.message.bytes", 1 << 20);
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    private final ByteChannel input;
+    private final GatheringByteChannel output;
+    private final WebSocketHandler handler;
+    private final WebSocket socket;
+    private final long writeTimeoutNanos;
+
+    // Reader state, owned by the thread currently in onReadable()
+    private ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    private ByteArrayOutputStream fragments;
+    private int fragmentedOpcode = -1;
+    private final CharsetDecoder utf8 = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+
+    // Guards the channel for reads and writes, and the writer state below
+    private final Object ioLock = new Object();
+    private final ByteBuffer frameHeader = ByteBuffer.allocate(10);
+    private final ByteBuffer[] gather = new ByteBuffer[2];
+    private volatile boolean closeSent;
+
+    private volatile boolean closeReceived;
+    private final AtomicBoolean finished = new AtomicBoolean();
+
+    /**
+     * @param input Non-blocking channel positioned after the handshake
+     * @param output The same channel, for gathering writes
+     * @param request The upgrade request
+     * @param writeTimeout How long a frame write may wait for socket buffer space
+     */
+    public WebSocketConnection(ByteChannel input, GatheringByteChannel output, Request request,
+                               WebSocketHandler handler, Duration writeTimeout)
+    {
+        this.input = input;
+        this.output = output;
+        this.handler = handler;
+        this.socket = new WebSocket(this, request);
+        this.writeTimeoutNanos = writeTimeout.toNanos();
+    }
+
+    /**
+     * Takes over bytes read along with the handshake and tells the handler the socket is open
+     */
+    public void start(ByteBuffer buffered)
+    {
+        if (in.remaining() < buffered.remaining()) in = ByteBuffer.allocate(buffered.remaining());
+        in.put(buffered);
+        handler.onOpen(socket);
+    }
+
+    /**
+     * Reads everything the channel has and handles each complete frame
+     * @return false once the connection is finished: the closing handshake
+     *         completed, the peer disconnected, or a protocol error closed it
+     */
+    public boolean onReadable() throws IOException
+    {
+        try
+        {
+            while (true)
+            {
+                handleFrames();
+                if (closeReceived) return false;
+
+                int read;
+                synchronized (ioLock)
+                {
+                    read = input.read(in);
+                }
+                if (read < 0)
+                {
+                    finish(WebSocketException.ABNORMAL_CLOSURE, "");
+                    return false;
+                }
+                if (read == 0) return true;
+            }
+        }
+        catch (WebSocketException e)
+        {
+            sendClose(e.getCloseCode(), e.getMessage());
+            finish(e.getCloseCode(), e.getMessage());
+            return false;
+        }
+    }
+
+    // Starts the closing handshake with 1001 because the server is shutting down
+    public void goAway()
+    {
+        close(WebSocketException.GOING_AWAY, "Server shutting down");
+    }
+
+    // The connection was closed underneath; the handler hears 1006 unless it already got onClose
+    public void terminated()
+    {
+        finish(WebSocketException.ABNORMAL_CLOSURE, "");
+    }
+
+    boolean isOpen()
+    {
+        return !closeSent && !closeReceived && !finished.get();
+    }
+
+    void close(int code, String reason)
+    {
+        byte[] reasonBytes = reason == null ? new byte[0] : reason.getBytes(StandardCharsets.UTF_8);
+        if (reasonBytes.length > MAX_CLOSE_REASON)
+        {
+            throw new IllegalArgumentException("Close reason exceeds " + MAX_CLOSE_REASON + " bytes");
+        }
+        if (!isValidCloseCode(code)) throw new IllegalArgumentException("Invalid close code " + code);
+        sendClose(code, reason);
+    }
+
+    /**
+     * Writes one unfragmented frame
+     * @throws IOException if the closing handshake has started or the write fails
+     */
+    void send(int opcode, ByteBuffer payload) throws IOException
+    {
+        synchronized (ioLock)
+        {
+            if (closeSent)
+            {
+                if (opcode == OP_CLOSE) return;
+                throw new IOException("WebSocket is closed");
+            }
+            if (opcode == OP_CLOSE) closeSent = true;
+
+            // Server frames are never masked
+            int length = payload.remaining();
+            frameHeader.clear();
+            frameHeader.put((byte) (0x80 | opcode));
+            if (length <= MAX_CONTROL_PAYLOAD)
+            {
+                frameHeader.put((byte) length);
+            }
+            else if (length <= 0xffff)
+            {
+                frameHeader.put((byte) 126).putShort((short) length);
+            }
+            else
+            {
+                frameHeader.put((byte) 127).putLong(length);
+            }
+            frameHeader.flip();
+
+            gather[0] = frameHeader;
+            gather[1] = payload;
+            try
+            {
+                ChannelWrites.writeFully(output, gather, writeTimeoutNanos);
+            }
+            finally
+            {
+                gather[0] = null;
+                gather[1] = null;
+            }
+        }
+    }
+
+    private void handleFrames()
+    {
+        int needed = 0;
+        in.flip();
+        try
+        {
+            while (!closeReceived && in.remaining() >= 2)
+            {
+                int start = in.position();
+                int first = in.get(start) & 0xff;
+                int second = in.get(start + 1) & 0xff;
+                boolean fin = (first & 0x80) != 0;
+                int opcode = first & 0x0f;
+
+                if ((first & 0x70) != 0) throw new WebSocketException(WebSocketException.PROTOCOL_ERROR, "Reserved bits set");
+                if ((second & 0x80) == 0) throw new WebSocketException(WebSocketException.PROTOCOL_ERROR, "Client frames must be masked");
+
+                int headerLength = 2 + 4;
+                long length = second & 0x7f;
+                if (length == 126)
+                {
+                    headerLength += 2;
+                    if (in.remaining() < headerLength) return;
+                    length = in.getShort(start + 2) & 0xffff;
+                }
+                else if (length == 127)
+                {
+                    headerLength += 8;
+                    if (in.remaining() < headerLength) return;
+                    length = in.getLong(start + 2);
+                }
+
+                if (opcode >= OP_CLOSE && (!fin || length > MAX_CONTROL_PAYLOAD))
+                {
+                    throw new WebSocketException(WebSocketException.PROTOCOL_ERROR, "Control frames must be final and at most 125 bytes");
+                }
+                if (length < 0 || length > MAX_MESSAGE_SIZE)
+                {
+                    throw new WebSocketException(WebSocketException.MESSAGE_TOO_BIG, "Message exceeds " + MAX_MESSAGE_SIZE + " bytes");
+                }
+                if (in.remaining() < headerLength + length)
+                {
+                    needed = headerLength + (int) length;
+                    return;
+                }
+
+                int payloadStart = start + headerLength;
+                unmask(in, payloadStart, (int) length, in.getInt(payloadStart - 4));
+
+                in.position(payloadStart);
+                ByteBuffer payload = in.slice();
+                payload.limit((int) length);
+                in.position(payloadStart + (int) length);
+
+                handleFrame(fin, opcode, payload);
+            }
+        }
+        finally
+        {
+            in.compact();
+            resizeReadBuffer(needed);
+        }
+    }
+
+    private void handleFrame(boolean fin, int opcode, ByteBuffer payload)
+    {
+        switch (opcode)
+        {
+            case OP_TEXT:
+            case OP_BINARY:
+                if (fragmentedOpcode != -1)
+                {
+                    throw new WebSocketException(WebSocketException.PROTOCOL_ERROR, "New message before the previous one finished");
+                }
+                if (fin)
+                {
+                    deliver(opcode, payload);
+                }
+                else
+                {
+                    fragmentedOpcode = opcode;
+                    fragments = new ByteArrayOutputStream(payload.remaining() * 2);
+                    appendFragment(payload);
+                }
+                break;
+
+            case OP_CONTINUATION:
+                if (fragmentedOpcode == -1)
+                {
+                    throw new WebSocketException(WebSocketException.PROTOCOL_ERROR, "Continuation frame without a message");
+                }
+                appendFragment(payload);
+                if (fin)
+                {
+                    int messageOpcode = fragmentedOpcode;
+                    ByteBuffer message = ByteBuffer.wrap(fragments.toByteArray());
+                    fragmentedOpcode = -1;
+                    fragments = null;
+                    deliver(messageOpcode, message);
+                }
+                break;
+
+            case OP_PING:
+                try
+                {
+                    send(OP_PONG, payload);
+                }
+                catch (IOException e)
+                {
+                    // A socket that cannot take the pong is closing; the next read will tell
+                }
+                break;
+
+            case OP_PONG:
+                break;
+
+            case OP_CLOSE:
+                onClose(payload);
+                break;
+
+            default:
+                throw new WebSocketException(WebSocketException.PROTOCOL_ERROR, "Unknown opcode " + opcode);
+        }
+    }
+
+    private void appendFragment(ByteBuffer payload)
+    {
+        if (fragments.size() + payload.remaining() > MAX_MESSAGE_SIZE)
+        {
+            throw new WebSocketException(WebSocketException.MESSAGE_TOO_BIG, "Message exceeds " + MAX_MESSAGE_SIZE + " bytes");
+        }
+        fragments.write(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+    }
+
+    private void deliver(int opcode, ByteBuffer message)
+    {
+        try
+        {
+            if (opcode == OP_TEXT)
+            {
+                handler.onText(socket, decodeText(message));
+            }
+            else
+            {
+                byte[] bytes = new byte[message.remaining()];
+                message.get(bytes);
+                handler.onBinary(socket, bytes);
+            }
+        }
+        catch (WebSocketException e)
+        {
+            throw e;
+        }
+        catch (RuntimeException e)
+        {
+            System.out.println("⚠️ WebSocket handler failed: " + e.getMessage());
+            throw new WebSocketException(WebSocketException.INTERNAL_ERROR, "Internal error");
+        }
+    }
+
+    // Peer's Close: answer it unless we started the handshake, then the connection is done
+    private void onClose(ByteBuffer payload)
+    {
+        int code = WebSocketException.NO_STATUS;
+        String reason = "";
+        if (payload.remaining() == 1)
+        {
+            throw new WebSocketException(WebSocketException.PROTOCOL_ERROR, "Close frame with a one-byte payload");
+        }
+        if (payload.remaining() >= 2)
+        {
+            code = payload.getShort() & 0xffff;
+            if (!isValidCloseCode(code)) throw new WebSocketException(WebSocketException.PROTOCOL_ERROR, "Invalid close code " + code);
+            reason = decodeText(payload);
+        }
+
+        closeReceived = true;
+        sendClose(code, "");
+        finish(code, reason);
+    }
+
+    // Close frame with the code (none for 1005) and reason; failures are ignored, the connection is going anyway
+    private void sendClose(int code, String reason)
+    {
+        ByteBuffer payload;
+        if (code == WebSocketException.NO_STATUS)
+        {
+            payload = ByteBuffer.allocate(0);
+        }
+        else
+        {
+            byte[] reasonBytes = reason == null ? new byte[0] : reason.getBytes(StandardCharsets.UTF_8);
+            int reasonLength = Math.min(reasonBytes.length, MAX_CLOSE_REASON);
+            payload = ByteBuffer.allocate(2 + reasonLength);
+            payload.putShort((short) code).put(reasonBytes, 0, reasonLength).flip();
+        }
+        try
+        {
+            send(OP_CLOSE, payload);
+        }
+        catch (IOException ignored) {}
+    }
+
+    private void finish(int code, String reason)
+    {
+        if (!finished.compareAndSet(false, true)) return;
+        try
+        {
+            handler.onClose(socket, code, reason);
+        }
+        catch (RuntimeException e)
+        {
+            System.out.println("⚠️ WebSocket close handler failed: " + e.getMessage());
+        }
+    }
+
+    private String decodeText(ByteBuffer bytes)
+    {
+        try
+        {
+            CharBuffer text = utf8.reset().decode(bytes);
+            return text.toString();
+        }
+        catch (CharacterCodingException e)
+        {
+            throw new WebSocketException(WebSocketException.INVALID_PAYLOAD, "Text is not valid UTF-8");
+        }
+    }
+
+    // Grows the (write-mode) read buffer for a frame that does not fit; shrinks it back once drained
+    private void resizeReadBuffer(int needed)
+    {
+        if (needed > in.capacity())
+        {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(needed, in.capacity() * 2));
+            in.flip();
+            larger.put(in);
+            in = larger;
+        }
+        else if (in.position() == 0 && in.capacity() > READ_BUFFER_SIZE)
+        {
+            in = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        }
+    }
+
+    /**
+     * XORs a payload with its masking key in place, eight bytes per step
+     * The key repeats every four bytes, so doubling it into a long keeps the
+     * alignment; the last few bytes are unmasked one at a time.
+     */
+    static void unmask(ByteBuffer buffer, int offset, int length, int maskKey)
+    {
+        long mask = ((long) maskKey << 32) | (maskKey & 0xffffffffL);
+        int end = offset + length;
+        int i = offset;
+        for (; i + 8 <= end; i += 8)
+        {
+            buffer.putLong(i, buffer.getLong(i) ^ mask);
+        }
+        for (int shift = 24; i < end; i++, shift -= 8)
+        {
+            buffer.put(i, (byte) (buffer.get(i) ^ (maskKey >>> shift)));
+        }
+    }
+
+    // Codes an endpoint may send (RFC 6455 section 7.4)
+    private static boolean isValidCloseCode(int code)
+    {
+        if (code >= 3000 && code <= 4999) return true;
+        return code >= 1000 && code <= 1014 && code != 1004 && code != 1005 && code != 1006;
+    }
+}
@@ -0,0 +1,29 @@
+package com.http.websocket;
+
+/**
+ * Callbacks for one WebSocket endpoint, registered with RouteManager.addWebSocket()
+ * Messages of a connection are delivered in order on the thread reading it,
+ * so a callback that blocks delays that connection's next message only.
+ * onClose() runs exactly once and may come from any thread.
+ */
+public interface WebSocketHandler
+{
+    default void onOpen(WebSocket socket)
+    {
+    }
+
+    void onText(WebSocket socket, String message);
+
+    // Binary messages are refused with close code 1003 unless overridden
+    default void onBinary(WebSocket socket, byte[] message)
+    {
+        socket.close(1003, "Binary messages not supported");
+    }
+
+    /**
+     * @param code Close code from the peer, 1005 if it sent none, 1006 if the connection dropped
+     */
+    default void onClose(WebSocket socket, int code, String reason)
+    {
+    }
+}
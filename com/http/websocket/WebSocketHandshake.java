@@ -0,0 +1,112 @@
+package com.http.websocket;
+
+import com.http.model.common.Header;
+import com.http.model.common.Headers;
+import com.http.model.request.HttpVerb;
+import com.http.model.response.Response;
+import com.http.model.response.Status;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * Server side of the RFC 6455 opening handshake
+ * Validates the client's upgrade request and builds the 101 response
+ * carrying Sec-WebSocket-Accept.
+ */
+public final class WebSocketHandshake
+{
+    public static final String VERSION = "13";
+
+    private static final String ACCEPT_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final int KEY_LENGTH = 16;
+
+    private WebSocketHandshake()
+    {
+    }
+
+    // Whether the request asks for a WebSocket: GET with "Upgrade: websocket" and "Connection: upgrade"
+    public static boolean isUpgradeRequest(HttpVerb verb, Headers headers)
+    {
+        return verb == HttpVerb.GET
+                && hasToken(headers.get(Header.Upgrade), "websocket")
+                && hasToken(headers.get(Header.Connection), "upgrade");
+    }
+
+    /**
+     * Answers an upgrade request
+     * @return 101 Switching Protocols when the key and version are acceptable;
+     *         otherwise 426 (unsupported version) or 400 (missing or malformed key)
+     */
+    public static Response handshake(Headers headers)
+    {
+        if (!VERSION.equals(trim(headers.get(Header.Sec_WebSocket_Version))))
+        {
+            return new Response.Builder(Status.UPGRADE_REQUIRED_426)
+                    .header(Header.Sec_WebSocket_Version, VERSION)
+                    .body("Unsupported WebSocket version")
+                    .build();
+        }
+
+        String key = trim(headers.get(Header.Sec_WebSocket_Key));
+        if (!isValidKey(key))
+        {
+            return new Response.Builder(Status.BAD_REQUEST_400)
+                    .body("Missing or malformed Sec-WebSocket-Key")
+                    .build();
+        }
+
+        return new Response.Builder(Status.SWITCHING_PROTOCOLS_101)
+                .header(Header.Upgrade, "websocket")
+                .header(Header.Connection, "Upgrade")
+                .header(Header.Sec_WebSocket_Accept, acceptKey(key))
+                .build();
+    }
+
+    // base64(SHA-1(key + GUID)), proving the server understood the handshake
+    static String acceptKey(String key)
+    {
+        try
+        {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            byte[] digest = sha1.digest((key + ACCEPT_GUID).getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            // Every Java platform is required to provide SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // A key is 16 random bytes, base64-encoded
+    private static boolean isValidKey(String key)
+    {
+        if (key == null) return false;
+        try
+        {
+            return Base64.getDecoder().decode(key).length == KEY_LENGTH;
+        }
+        catch (IllegalArgumentException e)
+        {
+            return false;
+        }
+    }
+
+    private static boolean hasToken(String headerValue, String token)
+    {
+        if (headerValue == null) return false;
+        for (String part : headerValue.split(","))
+        {
+            if (part.trim().equalsIgnoreCase(token)) return true;
+        }
+        return false;
+    }
+
+    private static String trim(String value)
+    {
+        return value == null ? null : value.trim();
+    }
+}